@@ -104,7 +104,7 @@ public class ApiApplication implements CommandLineRunner {
                     .yearlyCostPerUser(800).build());
         }
         Collection<Schedule> schedules = scheduleService.getAll();
-        schedules.forEach(scheduleService::scheduleWorkOrder);
+        schedules.forEach(scheduleService::resumeSchedule);
         Collection<Subscription> subscriptions = subscriptionService.getAll();
         subscriptions.forEach(subscriptionService::scheduleEnd);
 
@@ -6,6 +6,7 @@ import com.grash.model.OwnUser;
 import com.grash.model.abstracts.CompanyAudit;
 import com.grash.model.enums.RoleType;
 import com.grash.security.CustomUserDetail;
+import com.grash.utils.Helper;
 import lombok.RequiredArgsConstructor;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterReturning;
@@ -21,11 +22,14 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.RequestBody;
 
 import javax.persistence.EntityManager;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.lang3.reflect.FieldUtils.getAllFields;
 
@@ -35,6 +39,7 @@ import static org.apache.commons.lang3.reflect.FieldUtils.getAllFields;
 public class TenantAspect {
 
     private final EntityManager entityManager;
+    private final Map<Class<?>, List<MethodHandle>> referenceGetters = new ConcurrentHashMap<>();
     private static final ThreadLocal<Boolean> ignoreCompanyCheck = ThreadLocal.withInitial(() -> false);
 
     public static void disableCompanyCheck() {
@@ -51,43 +56,105 @@ public class TenantAspect {
         MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
         Method method = methodSignature.getMethod();
         Parameter[] parameters = method.getParameters();
+        Map<Class<?>, Set<Long>> references = new HashMap<>();
         for (int i = 0; i < parameters.length; i++) {
             Parameter parameter = parameters[i];
             if (parameter.isAnnotationPresent(RequestBody.class)) {
                 Object arg = joinPoint.getArgs()[i]; // Get the requestBody
                 if (arg instanceof List) {
                     List<?> list = (List<?>) arg;
-                    list.forEach(this::validateObject);
+                    list.forEach(element -> collectReferences(element, references));
                 } else {
-                    validateObject(arg);
+                    collectReferences(arg, references);
                 }
             }
         }
+        validateReferences(references);
     }
 
-    private void validateObject(Object obj) {
-        Field[] fields = getAllFields(obj.getClass());
-        for (Field field : fields) {
-            field.setAccessible(true);
-            Object fieldValue = null;
+    /**
+     * Collects the {@link CompanyAudit} references of a request body element, grouped by entity class.
+     */
+    private void collectReferences(Object obj, Map<Class<?>, Set<Long>> references) {
+        if (obj == null) return;
+        for (MethodHandle getter : getReferenceGetters(obj.getClass())) {
+            Object fieldValue;
             try {
-                fieldValue = field.get(obj); // Get the value of the field inside request body
-            } catch (IllegalAccessException e) {
+                fieldValue = getter.invoke(obj); // Get the value of the field inside request body
+            } catch (Throwable e) {
                 throw new RuntimeException(e);
             }
             if (fieldValue instanceof List) {
                 List<?> list = (List<?>) fieldValue;
-                list.forEach(this::validateFieldElement);
+                list.forEach(element -> collectReference(element, references));
             } else {
-                validateFieldElement(fieldValue);
+                collectReference(fieldValue, references);
             }
         }
     }
 
-    private void validateFieldElement(Object object) {
+    private void collectReference(Object object, Map<Class<?>, Set<Long>> references) {
         if (object instanceof CompanyAudit) {
-            CompanyAudit companyAudit = (CompanyAudit) object;
-            entityManager.find(object.getClass(), companyAudit.getId()); // should fail here if from other company because of @PostLoad
+            Long id = ((CompanyAudit) object).getId();
+            if (id != null) references.computeIfAbsent(object.getClass(), key -> new HashSet<>()).add(id);
         }
     }
+
+    /**
+     * Getters of the fields of a request body class which can hold a {@link CompanyAudit} or a list of them,
+     * resolved once per class.
+     */
+    private List<MethodHandle> getReferenceGetters(Class<?> clazz) {
+        return referenceGetters.computeIfAbsent(clazz, key -> {
+            List<MethodHandle> getters = new ArrayList<>();
+            for (Field field : getAllFields(key)) {
+                Class<?> type = field.getType();
+                boolean mayHoldReference = type.isAssignableFrom(CompanyAudit.class)
+                        || CompanyAudit.class.isAssignableFrom(type) || type.isAssignableFrom(ArrayList.class);
+                if (Modifier.isStatic(field.getModifiers()) || !mayHoldReference) continue;
+                field.setAccessible(true);
+                try {
+                    getters.add(MethodHandles.lookup().unreflectGetter(field));
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return getters;
+        });
+    }
+
+    /**
+     * Checks that all the referenced entities belong to the company of the current user, with one id-only query
+     * per entity type instead of loading each entity. Mirrors {@link CompanyAudit#afterLoad()}: ids that do not
+     * exist are ignored, and files of the companies of child super account users are allowed.
+     */
+    private void validateReferences(Map<Class<?>, Set<Long>> references) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (references.isEmpty() || authentication == null || authentication.getPrincipal() instanceof String)
+            return;
+        OwnUser user = ((CustomUserDetail) authentication.getPrincipal()).getUser();
+        if (user.getRole().getRoleType().equals(RoleType.ROLE_SUPER_ADMIN)) return;
+        references.forEach((clazz, ids) -> {
+            Set<Long> companyIds = new HashSet<>();
+            companyIds.add(user.getCompany().getId());
+            if (File.class.isAssignableFrom(clazz)) {
+                user.getSuperAccountRelations().forEach(relation ->
+                        companyIds.add(relation.getChildUser().getCompany().getId()));
+            }
+            String entityName = entityManager.getMetamodel().entity(clazz).getName();
+            for (List<Long> chunk : Helper.inClauseChunks(ids)) {
+                List<Long> forbiddenIds = entityManager.createQuery("SELECT e.id FROM " + entityName + " e WHERE " +
+                                "e.id IN :ids AND e.company.id NOT IN :companyIds", Long.class)
+                        .setParameter("ids", chunk)
+                        .setParameter("companyIds", companyIds)
+                        .setMaxResults(1)
+                        .getResultList();
+                if (!forbiddenIds.isEmpty()) {
+                    throw new CustomException("validateTenant:  the user (id=" + user.getId() + ")  is not " +
+                            "authorized to load this object (" + clazz + ") with id " + forbiddenIds.get(0),
+                            HttpStatus.FORBIDDEN);
+                }
+            }
+        });
+    }
 }
@@ -1,24 +1,163 @@
 package com.grash.configuration;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * One bounded executor per workload, so that a burst of one kind of task can't starve or reject the others:
+ * <ul>
+ *     <li>{@code taskExecutor}, the default one for {@code @Async} methods (exports, outbox dispatch...)</li>
+ *     <li>{@link #NOTIFICATION_EXECUTOR} for the notifications saved and sent over the websocket</li>
+ *     <li>{@link #PUSH_EXECUTOR} for the Expo push notifications</li>
+ *     <li>{@link #EMAIL_EXECUTOR} for the emails</li>
+ *     <li>{@link #UPLOAD_EXECUTOR} for the files uploaded to the storage, its size capping the concurrent uploads and
+ *     rejecting the ones beyond its queue</li>
+ *     <li>{@link #IMAGE_EXECUTOR} for the image thumbnails, which are optional</li>
+ *     <li>{@link #REPORT_EXECUTOR} for the PDF reports, its size capping the concurrent renders</li>
+ *     <li>{@link #DOWNLOAD_EXECUTOR} for the streamed responses of Spring MVC, like the file downloads</li>
+ *     <li>{@link #STORAGE_STREAM_EXECUTOR} for the uploads reading the content streamed to the MinIO storage</li>
+ * </ul>
+ * Each one is sized by {@code async.<name>.core-pool-size}, {@code max-pool-size} and {@code queue-capacity}. When
+ * its queue is full, {@code async.<name>.rejection-policy} either runs the task on the caller thread
+ * ({@code CALLER_RUNS}, slowing the producer down) or drops it ({@code ABORT}).
+ * <p>
+ * Boot exports the pool and queue sizes as the {@code executor.*} metrics tagged with the executor name. This adds
+ * {@code executor.rejected}, {@code executor.idle} (time spent queued) and {@code executor} (time spent running).
+ */
 @Configuration
 @EnableAsync
+@RequiredArgsConstructor
+@Slf4j
 public class AsyncConfig implements AsyncConfigurer {
+    public static final String NOTIFICATION_EXECUTOR = "notificationExecutor";
+    public static final String PUSH_EXECUTOR = "pushExecutor";
+    public static final String EMAIL_EXECUTOR = "emailExecutor";
+    public static final String UPLOAD_EXECUTOR = "uploadExecutor";
+    public static final String IMAGE_EXECUTOR = "imageExecutor";
+    public static final String REPORT_EXECUTOR = "reportExecutor";
+    public static final String DOWNLOAD_EXECUTOR = "downloadExecutor";
+    public static final String STORAGE_STREAM_EXECUTOR = "storageStreamExecutor";
+
+    private final Environment environment;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
 
     @Override
     public Executor getAsyncExecutor() {
+        return taskExecutor();
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor taskExecutor() {
+        return executor("taskExecutor", "default", 3, 8, 100, RejectionPolicy.CALLER_RUNS);
+    }
+
+    @Bean(NOTIFICATION_EXECUTOR)
+    public ThreadPoolTaskExecutor notificationExecutor() {
+        return executor(NOTIFICATION_EXECUTOR, "notifications", 2, 4, 500, RejectionPolicy.CALLER_RUNS);
+    }
+
+    @Bean(PUSH_EXECUTOR)
+    public ThreadPoolTaskExecutor pushExecutor() {
+        return executor(PUSH_EXECUTOR, "push", 2, 8, 200, RejectionPolicy.ABORT);
+    }
+
+    @Bean(EMAIL_EXECUTOR)
+    public ThreadPoolTaskExecutor emailExecutor() {
+        return executor(EMAIL_EXECUTOR, "email", 2, 4, 500, RejectionPolicy.CALLER_RUNS);
+    }
+
+    @Bean(UPLOAD_EXECUTOR)
+    public ThreadPoolTaskExecutor uploadExecutor() {
+        return executor(UPLOAD_EXECUTOR, "upload", 8, 8, 100, RejectionPolicy.ABORT);
+    }
+
+    @Bean(IMAGE_EXECUTOR)
+    public ThreadPoolTaskExecutor imageExecutor() {
+        return executor(IMAGE_EXECUTOR, "images", 2, 2, 100, RejectionPolicy.ABORT);
+    }
+
+    @Bean(REPORT_EXECUTOR)
+    public ThreadPoolTaskExecutor reportExecutor() {
+        return executor(REPORT_EXECUTOR, "reports", 2, 2, 50, RejectionPolicy.ABORT);
+    }
+
+    @Bean(DOWNLOAD_EXECUTOR)
+    public ThreadPoolTaskExecutor downloadExecutor() {
+        return executor(DOWNLOAD_EXECUTOR, "downloads", 8, 32, 100, RejectionPolicy.CALLER_RUNS);
+    }
+
+    /**
+     * Never runs on the caller thread, which is the one writing to the pipe its tasks read
+     */
+    @Bean(STORAGE_STREAM_EXECUTOR)
+    public ThreadPoolTaskExecutor storageStreamExecutor() {
+        return executor(STORAGE_STREAM_EXECUTOR, "storage-streams", 4, 8, 50, RejectionPolicy.ABORT);
+    }
+
+    private ThreadPoolTaskExecutor executor(String name, String property, int corePoolSize, int maxPoolSize,
+                                            int queueCapacity, RejectionPolicy rejectionPolicy) {
+        String prefix = "async." + property + ".";
+        MeterRegistry registry = meterRegistry.getIfAvailable();
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(3);
-        executor.setMaxPoolSize(3);
-        executor.setQueueCapacity(11);
-        executor.setThreadNamePrefix("MyExecutor-");
+        executor.setCorePoolSize(environment.getProperty(prefix + "core-pool-size", Integer.class, corePoolSize));
+        executor.setMaxPoolSize(environment.getProperty(prefix + "max-pool-size", Integer.class, maxPoolSize));
+        executor.setQueueCapacity(environment.getProperty(prefix + "queue-capacity", Integer.class, queueCapacity));
+        executor.setThreadNamePrefix(property + "-");
+        executor.setRejectedExecutionHandler(rejectionHandler(name, registry,
+                environment.getProperty(prefix + "rejection-policy", RejectionPolicy.class, rejectionPolicy)));
+        if (registry != null) {
+            Timer idle = Timer.builder("executor.idle").tag("name", name).register(registry);
+            Timer execution = Timer.builder("executor").tag("name", name).register(registry);
+            executor.setTaskDecorator(runnable -> {
+                long submittedAt = System.nanoTime();
+                return () -> {
+                    long startedAt = System.nanoTime();
+                    idle.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                    try {
+                        runnable.run();
+                    } finally {
+                        execution.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                    }
+                };
+            });
+        }
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+
+    private RejectedExecutionHandler rejectionHandler(String name, MeterRegistry registry,
+                                                      RejectionPolicy rejectionPolicy) {
+        Counter rejected = registry == null ? null :
+                Counter.builder("executor.rejected").tag("name", name).register(registry);
+        RejectedExecutionHandler handler = rejectionPolicy == RejectionPolicy.CALLER_RUNS ?
+                new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy();
+        return (runnable, threadPoolExecutor) -> {
+            if (rejected != null) rejected.increment();
+            if (rejectionPolicy == RejectionPolicy.ABORT)
+                log.warn("The {} queue is full, dropping a task", name);
+            handler.rejectedExecution(runnable, threadPoolExecutor);
+        };
+    }
+
+    public enum RejectionPolicy {
+        CALLER_RUNS,
+        ABORT
+    }
+}
@@ -1,6 +1,8 @@
 package com.grash.configuration;
 
 import com.grash.job.DeleteDemoCompaniesJob;
+import com.grash.job.DeleteExpiredJobsJob;
+import com.grash.job.OutboxDispatchJob;
 import org.quartz.*;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -25,4 +27,44 @@ public class QuartzConfig {
                         .repeatForever())
                 .build();
     }
+
+    @Bean
+    public JobDetail outboxDispatchJobDetail() {
+        return JobBuilder.newJob(OutboxDispatchJob.class)
+                .withIdentity("outboxDispatchJob")
+                .storeDurably()
+                .build();
+    }
+
+    @Bean
+    public Trigger outboxDispatchTrigger() {
+        return TriggerBuilder.newTrigger()
+                .forJob(outboxDispatchJobDetail())
+                .withIdentity("outboxDispatchTrigger")
+                .withSchedule(SimpleScheduleBuilder.simpleSchedule()
+                        .withIntervalInSeconds(30)
+                        .repeatForever()
+                        .withMisfireHandlingInstructionNextWithRemainingCount())
+                .build();
+    }
+
+    @Bean
+    public JobDetail deleteExpiredJobsJobDetail() {
+        return JobBuilder.newJob(DeleteExpiredJobsJob.class)
+                .withIdentity("deleteExpiredJobsJob")
+                .storeDurably()
+                .build();
+    }
+
+    @Bean
+    public Trigger deleteExpiredJobsTrigger() {
+        return TriggerBuilder.newTrigger()
+                .forJob(deleteExpiredJobsJobDetail())
+                .withIdentity("deleteExpiredJobsTrigger")
+                .withSchedule(SimpleScheduleBuilder.simpleSchedule()
+                        .withIntervalInHours(1)
+                        .repeatForever()
+                        .withMisfireHandlingInstructionNextWithRemainingCount())
+                .build();
+    }
 }
@@ -2,14 +2,19 @@ package com.grash.configuration;
 
 import com.grash.security.CurrentUserResolver;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 
 @Configuration
@@ -18,8 +23,16 @@ public class WebMvcConfig implements WebMvcConfigurer {
 
     private static final long MAX_AGE_SECS = 3600;
     private final CurrentUserResolver currentUserResolver;
+    private AsyncTaskExecutor downloadExecutor;
     @Value("${frontend.url}")
     private String frontendUrl;
+    @Value("${download.timeout-minutes:60}")
+    private long downloadTimeoutMinutes;
+
+    @Autowired
+    public void setDeps(@Qualifier(AsyncConfig.DOWNLOAD_EXECUTOR) AsyncTaskExecutor downloadExecutor) {
+        this.downloadExecutor = downloadExecutor;
+    }
 
     @Override
     public void addCorsMappings(CorsRegistry registry) {
@@ -34,6 +47,16 @@ public class WebMvcConfig implements WebMvcConfigurer {
         argumentResolvers.add(currentUserResolver);
     }
 
+    /**
+     * Streamed responses run on the bounded download executor, and may last up to the download timeout instead of
+     * the 30 seconds of the container
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(downloadExecutor);
+        configurer.setDefaultTimeout(TimeUnit.MINUTES.toMillis(downloadTimeoutMinutes));
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         registry.addResourceHandler("/images/**")
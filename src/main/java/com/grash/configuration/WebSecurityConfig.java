@@ -66,6 +66,8 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers("/demo/generate-account").permitAll()//
                 .antMatchers("/auth/reset-pwd-confirm**").permitAll()//
                 .antMatchers("/h2-console/**/**").permitAll()
+                // The metrics are not scoped to a company, only the platform administrators read them
+                .antMatchers("/actuator/metrics/**").hasRole("SUPER_ADMIN")
                 // Disallow everything else..
                 .anyRequest().authenticated();
 
@@ -117,7 +117,7 @@ public class AssetController {
             Asset savedAsset = optionalAsset.get();
             if (user.getRole().getViewPermissions().contains(PermissionEntity.ASSETS) &&
                     (user.getRole().getViewOtherPermissions().contains(PermissionEntity.ASSETS) || savedAsset.getCreatedBy().equals(user.getId()))) {
-                return assetMapper.toShowDto(savedAsset, assetService);
+                return assetMapper.toShowDto(savedAsset, assetService::hasChildren);
             } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
@@ -132,7 +132,7 @@ public class AssetController {
         OwnUser user = userService.whoami(req);
         Optional<Location> optionalLocation = locationService.findById(id);
         if (optionalLocation.isPresent()) {
-            return assetService.findByLocation(id).stream().map(asset -> assetMapper.toShowDto(asset, assetService)).collect(Collectors.toList());
+            return assetService.toShowDtos(assetService.findByLocation(id));
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
 
@@ -147,7 +147,7 @@ public class AssetController {
         OwnUser user = userService.whoami(req);
         Optional<Part> optionalPart = partService.findById(id);
         if (optionalPart.isPresent()) {
-            return optionalPart.get().getAssets().stream().map(asset -> assetMapper.toShowDto(asset, assetService)).collect(Collectors.toList());
+            return assetService.toShowDtos(optionalPart.get().getAssets());
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
 
@@ -162,14 +162,13 @@ public class AssetController {
                                               HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
         if (id.equals(0L) && user.getRole().getRoleType().equals(RoleType.ROLE_CLIENT)) {
-            return assetService.findByCompany(user.getCompany().getId(), pageable.getSort()).stream().filter(asset -> asset.getParentAsset() == null).map(asset -> assetMapper.toShowDto(asset, assetService)).collect(Collectors.toList());
+            return assetService.toShowDtos(assetService.findByCompany(user.getCompany().getId(), pageable.getSort()).stream().filter(asset -> asset.getParentAsset() == null).collect(Collectors.toList()));
         }
         Optional<Asset> optionalAsset = assetService.findById(id);
         if (optionalAsset.isPresent()) {
             Asset savedAsset = optionalAsset.get();
             if (user.getRole().getViewPermissions().contains(PermissionEntity.ASSETS)) {
-                return assetService.findAssetChildren(id, pageable.getSort()).stream().map(asset -> assetMapper.toShowDto(asset,
-                        assetService)).collect(Collectors.toList());
+                return assetService.toShowDtos(assetService.findAssetChildren(id, pageable.getSort()));
             } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
 
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
@@ -202,7 +201,7 @@ public class AssetController {
                     new Object[]{createdAsset.getName()}, Helper.getLocale(user));
             assetService.notify(createdAsset, messageSource.getMessage("new_assignment", null,
                     Helper.getLocale(user)), message);
-            return assetMapper.toShowDto(createdAsset, assetService);
+            return assetMapper.toShowDto(createdAsset, assetService::hasChildren);
         } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
     }
 
@@ -246,7 +245,7 @@ public class AssetController {
                     throw new CustomException("Parent asset cannot be the same id", HttpStatus.NOT_ACCEPTABLE);
                 Asset patchedAsset = assetService.update(id, asset);
                 assetService.patchNotify(savedAsset, patchedAsset, Helper.getLocale(user));
-                return assetMapper.toShowDto(patchedAsset, assetService);
+                return assetMapper.toShowDto(patchedAsset, assetService::hasChildren);
             } else throw new CustomException("Forbidden", HttpStatus.FORBIDDEN);
         } else throw new CustomException("Asset not found", HttpStatus.NOT_FOUND);
     }
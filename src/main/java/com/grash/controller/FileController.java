@@ -5,6 +5,7 @@ import com.grash.advancedsearch.FilterField;
 import com.grash.advancedsearch.SearchCriteria;
 import com.grash.dto.FilePatchDTO;
 import com.grash.dto.FileShowDTO;
+import com.grash.dto.StoredFileInfo;
 import com.grash.dto.SuccessResponse;
 import com.grash.exception.CustomException;
 import com.grash.factory.StorageServiceFactory;
@@ -14,6 +15,7 @@ import com.grash.model.OwnUser;
 import com.grash.model.Task;
 import com.grash.model.enums.*;
 import com.grash.service.FileService;
+import com.grash.service.StorageService;
 import com.grash.service.TaskService;
 import com.grash.service.UserService;
 import io.swagger.annotations.Api;
@@ -22,14 +24,17 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.*;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -54,19 +59,8 @@ public class FileController {
         OwnUser user = userService.whoami(req);
         if (user.getRole().getCreatePermissions().contains(PermissionEntity.FILES) &&
                 user.getCompany().getSubscription().getSubscriptionPlan().getFeatures().contains(PlanFeatures.FILE)) {
-            Collection<File> result = new ArrayList<>();
-            Arrays.asList(filesReq).forEach(fileReq -> {
-                String filePath = storageServiceFactory.getStorageService().upload(fileReq, folder);
-                Task task = null;
-                if (taskId != null) {
-                    Optional<Task> optionalTask = taskService.findById(taskId.longValue());
-                    if (optionalTask.isPresent()) {
-                        task = optionalTask.get();
-                    }
-                }
-                result.add(fileService.create(new File(fileReq.getOriginalFilename(), filePath, fileType, task,
-                        hidden.equals("true"))));
-            });
+            Task task = taskId == null ? null : taskService.findById(taskId.longValue()).orElse(null);
+            List<File> result = fileService.upload(filesReq, folder, fileType, task, hidden.equals("true"));
             return result.stream().map(fileMapper::toShowDto).collect(Collectors.toList());
         } else throw new CustomException("Access Denied", HttpStatus.FORBIDDEN);
     }
@@ -112,6 +106,85 @@ public class FileController {
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Streams the content of a file from the storage, honouring a single byte range and If-None-Match
+     */
+    @GetMapping("/{id}/content")
+    @PreAuthorize("permitAll()")
+    @ApiResponses(value = {//
+            @ApiResponse(code = 500, message = "Something went wrong"),
+            @ApiResponse(code = 403, message = "Access denied"),
+            @ApiResponse(code = 404, message = "File not found"),
+            @ApiResponse(code = 416, message = "Range not satisfiable")})
+    public ResponseEntity<StreamingResponseBody> getContent(@ApiParam("id") @PathVariable("id") Long id,
+                                                            @RequestHeader(value = HttpHeaders.RANGE,
+                                                                    required = false) String range,
+                                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH,
+                                                                    required = false) String ifNoneMatch,
+                                                            HttpServletRequest req) {
+        OwnUser user = userService.whoami(req);
+        File savedFile = fileService.findById(id).orElseThrow(() -> new CustomException("Not found",
+                HttpStatus.NOT_FOUND));
+        if (!(user.getRole().getViewPermissions().contains(PermissionEntity.FILES) &&
+                (user.getRole().getViewOtherPermissions().contains(PermissionEntity.FILES) || savedFile.getCreatedBy().equals(user.getId()))))
+            throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
+        StorageService storageService = storageServiceFactory.getStorageService();
+        String filePath = savedFile.getPath();
+        StoredFileInfo info = storageService.stat(filePath);
+        long size = info.getSize();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (info.getEtag() != null) {
+            String etag = "\"" + info.getEtag().replace("\"", "") + "\"";
+            headers.setETag(etag);
+            if (ifNoneMatch != null && Arrays.stream(ifNoneMatch.split(",")).map(String::trim)
+                    .anyMatch(tag -> tag.equals("*") || tag.replaceFirst("^W/", "").equals(etag)))
+                return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        long start = 0;
+        long end = size - 1;
+        HttpStatus status = HttpStatus.OK;
+        List<HttpRange> ranges = parseRanges(range);
+        if (ranges.size() == 1) {
+            try {
+                start = ranges.get(0).getRangeStart(size);
+                end = ranges.get(0).getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            status = HttpStatus.PARTIAL_CONTENT;
+        }
+        long offset = start;
+        long length = end - start + 1;
+        String contentType = savedFile.getContentType() != null ? savedFile.getContentType() :
+                info.getContentType();
+        headers.setContentType(contentType == null ? MediaType.APPLICATION_OCTET_STREAM :
+                MediaType.parseMediaType(contentType));
+        headers.setContentLength(length);
+        headers.setContentDisposition(ContentDisposition.inline()
+                .filename(savedFile.getName(), StandardCharsets.UTF_8).build());
+        return new ResponseEntity<>(outputStream -> {
+            if (length == 0) return;
+            try (InputStream inputStream = storageService.openStream(filePath, offset, length)) {
+                StreamUtils.copyRange(inputStream, outputStream, 0, length - 1);
+            }
+        }, headers, status);
+    }
+
+    /**
+     * Invalid ranges are ignored and several ranges are answered with the whole file, as the RFC allows
+     */
+    private List<HttpRange> parseRanges(String range) {
+        if (range == null) return Collections.emptyList();
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+    }
+
     @PatchMapping("/{id}")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
     @ApiResponses(value = {//
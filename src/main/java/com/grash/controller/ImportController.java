@@ -15,6 +15,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
@@ -36,6 +37,7 @@ public class ImportController {
 
     @PostMapping("/work-orders")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ImportResponse importWorkOrders(@Valid @RequestBody List<WorkOrderImportDTO> toImport,
                                            HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
@@ -49,6 +51,7 @@ public class ImportController {
 
     @PostMapping("/assets")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ImportResponse importAssets(@Valid @RequestBody List<AssetImportDTO> toImport, HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
         if (user.getRole().getCreatePermissions().contains(PermissionEntity.ASSETS)
@@ -61,6 +64,7 @@ public class ImportController {
 
     @PostMapping("/locations")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ImportResponse importLocations(@Valid @RequestBody List<LocationImportDTO> toImport,
                                           HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
@@ -74,6 +78,7 @@ public class ImportController {
 
     @PostMapping("/meters")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ImportResponse importMeters(@Valid @RequestBody List<MeterImportDTO> toImport, HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
         if (user.getRole().getCreatePermissions().contains(PermissionEntity.METERS) && user.getCompany().getSubscription().getSubscriptionPlan().getFeatures().contains(PlanFeatures.IMPORT_CSV)) {
@@ -85,6 +90,7 @@ public class ImportController {
 
     @PostMapping("/parts")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ImportResponse importParts(@Valid @RequestBody List<PartImportDTO> toImport, HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
         if (user.getRole().getCreatePermissions().contains(PermissionEntity.PARTS_AND_MULTIPARTS)
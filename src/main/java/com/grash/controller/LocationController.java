@@ -56,15 +56,15 @@ public class LocationController {
         OwnUser user = userService.whoami(req);
         if (user.getRole().getRoleType().equals(RoleType.ROLE_CLIENT)) {
             if (user.getRole().getViewPermissions().contains(PermissionEntity.LOCATIONS)) {
-                return locationService.findByCompany(user.getCompany().getId()).stream().filter(location -> {
-                    boolean canViewOthers =
-                            user.getRole().getViewOtherPermissions().contains(PermissionEntity.LOCATIONS);
-                    return canViewOthers || location.getCreatedBy().equals(user.getId());
-                }).map(location -> locationMapper.toShowDto(location, locationService)).collect(Collectors.toList());
+                return locationService.toShowDtos(locationService.findByCompany(user.getCompany().getId()).stream()
+                        .filter(location -> {
+                            boolean canViewOthers =
+                                    user.getRole().getViewOtherPermissions().contains(PermissionEntity.LOCATIONS);
+                            return canViewOthers || location.getCreatedBy().equals(user.getId());
+                        }).collect(Collectors.toList()));
             } else throw new CustomException("Access Denied", HttpStatus.FORBIDDEN);
         } else
-            return locationService.getAll().stream().map(location -> locationMapper.toShowDto(location,
-                    locationService)).collect(Collectors.toList());
+            return locationService.toShowDtos(locationService.getAll());
     }
 
     @PostMapping("/search")
@@ -96,13 +96,13 @@ public class LocationController {
         //only sort is used
         OwnUser user = userService.whoami(req);
         if (id.equals(0L) && user.getRole().getRoleType().equals(RoleType.ROLE_CLIENT)) {
-            return locationService.findByCompany(user.getCompany().getId(), pageable.getSort()).stream().filter(location -> location.getParentLocation() == null).map(location -> locationMapper.toShowDto(location, locationService)).collect(Collectors.toList());
+            return locationService.toShowDtos(locationService.findByCompany(user.getCompany().getId(), pageable.getSort()).stream().filter(location -> location.getParentLocation() == null).collect(Collectors.toList()));
         }
         Optional<Location> optionalLocation = locationService.findById(id);
         if (optionalLocation.isPresent()) {
             Location savedLocation = optionalLocation.get();
             if (user.getRole().getViewPermissions().contains(PermissionEntity.LOCATIONS)) {
-                return locationService.findLocationChildren(id, pageable.getSort()).stream().map(location -> locationMapper.toShowDto(location, locationService)).collect(Collectors.toList());
+                return locationService.toShowDtos(locationService.findLocationChildren(id, pageable.getSort()));
             } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
 
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
@@ -132,7 +132,7 @@ public class LocationController {
             Location savedLocation = optionalLocation.get();
             if (user.getRole().getViewPermissions().contains(PermissionEntity.LOCATIONS) &&
                     (user.getRole().getViewOtherPermissions().contains(PermissionEntity.LOCATIONS) || savedLocation.getCreatedBy().equals(user.getId()))) {
-                return locationMapper.toShowDto(savedLocation, locationService);
+                return locationMapper.toShowDto(savedLocation, locationService::hasChildren);
             } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
@@ -148,7 +148,7 @@ public class LocationController {
         if (user.getRole().getCreatePermissions().contains(PermissionEntity.LOCATIONS)) {
             Location savedLocation = locationService.create(locationReq, user.getCompany());
             locationService.notify(savedLocation, Helper.getLocale(user));
-            return locationMapper.toShowDto(savedLocation, locationService);
+            return locationMapper.toShowDto(savedLocation, locationService::hasChildren);
         } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
     }
 
@@ -172,7 +172,7 @@ public class LocationController {
 
                 Location patchedLocation = locationService.update(id, location);
                 locationService.patchNotify(savedLocation, patchedLocation, Helper.getLocale(user));
-                return locationMapper.toShowDto(patchedLocation, locationService);
+                return locationMapper.toShowDto(patchedLocation, locationService::hasChildren);
             } else throw new CustomException("Forbidden", HttpStatus.FORBIDDEN);
         } else throw new CustomException("Location not found", HttpStatus.NOT_FOUND);
     }
@@ -48,7 +48,6 @@ public class MeterController {
     private final MeterMapper meterMapper;
     private final UserService userService;
     private final AssetService assetService;
-    private final ReadingService readingService;
     private final EntityManager em;
 
     @PostMapping("/search")
@@ -103,7 +102,7 @@ public class MeterController {
             if (user.getRole().getViewPermissions().contains(PermissionEntity.METERS) &&
                     (user.getRole().getViewOtherPermissions().contains(PermissionEntity.METERS) ||
                             (savedMeter.getCreatedBy().equals(user.getId())) || savedMeter.getUsers().stream().anyMatch(u -> u.getId().equals(user.getId())))) {
-                return meterMapper.toShowDto(savedMeter, readingService);
+                return meterMapper.toShowDto(savedMeter);
             } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
@@ -119,7 +118,7 @@ public class MeterController {
                 && user.getCompany().getSubscription().getSubscriptionPlan().getFeatures().contains(PlanFeatures.METER)) {
             Meter savedMeter = meterService.create(meterReq);
             meterService.notify(savedMeter, Helper.getLocale(user));
-            return meterMapper.toShowDto(savedMeter, readingService);
+            return meterMapper.toShowDto(savedMeter);
         } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
     }
 
@@ -140,7 +139,7 @@ public class MeterController {
             if (user.getRole().getEditOtherPermissions().contains(PermissionEntity.METERS) || savedMeter.getCreatedBy().equals(user.getId())) {
                 Meter patchedMeter = meterService.update(id, meter);
                 meterService.patchNotify(savedMeter, patchedMeter, Helper.getLocale(user));
-                return meterMapper.toShowDto(patchedMeter, readingService);
+                return meterMapper.toShowDto(patchedMeter);
             } else throw new CustomException("Forbidden", HttpStatus.FORBIDDEN);
         } else throw new CustomException("Meter not found", HttpStatus.NOT_FOUND);
     }
@@ -155,7 +154,7 @@ public class MeterController {
         OwnUser user = userService.whoami(req);
         Optional<Asset> optionalAsset = assetService.findById(id);
         if (optionalAsset.isPresent()) {
-            return meterService.findByAsset(id).stream().map(meter -> meterMapper.toShowDto(meter, readingService)).collect(Collectors.toList());
+            return meterService.findByAsset(id).stream().map(meterMapper::toShowDto).collect(Collectors.toList());
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
 
@@ -127,7 +127,6 @@ public class PreventiveMaintenanceController {
 
         Optional<PreventiveMaintenance> optionalPreventiveMaintenance = preventiveMaintenanceService.findById(id);
         if (optionalPreventiveMaintenance.isPresent()) {
-            scheduleService.stopScheduleTimers(optionalPreventiveMaintenance.get().getSchedule().getId());
             preventiveMaintenanceService.delete(id);
             return new ResponseEntity(new SuccessResponse(true, "Deleted successfully"),
                     HttpStatus.OK);
@@ -1,27 +1,31 @@
 package com.grash.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grash.dto.DateRange;
+import com.grash.dto.ReadingAggregate;
+import com.grash.dto.ReadingBatchResponse;
 import com.grash.dto.ReadingPatchDTO;
 import com.grash.dto.SuccessResponse;
 import com.grash.exception.CustomException;
 import com.grash.model.*;
-import com.grash.model.enums.NotificationType;
-import com.grash.model.enums.WorkOrderMeterTriggerCondition;
 import com.grash.service.*;
-import com.grash.utils.AuditComparator;
 import com.grash.utils.Helper;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
-import org.springframework.context.MessageSource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -34,10 +38,8 @@ public class ReadingController {
     private final MeterService meterService;
     private final ReadingService readingService;
     private final UserService userService;
-    private final WorkOrderMeterTriggerService workOrderMeterTriggerService;
-    private final NotificationService notificationService;
-    private final WorkOrderService workOrderService;
-    private final MessageSource messageSource;
+    private final ReadingIngestionService readingIngestionService;
+    private final ObjectMapper objectMapper;
 
 
     @GetMapping("/meter/{id}")
@@ -54,6 +56,29 @@ public class ReadingController {
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
 
+    @PostMapping("/meter/{id}/aggregates")
+    @PreAuthorize("permitAll()")
+    @ApiResponses(value = {//
+            @ApiResponse(code = 500, message = "Something went wrong"),
+            @ApiResponse(code = 403, message = "Access denied"),
+            @ApiResponse(code = 404, message = "Meter not found")})
+    public Collection<ReadingAggregate> getAggregatesByMeter(@ApiParam("id") @PathVariable("id") Long id,
+                                                             @Valid @RequestBody DateRange dateRange,
+                                                             @RequestParam(defaultValue = "200") int points,
+                                                             HttpServletRequest req) {
+        OwnUser user = userService.whoami(req);
+        Optional<Meter> optionalMeter = meterService.findById(id);
+        if (optionalMeter.isPresent()) {
+            if (dateRange.getStart() == null || dateRange.getEnd() == null
+                    || !dateRange.getStart().before(dateRange.getEnd()))
+                throw new CustomException("Invalid range", HttpStatus.BAD_REQUEST);
+            if (points < 1 || points > ReadingService.MAX_AGGREGATES)
+                throw new CustomException("points must be between 1 and " + ReadingService.MAX_AGGREGATES,
+                        HttpStatus.BAD_REQUEST);
+            return readingService.getAggregates(id, dateRange.getStart(), dateRange.getEnd(), points);
+        } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
+    }
+
     @PostMapping("")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
     @ApiResponses(value = {//
@@ -64,45 +89,134 @@ public class ReadingController {
         Optional<Meter> optionalMeter = meterService.findById(readingReq.getMeter().getId());
         if (optionalMeter.isPresent()) {
             Meter meter = optionalMeter.get();
-            Collection<Reading> readings = readingService.findByMeter(readingReq.getMeter().getId());
-            if (!readings.isEmpty()) {
-                Reading lastReading = Collections.max(readings, new AuditComparator());
-                Date nextReading = Helper.getNextOccurence(lastReading.getCreatedAt(), meter.getUpdateFrequency());
+            if (meter.getLastReadingAt() != null) {
+                Date nextReading = Helper.getNextOccurence(meter.getLastReadingAt(), meter.getUpdateFrequency());
                 if (!(Helper.isSameDay(new Date(), nextReading) && !Helper.isSameDay(new Date(),
-                        lastReading.getCreatedAt()))) {
+                        meter.getLastReadingAt()))) {
                     throw new CustomException("The update frequency has not been respected", HttpStatus.NOT_ACCEPTABLE);
                 }
             }
-            Collection<WorkOrderMeterTrigger> meterTriggers = workOrderMeterTriggerService.findByMeter(meter.getId());
-            Locale locale = Helper.getLocale(user);
-            meterTriggers.forEach(meterTrigger -> {
-                boolean error = false;
-                StringBuilder message = new StringBuilder();
-                String title = "new_wo";
-                Object[] notificationArgs = new Object[]{meter.getName(), meterTrigger.getValue(), meter.getUnit()};
-                if (meterTrigger.getTriggerCondition().equals(WorkOrderMeterTriggerCondition.LESS_THAN)) {
-                    if (readingReq.getValue() < meterTrigger.getValue()) {
-                        error = true;
-                        message.append(messageSource.getMessage("notification_reading_less_than", notificationArgs,
-                                locale));
-                    }
-                } else if (readingReq.getValue() > meterTrigger.getValue()) {
-                    error = true;
-                    message.append(messageSource.getMessage("notification_reading_more_than", notificationArgs,
-                            locale));
-                }
-                if (error) {
-                    notificationService.createMultiple(meter.getUsers().stream().map(user1 ->
-                            new Notification(message.toString(), user1, NotificationType.METER, meter.getId())
-                    ).collect(Collectors.toList()), true, title);
-                    WorkOrder workOrder = workOrderService.getWorkOrderFromWorkOrderBase(meterTrigger);
-                    workOrderService.create(workOrder, user.getCompany());
-                }
-            });
-            return readingService.create(readingReq);
+            readingIngestionService.ingest(Collections.singletonList(readingReq), user);
+            return readingReq;
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Saves the readings of a JSON array, {@link ReadingIngestionService#BATCH_SIZE} at a time, without checking the
+     * update frequency of the meters. All the readings are checked before any is saved.
+     */
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasRole('ROLE_CLIENT')")
+    @ApiResponses(value = {//
+            @ApiResponse(code = 500, message = "Something went wrong"), //
+            @ApiResponse(code = 403, message = "Access denied"), //
+            @ApiResponse(code = 404, message = "Meter not found")})
+    public ReadingBatchResponse createBatch(@ApiParam("Readings") @RequestBody List<Reading> readings,
+                                            HttpServletRequest req) {
+        OwnUser user = userService.whoami(req);
+        for (int i = 0; i < readings.size(); i++) {
+            checkMeter(readings.get(i), "at index " + i);
+        }
+        Set<Long> meterIds = readings.stream().map(reading -> reading.getMeter().getId()).collect(Collectors.toSet());
+        meterIds.removeAll(meterService.findExistingIds(meterIds, user.getCompany().getId()));
+        if (!meterIds.isEmpty())
+            throw new CustomException("Meters " + meterIds + " not found", HttpStatus.NOT_FOUND);
+        ReadingBatchResponse response = new ReadingBatchResponse();
+        try {
+            for (int i = 0; i < readings.size(); i += ReadingIngestionService.BATCH_SIZE) {
+                ingest(readings.subList(i, Math.min(i + ReadingIngestionService.BATCH_SIZE, readings.size())), user,
+                        response);
+            }
+        } catch (CustomException e) {
+            throw withSavedCount(e, response);
+        }
+        return response;
+    }
+
+    /**
+     * Saves the readings streamed as NDJSON ({@code {"meter":{"id":1},"value":12}} per line) or CSV
+     * ({@code meterId,value} per line, with an optional header), each batch being committed before the next one is
+     * read. On an error, the message gives the number of readings already saved, which are the ones before the line
+     * of the error's batch.
+     */
+    @PostMapping(path = "/batch", consumes = {"application/x-ndjson", "text/csv"})
+    @PreAuthorize("hasRole('ROLE_CLIENT')")
+    @ApiResponses(value = {//
+            @ApiResponse(code = 500, message = "Something went wrong"), //
+            @ApiResponse(code = 403, message = "Access denied"), //
+            @ApiResponse(code = 404, message = "Meter not found")})
+    public ReadingBatchResponse createBatchFromStream(HttpServletRequest req) throws IOException {
+        OwnUser user = userService.whoami(req);
+        boolean csv = MediaType.parseMediaType(req.getContentType()).isCompatibleWith(MediaType.valueOf("text/csv"));
+        ReadingBatchResponse response = new ReadingBatchResponse();
+        List<Reading> batch = new ArrayList<>();
+        BufferedReader reader = req.getReader();
+        String line;
+        int lineNumber = 0;
+        try {
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) continue;
+                Reading reading = csv ? parseCsvReading(line, lineNumber) : parseJsonReading(line, lineNumber);
+                if (reading == null) continue;
+                checkMeter(reading, "at line " + lineNumber);
+                batch.add(reading);
+                if (batch.size() == ReadingIngestionService.BATCH_SIZE) {
+                    ingest(batch, user, response);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty()) ingest(batch, user, response);
+        } catch (CustomException e) {
+            throw withSavedCount(e, response);
+        }
+        return response;
+    }
+
+    private void checkMeter(Reading reading, String position) {
+        if (reading == null || reading.getMeter() == null || reading.getMeter().getId() == null)
+            throw new CustomException("The reading " + position + " has no meter", HttpStatus.BAD_REQUEST);
+    }
+
+    private CustomException withSavedCount(CustomException e, ReadingBatchResponse response) {
+        if (response.getReadings() == 0) return e;
+        return new CustomException(e.getMessage() + ". " + response.getReadings() + " readings were saved before " +
+                "the error", e.getHttpStatus());
+    }
+
+    private void ingest(List<Reading> readings, OwnUser user, ReadingBatchResponse response) {
+        response.setWorkOrders(response.getWorkOrders() + readingIngestionService.ingest(readings, user));
+        response.setReadings(response.getReadings() + readings.size());
+    }
+
+    private Reading parseJsonReading(String line, int lineNumber) {
+        try {
+            return objectMapper.readValue(line, Reading.class);
+        } catch (JsonProcessingException e) {
+            throw new CustomException("Invalid reading at line " + lineNumber, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * @return null for the header
+     */
+    private Reading parseCsvReading(String line, int lineNumber) {
+        String[] columns = line.split(",");
+        if (columns.length != 2)
+            throw new CustomException("Invalid reading at line " + lineNumber, HttpStatus.BAD_REQUEST);
+        if (lineNumber == 1 && !Helper.isNumeric(columns[0].trim())) return null;
+        try {
+            Meter meter = new Meter();
+            meter.setId(Long.parseLong(columns[0].trim()));
+            Reading reading = new Reading();
+            reading.setMeter(meter);
+            reading.setValue(Long.parseLong(columns[1].trim()));
+            return reading;
+        } catch (NumberFormatException e) {
+            throw new CustomException("Invalid reading at line " + lineNumber, HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @PatchMapping("/{id}")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
     @ApiResponses(value = {//
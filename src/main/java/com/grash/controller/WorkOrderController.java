@@ -4,7 +4,6 @@ import com.grash.advancedsearch.SearchCriteria;
 import com.grash.dto.*;
 import com.grash.dto.workOrder.WorkOrderPostDTO;
 import com.grash.exception.CustomException;
-import com.grash.factory.StorageServiceFactory;
 import com.grash.mapper.PreventiveMaintenanceMapper;
 import com.grash.mapper.WorkOrderMapper;
 import com.grash.model.*;
@@ -13,8 +12,6 @@ import com.grash.model.enums.*;
 import com.grash.model.enums.workflow.WFMainCondition;
 import com.grash.service.*;
 import com.grash.utils.Helper;
-import com.grash.utils.MultipartFileImpl;
-import com.itextpdf.html2pdf.HtmlConverter;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -22,25 +19,23 @@ import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
-import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.util.Pair;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
-import org.thymeleaf.context.Context;
-import org.thymeleaf.spring5.SpringTemplateEngine;
 
 import javax.persistence.EntityManager;
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 import javax.transaction.Transactional;
 import javax.validation.Valid;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -56,6 +51,8 @@ import static java.util.stream.Collectors.toCollection;
 @Transactional
 public class WorkOrderController {
 
+    private static final long REPORT_TIMEOUT_SECONDS = 30;
+
     private final WorkOrderService workOrderService;
     private final WorkOrderMapper workOrderMapper;
     private final UserService userService;
@@ -69,18 +66,11 @@ public class WorkOrderController {
     private final NotificationService notificationService;
     private final EmailService2 emailService2;
     private final TeamService teamService;
-    private final TaskService taskService;
-    private final RelationService relationService;
-    private final AdditionalCostService additionalCostService;
-    private final WorkOrderHistoryService workOrderHistoryService;
-    private final SpringTemplateEngine thymeleafTemplateEngine;
-    private final StorageServiceFactory storageServiceFactory;
     private final WorkflowService workflowService;
-    private final Environment environment;
     private final PreventiveMaintenanceService preventiveMaintenanceService;
     private final EntityManager em;
     private final PreventiveMaintenanceMapper preventiveMaintenanceMapper;
-    private final BrandingService brandingService;
+    private final WorkOrderReportService workOrderReportService;
 
 
     @Value("${frontend.url}")
@@ -111,17 +101,25 @@ public class WorkOrderController {
                                                                              dateRange, HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
         if (user.getRole().getViewPermissions().contains(PermissionEntity.WORK_ORDERS)) {
-            List<CalendarEvent<WorkOrderBaseMiniDTO>> result = new ArrayList<>();
-            result.addAll(preventiveMaintenanceService.getEvents(dateRange.getEnd(), user.getCompany().getId()).stream()
-                    .filter(calendarEvent -> calendarEvent.getDate().after(new Date()))
-                    .filter(calendarEvent -> canViewWorkOrderBase(user, calendarEvent.getEvent()))
-                    .map(calendarEvent -> new CalendarEvent<>(calendarEvent.getType(),
-                            preventiveMaintenanceMapper.toBaseMiniDto(calendarEvent.getEvent()),
-                            calendarEvent.getDate()))
-                    .collect(Collectors.toList()));
-            result.addAll(workOrderService.findByDueDateBetweenAndCompany(dateRange.getStart(), dateRange.getEnd(),
-                    user.getCompany().getId()).stream().filter(workOrder -> canViewWorkOrderBase(user, workOrder)).map(workOrderMapper::toBaseMiniDto).map(workOrderMiniDTO -> new CalendarEvent<>("WORK_ORDER",
-                    workOrderMiniDTO, workOrderMiniDTO.getDueDate())).collect(Collectors.toList()));
+            Date now = new Date();
+            Date start = dateRange.getStart() == null || dateRange.getStart().before(now) ? now :
+                    dateRange.getStart();
+            Stream<CalendarEvent<WorkOrderBaseMiniDTO>> preventiveMaintenanceEvents =
+                    preventiveMaintenanceService.getEvents(start, dateRange.getEnd(), user.getCompany().getId())
+                            .stream()
+                            .filter(calendarEvent -> canViewWorkOrderBase(user, calendarEvent.getEvent()))
+                            .map(calendarEvent -> new CalendarEvent<>(calendarEvent.getType(),
+                                    preventiveMaintenanceMapper.toBaseMiniDto(calendarEvent.getEvent()),
+                                    calendarEvent.getDate()));
+            Stream<CalendarEvent<WorkOrderBaseMiniDTO>> workOrderEvents =
+                    workOrderService.findByDueDateBetweenAndCompany(dateRange.getStart(), dateRange.getEnd(),
+                                    user.getCompany().getId()).stream()
+                            .filter(workOrder -> canViewWorkOrderBase(user, workOrder))
+                            .map(workOrderMapper::toBaseMiniDto)
+                            .map(workOrderMiniDTO -> new CalendarEvent<>("WORK_ORDER", workOrderMiniDTO,
+                                    workOrderMiniDTO.getDueDate()));
+            List<CalendarEvent<WorkOrderBaseMiniDTO>> result = Stream.concat(preventiveMaintenanceEvents,
+                    workOrderEvents).sorted(Comparator.comparing(CalendarEvent::getDate)).collect(Collectors.toList());
             return result;
         } else throw new CustomException("Access Denied", HttpStatus.FORBIDDEN);
     }
@@ -148,11 +146,15 @@ public class WorkOrderController {
     @GetMapping("/location/{id}")
     @PreAuthorize("permitAll()")
     public Collection<WorkOrderShowDTO> getByLocation(@ApiParam("id") @PathVariable("id") Long id,
+                                                      @RequestParam(defaultValue = "false") boolean includeSubLocations,
                                                       HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
         Optional<Location> optionalLocation = locationService.findById(id);
         if (optionalLocation.isPresent()) {
-            return workOrderService.findByLocation(id).stream().map(workOrderMapper::toShowDto).collect(Collectors.toList());
+            Collection<WorkOrder> workOrders = includeSubLocations ?
+                    workOrderService.findByLocationSubtree(optionalLocation.get()) :
+                    workOrderService.findByLocation(id);
+            return workOrders.stream().map(workOrderMapper::toShowDto).collect(Collectors.toList());
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
 
@@ -366,77 +368,79 @@ public class WorkOrderController {
         } else throw new CustomException("WorkOrder not found", HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Waits at most {@link #REPORT_TIMEOUT_SECONDS} for the report, then answers 202 with the job to poll. Runs
+     * outside of a transaction so that the waiting request doesn't hold a connection the report needs.
+     */
     @RequestMapping(path = "/report/{id}")
-    @Transactional
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
     @PreAuthorize("hasRole('ROLE_CLIENT')")
-    public ResponseEntity<?> getPDF(@ApiParam("id") @PathVariable("id") Long id, HttpServletRequest req,
-                                    HttpServletResponse response) throws IOException {
+    public ResponseEntity<?> getPDF(@ApiParam("id") @PathVariable("id") Long id, HttpServletRequest req) {
         OwnUser user = userService.whoami(req);
-        StorageService storageService = storageServiceFactory.getStorageService();
-        Optional<WorkOrder> optionalWorkOrder = workOrderService.findById(id);
-        if (optionalWorkOrder.isPresent()) {
-            WorkOrder savedWorkOrder = optionalWorkOrder.get();
-            if (user.getRole().getViewPermissions().contains(PermissionEntity.WORK_ORDERS) &&
-                    (user.getRole().getViewOtherPermissions().contains(PermissionEntity.WORK_ORDERS) || user.getId().equals(savedWorkOrder.getCreatedBy()) || savedWorkOrder.isAssignedTo(user))) {
-                Context thymeleafContext = new Context();
-                thymeleafContext.setLocale(Helper.getLocale(user));
-                Optional<OwnUser> creator = savedWorkOrder.getCreatedBy() == null ? Optional.empty() :
-                        userService.findById(savedWorkOrder.getCreatedBy());
-                List<Task> tasks = taskService.findByWorkOrder(id);
-                Map<Long, String[]> tasksImagesUrls = tasks.stream()
-                        .collect(Collectors.toMap(
-                                Task::getId,
-                                task -> task.getImages().stream()
-                                        .map(image -> storageService.generateSignedUrl(image, 5))
-                                        .toArray(String[]::new)
-                        ));
-                Collection<PartQuantity> partQuantities = partQuantityService.findByWorkOrder(id);
-                Collection<Labor> labors = laborService.findByWorkOrder(id);
-                Collection<Relation> relations = relationService.findByWorkOrder(id);
-                Collection<AdditionalCost> additionalCosts = additionalCostService.findByWorkOrder(id);
-                Collection<WorkOrderHistory> workOrderHistories = workOrderHistoryService.findByWorkOrder(id);
-                Map<String, Object> variables = new HashMap<String, Object>() {{
-                    put("companyName", user.getCompany().getName());
-                    put("companyPhone", user.getCompany().getPhone());
-                    put("currency",
-                            user.getCompany().getCompanySettings().getGeneralPreferences().getCurrency().getCode());
-                    put("assignedTo",
-                            Helper.enumerate(savedWorkOrder.getAssignedTo().stream().map(OwnUser::getFullName).collect(Collectors.toList())));
-                    put("customers",
-                            Helper.enumerate(savedWorkOrder.getCustomers().stream().map(Customer::getName).collect(Collectors.toList())));
-                    put("workOrder", savedWorkOrder);
-                    put("primaryUserName", savedWorkOrder.getPrimaryUser() == null ? null :
-                            savedWorkOrder.getPrimaryUser().getFullName());
-                    put("createdBy", creator.<Object>map(OwnUser::getFullName).orElse(null));
-                    put("tasks", tasks);
-                    put("labors", labors);
-                    put("relations", relations);
-                    put("additionalCosts", additionalCosts);
-                    put("workOrderHistories", workOrderHistories);
-                    put("partQuantities", partQuantities);
-                    put("environment", environment);
-                    put("tasksImagesUrls", tasksImagesUrls);
-                    put("messageSource", messageSource);
-                    put("locale", Helper.getLocale(user));
-                    put("backgroundColor", brandingService.getMailBackgroundColor());
-                }};
-                thymeleafContext.setVariables(variables);
-
-                String reportHtml = thymeleafTemplateEngine.process("work-order-report.html", thymeleafContext);
-
-                /* Setup Source and target I/O streams */
-                ByteArrayOutputStream target = new ByteArrayOutputStream();
-                /* Call convert method */
-                HtmlConverter.convertToPdf(reportHtml, target);
-                /* extract output as bytes */
-                byte[] bytes = target.toByteArray();
-                MultipartFile file = new MultipartFileImpl(bytes, "Work Order Report.pdf");
-                return ResponseEntity.ok()
-                        .body(new SuccessResponse(true, storageServiceFactory.getStorageService().uploadAndSign(file,
-                                "reports/" + user.getCompany().getId())));
-            } else throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
+        List<Long> workOrderIds = Collections.singletonList(id);
+        checkReportable(user, workOrderIds);
+        ReportJob job = workOrderReportService.createJob(workOrderIds, user.getCompany().getId(),
+                Helper.getLocale(user));
+        try {
+            job = runReportJob(job).get(REPORT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return ResponseEntity.accepted().body(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException("Interrupted while rendering the report", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            throw new CustomException(e.getCause().getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        if (job.getStatus() == ReportJob.ReportJobStatus.FAILED)
+            throw new CustomException(job.getError(), HttpStatus.INTERNAL_SERVER_ERROR);
+        return ResponseEntity.ok().body(new SuccessResponse(true, job.getUrl()));
+    }
+
+    @PostMapping("/report/jobs")
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    @PreAuthorize("hasRole('ROLE_CLIENT')")
+    public ResponseEntity<ReportJob> createReportJob(@RequestBody List<Long> ids, HttpServletRequest req) {
+        OwnUser user = userService.whoami(req);
+        List<Long> workOrderIds = ids.stream().distinct().collect(Collectors.toList());
+        if (workOrderIds.isEmpty() || workOrderIds.size() > WorkOrderReportService.MAX_WORK_ORDERS)
+            throw new CustomException("A report must contain between 1 and " + WorkOrderReportService.MAX_WORK_ORDERS
+                    + " work orders", HttpStatus.BAD_REQUEST);
+        checkReportable(user, workOrderIds);
+        ReportJob job = workOrderReportService.createJob(workOrderIds, user.getCompany().getId(),
+                Helper.getLocale(user));
+        runReportJob(job);
+        return ResponseEntity.ok(job);
+    }
+
+    @GetMapping("/report/jobs/{id}")
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    @PreAuthorize("hasRole('ROLE_CLIENT')")
+    public ResponseEntity<ReportJob> getReportJob(@PathVariable("id") String id, HttpServletRequest req) {
+        OwnUser user = userService.whoami(req);
+        Optional<ReportJob> optionalJob = workOrderReportService.findJob(id);
+        if (optionalJob.isPresent() && optionalJob.get().getCompanyId().equals(user.getCompany().getId())) {
+            return ResponseEntity.ok(optionalJob.get());
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
+    }
 
+    private void checkReportable(OwnUser user, List<Long> ids) {
+        for (Long id : ids) {
+            WorkOrder savedWorkOrder = workOrderService.findById(id)
+                    .orElseThrow(() -> new CustomException("Not found", HttpStatus.NOT_FOUND));
+            if (!(user.getRole().getViewPermissions().contains(PermissionEntity.WORK_ORDERS) &&
+                    (user.getRole().getViewOtherPermissions().contains(PermissionEntity.WORK_ORDERS) || user.getId().equals(savedWorkOrder.getCreatedBy()) || savedWorkOrder.isAssignedTo(user))))
+                throw new CustomException("Access denied", HttpStatus.FORBIDDEN);
+        }
+    }
+
+    private CompletableFuture<ReportJob> runReportJob(ReportJob job) {
+        try {
+            return workOrderReportService.runJob(job);
+        } catch (TaskRejectedException e) {
+            String error = "Too many reports are being generated, please try again later";
+            workOrderReportService.failJob(job, error);
+            throw new CustomException(error, HttpStatus.SERVICE_UNAVAILABLE);
+        }
     }
 
     @GetMapping("/urgent")
@@ -2,6 +2,8 @@ package com.grash.controller.analytics;
 
 import com.grash.dto.DateRange;
 import com.grash.dto.analytics.assets.*;
+import com.grash.dto.analytics.workOrders.WOCostBreakdown;
+import com.grash.dto.analytics.workOrders.WOCostRollup;
 import com.grash.exception.CustomException;
 import com.grash.model.Asset;
 import com.grash.model.AssetDowntime;
@@ -13,6 +15,7 @@ import com.grash.security.CurrentUser;
 import com.grash.service.AssetDowntimeService;
 import com.grash.service.AssetService;
 import com.grash.service.UserService;
+import com.grash.service.WorkOrderCostService;
 import com.grash.service.WorkOrderService;
 import com.grash.utils.AuditComparator;
 import com.grash.utils.Helper;
@@ -43,6 +46,7 @@ public class AssetAnalyticsController {
     private final UserService userService;
     private final AssetService assetService;
     private final AssetDowntimeService assetDowntimeService;
+    private final WorkOrderCostService workOrderCostService;
 
     @PostMapping("/time-cost")
     @PreAuthorize("hasRole('ROLE_CLIENT')")
@@ -55,17 +59,17 @@ public class AssetAnalyticsController {
         if (user.canSeeAnalytics()) {
             Collection<Asset> assets = assetService.findByCompanyAndBefore(user.getCompany().getId(),
                     dateRange.getEnd());
+            boolean includeLaborCost =
+                    user.getCompany().getCompanySettings().getGeneralPreferences().isLaborCostInTotalCost();
+            Map<Long, WOCostRollup> costsByAsset =
+                    workOrderCostService.getCompleteCostsByCompanyAndCreatedAtBetween(user.getCompany().getId(),
+                            dateRange.getStart(), dateRange.getEnd()).groupBy(WOCostBreakdown::getAssetId);
             Collection<TimeCostByAsset> result = new ArrayList<>();
             assets.forEach(asset -> {
-                Collection<WorkOrder> completeWO = workOrderService.findByAssetAndCreatedAtBetween(asset.getId(),
-                                dateRange.getStart(), dateRange.getEnd())
-                        .stream().filter(workOrder -> workOrder.getStatus().equals(Status.COMPLETE)).collect(Collectors.toList());
-                long time = workOrderService.getLaborCostAndTime(completeWO).getSecond();
-                double cost = workOrderService.getAllCost(completeWO,
-                        user.getCompany().getCompanySettings().getGeneralPreferences().isLaborCostInTotalCost());
+                WOCostRollup costs = costsByAsset.getOrDefault(asset.getId(), new WOCostRollup());
                 result.add(TimeCostByAsset.builder()
-                        .time(time)
-                        .cost(cost)
+                        .time(costs.getLaborTime())
+                        .cost(costs.getTotal(includeLaborCost))
                         .name(asset.getName())
                         .id(asset.getId())
                         .build());
@@ -251,9 +255,12 @@ public class AssetAnalyticsController {
                     assets.stream().filter(asset -> asset.getAcquisitionCost() != null).collect(Collectors.toList());
             double totalAcquisitionCost =
                     assetsWithAcquisitionCost.stream().mapToDouble(Asset::getAcquisitionCost).sum();
-            double totalWOCosts = getCompleteWOCosts(assets, includeLaborCost, dateRange);
+            WOCostRollup costs =
+                    workOrderCostService.getCompleteCostsByCompanyAndCreatedAtBetween(user.getCompany().getId(),
+                            dateRange.getStart(), dateRange.getEnd());
+            double totalWOCosts = getCompleteWOCosts(assets, includeLaborCost, costs);
             double rav = assetsWithAcquisitionCost.isEmpty() ? 0 : getCompleteWOCosts(assetsWithAcquisitionCost,
-                    includeLaborCost, dateRange) * 100 / totalAcquisitionCost;
+                    includeLaborCost, costs) * 100 / totalAcquisitionCost;
             return ResponseEntity.ok(AssetsCosts.builder()
                     .totalWOCosts(totalWOCosts)
                     .totalAcquisitionCost(totalAcquisitionCost)
@@ -272,6 +279,9 @@ public class AssetAnalyticsController {
         if (user.canSeeAnalytics()) {
             Collection<Asset> assets = assetService.findByCompanyAndBefore(user.getCompany().getId(),
                     dateRange.getEnd());
+            WOCostRollup costs =
+                    workOrderCostService.getCompleteCostsByCompanyAndCreatedAtBetween(user.getCompany().getId(),
+                            dateRange.getStart(), dateRange.getEnd());
             return ResponseEntity.ok(assets.stream().map(asset -> {
                 Collection<AssetDowntime> downtimes = assetDowntimeService.findByAsset(asset.getId()).stream()
                         .filter(assetDowntime -> assetDowntime.getDuration() != 0).collect(Collectors.toList());
@@ -279,7 +289,7 @@ public class AssetAnalyticsController {
                         downtimes.stream().mapToLong(assetDowntime -> assetDowntime.getDateRangeDuration(dateRange)).sum();
                 double totalWOCosts = getCompleteWOCosts(Collections.singleton(asset),
                         user.getCompany().getCompanySettings().getGeneralPreferences().isLaborCostInTotalCost(),
-                        dateRange);
+                        costs);
                 return DowntimesAndCostsByAsset.builder()
                         .id(asset.getId())
                         .name(asset.getName())
@@ -307,20 +317,20 @@ public class AssetAnalyticsController {
             long totalDaysInRange = ChronoUnit.DAYS.between(Helper.dateToLocalDate(dateRange.getStart()),
                     endDateExclusive);
             int points = Math.toIntExact(Math.min(15, totalDaysInRange));
+            WOCostRollup costs =
+                    workOrderCostService.getCompleteCostsByCompanyAndCompletedOnBetween(user.getCompany().getId(),
+                            Helper.localDateToDate(currentDate), Helper.localDateToDate(endDateLocale));
 
             for (int i = 0; i < points; i++) {
                 LocalDate nextDate = currentDate.plusDays(totalDaysInRange / points); // Distribute evenly over the
                 // range
                 nextDate = nextDate.isAfter(endDateLocale) ? endDateLocale : nextDate; // Adjust for the end date
-                Collection<WorkOrder> completeWorkOrders =
-                        workOrderService.findByCompletedOnBetweenAndCompany(Helper.localDateToDate(currentDate),
-                                        Helper.localDateToDate(nextDate), user.getCompany().getId())
-                                .stream().filter(workOrder -> workOrder.getStatus().equals(Status.COMPLETE)).collect(Collectors.toList());
                 Collection<AssetDowntime> downtimes =
                         assetDowntimeService.findByStartsOnBetweenAndCompany(Helper.localDateToDate(currentDate),
                                 Helper.localDateToDate(nextDate), user.getCompany().getId());
                 result.add(DowntimesByDate.builder()
-                        .workOrdersCosts(workOrderService.getAllCost(completeWorkOrders,
+                        .workOrdersCosts(costs.filterCompletedOnBetween(Helper.localDateToDate(currentDate),
+                                Helper.localDateToDate(nextDate)).getTotal(
                                 user.getCompany().getCompanySettings().getGeneralPreferences().isLaborCostInTotalCost()))
                         .duration(downtimes.stream().mapToLong(AssetDowntime::getDuration).sum())
                         .date(Helper.localDateToDate(currentDate)).build());
@@ -355,9 +365,9 @@ public class AssetAnalyticsController {
         } else throw new CustomException("Access Denied", HttpStatus.FORBIDDEN);
     }
 
-    private double getCompleteWOCosts(Collection<Asset> assets, boolean includeLaborCost, DateRange dateRange) {
-        return assets.stream().map(asset -> workOrderService.findByAssetAndCreatedAtBetween(asset.getId(),
-                dateRange.getStart(), dateRange.getEnd()).stream().filter(workOrder -> workOrder.getStatus().equals(Status.COMPLETE)).collect(Collectors.toList())).mapToDouble(workOrder -> workOrderService.getAllCost(workOrder, includeLaborCost)).sum();
+    private double getCompleteWOCosts(Collection<Asset> assets, boolean includeLaborCost, WOCostRollup costs) {
+        Set<Long> assetIds = assets.stream().map(Asset::getId).collect(Collectors.toSet());
+        return costs.filter(breakdown -> assetIds.contains(breakdown.getAssetId())).getTotal(includeLaborCost);
     }
 
     private long getLivingTime(Asset asset, DateRange dateRange) {
@@ -9,4 +9,11 @@ public class FileMiniDTO {
     private Long id;
     private String name;
     private String url;
+
+    /**
+     * Null when the image has no smaller variant, the url being the one to use
+     */
+    private String thumbnailUrl;
+
+    private String webUrl;
 }
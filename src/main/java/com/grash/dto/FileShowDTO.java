@@ -18,6 +18,13 @@ public class FileShowDTO extends AuditShowDTO {
 
     private String url;
 
+    /**
+     * Null when the image has no smaller variant, the url being the one to use
+     */
+    private String thumbnailUrl;
+
+    private String webUrl;
+
     private FileType type = FileType.OTHER;
 
     private boolean hidden = false;
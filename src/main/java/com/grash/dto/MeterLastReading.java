@@ -0,0 +1,10 @@
+package com.grash.dto;
+
+/**
+ * The last reading value of a meter, read while locking it
+ */
+public interface MeterLastReading {
+    Long getId();
+
+    Long getLastReadingValue();
+}
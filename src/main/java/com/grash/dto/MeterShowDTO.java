@@ -31,5 +31,7 @@ public class MeterShowDTO extends AuditShowDTO {
 
     private Date lastReading;
 
+    private Long lastReadingValue;
+
     private Date nextReading;
 }
@@ -0,0 +1,23 @@
+package com.grash.dto;
+
+import com.grash.model.WorkOrderMeterTrigger;
+import com.grash.model.enums.WorkOrderMeterTriggerCondition;
+import lombok.Data;
+
+@Data
+public class MeterThreshold {
+    private final Long triggerId;
+    private final WorkOrderMeterTriggerCondition triggerCondition;
+    private final int value;
+
+    public MeterThreshold(WorkOrderMeterTrigger trigger) {
+        this.triggerId = trigger.getId();
+        this.triggerCondition = trigger.getTriggerCondition();
+        this.value = trigger.getValue();
+    }
+
+    public boolean isBreachedBy(long readingValue) {
+        return triggerCondition == WorkOrderMeterTriggerCondition.LESS_THAN ? readingValue < value :
+                readingValue > value;
+    }
+}
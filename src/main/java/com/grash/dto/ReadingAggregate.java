@@ -0,0 +1,18 @@
+package com.grash.dto;
+
+import java.util.Date;
+
+/**
+ * The readings of a meter within one bucket of a chart
+ */
+public interface ReadingAggregate {
+    Date getBucketStart();
+
+    Long getMin();
+
+    Long getMax();
+
+    Double getAverage();
+
+    Long getCount();
+}
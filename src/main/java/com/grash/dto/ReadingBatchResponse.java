@@ -0,0 +1,13 @@
+package com.grash.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadingBatchResponse {
+    private int readings;
+    private int workOrders;
+}
@@ -0,0 +1,12 @@
+package com.grash.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StoredFileInfo {
+    private long size;
+    private String etag;
+    private String contentType;
+}
@@ -0,0 +1,7 @@
+package com.grash.dto.analytics.assets;
+
+public interface DowntimeDurationByAsset {
+    Long getId();
+
+    Long getTotal();
+}
@@ -0,0 +1,13 @@
+package com.grash.dto.analytics.workOrders;
+
+public interface MobileWOCompletionCounts {
+    Long getTotal();
+
+    Long getComplete();
+
+    Long getCompleteWeek();
+
+    Long getCompliant();
+
+    Long getCompliantWeek();
+}
@@ -0,0 +1,15 @@
+package com.grash.dto.analytics.workOrders;
+
+public interface MobileWOCounts {
+    Long getOpen();
+
+    Long getOnHold();
+
+    Long getInProgress();
+
+    Long getComplete();
+
+    Long getToday();
+
+    Long getHigh();
+}
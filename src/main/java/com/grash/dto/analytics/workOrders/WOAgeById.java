@@ -0,0 +1,6 @@
+package com.grash.dto.analytics.workOrders;
+
+public interface WOAgeById extends WOCountById {
+    //sum of the ages in days
+    Long getAge();
+}
@@ -0,0 +1,12 @@
+package com.grash.dto.analytics.workOrders;
+
+public interface WOAssignmentCounts {
+    Long getId();
+
+    Long getComplete();
+
+    Long getIncomplete();
+
+    //sum of the incomplete work orders ages in days
+    Long getIncompleteAge();
+}
@@ -0,0 +1,9 @@
+package com.grash.dto.analytics.workOrders;
+
+public interface WOCompletionCounts {
+    Long getTotal();
+
+    Long getCompliant();
+
+    Long getReactive();
+}
@@ -0,0 +1,28 @@
+package com.grash.dto.analytics.workOrders;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+public class WOCostBreakdown {
+    private Long workOrderId;
+    private Long assetId;
+    private Date completedOn;
+    private long laborCost;
+    private long laborTime; //seconds
+    private double partCost;
+    private double additionalCost;
+
+    public WOCostBreakdown(Long workOrderId, Long assetId, Date completedOn) {
+        this.workOrderId = workOrderId;
+        this.assetId = assetId;
+        this.completedOn = completedOn;
+    }
+
+    public double getTotal(boolean includeLaborCost) {
+        return partCost + additionalCost + (includeLaborCost ? laborCost : 0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.grash.dto.analytics.workOrders;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Labor, part and additional costs of a set of work orders, per work order and in total. Work orders without any
+ * cost are absent from {@link #getByWorkOrder()}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WOCostRollup {
+    private Map<Long, WOCostBreakdown> byWorkOrder = new HashMap<>();
+
+    public long getLaborCost() {
+        return byWorkOrder.values().stream().mapToLong(WOCostBreakdown::getLaborCost).sum();
+    }
+
+    public long getLaborTime() {
+        return byWorkOrder.values().stream().mapToLong(WOCostBreakdown::getLaborTime).sum();
+    }
+
+    public double getPartCost() {
+        return byWorkOrder.values().stream().mapToDouble(WOCostBreakdown::getPartCost).sum();
+    }
+
+    public double getAdditionalCost() {
+        return byWorkOrder.values().stream().mapToDouble(WOCostBreakdown::getAdditionalCost).sum();
+    }
+
+    public double getTotal(boolean includeLaborCost) {
+        return byWorkOrder.values().stream().mapToDouble(breakdown -> breakdown.getTotal(includeLaborCost)).sum();
+    }
+
+    public WOCostRollup filter(Predicate<WOCostBreakdown> predicate) {
+        return new WOCostRollup(byWorkOrder.values().stream().filter(predicate)
+                .collect(Collectors.toMap(WOCostBreakdown::getWorkOrderId, Function.identity())));
+    }
+
+    //bounds included, like a between clause
+    public WOCostRollup filterCompletedOnBetween(Date start, Date end) {
+        return filter(breakdown -> breakdown.getCompletedOn() != null && !breakdown.getCompletedOn().before(start)
+                && !breakdown.getCompletedOn().after(end));
+    }
+
+    public <K> Map<K, WOCostRollup> groupBy(Function<WOCostBreakdown, K> classifier) {
+        Map<K, WOCostRollup> result = new HashMap<>();
+        byWorkOrder.values().stream().filter(breakdown -> classifier.apply(breakdown) != null)
+                .forEach(breakdown -> result.computeIfAbsent(classifier.apply(breakdown), key -> new WOCostRollup())
+                        .getByWorkOrder().put(breakdown.getWorkOrderId(), breakdown));
+        return result;
+    }
+}
@@ -0,0 +1,7 @@
+package com.grash.dto.analytics.workOrders;
+
+public interface WOCountById {
+    Long getId();
+
+    Long getTotal();
+}
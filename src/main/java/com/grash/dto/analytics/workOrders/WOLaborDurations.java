@@ -0,0 +1,8 @@
+package com.grash.dto.analytics.workOrders;
+
+//in seconds
+public interface WOLaborDurations {
+    Long getTotal();
+
+    Long getReactive();
+}
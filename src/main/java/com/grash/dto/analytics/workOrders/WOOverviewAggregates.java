@@ -0,0 +1,26 @@
+package com.grash.dto.analytics.workOrders;
+
+/**
+ * Raw sums backing the overview endpoints. Durations are summed per work order after truncation, exactly like
+ * {@link com.grash.utils.Helper#getDateDiff}, so averages are obtained by dividing by the matching count.
+ */
+public interface WOOverviewAggregates {
+    Long getTotal();
+
+    Long getComplete();
+
+    Long getCompliant();
+
+    Long getReacted();
+
+    //in hours
+    Long getReactionTime();
+
+    //in days
+    Long getCycleTime();
+
+    Long getIncomplete();
+
+    //in days
+    Long getIncompleteAge();
+}
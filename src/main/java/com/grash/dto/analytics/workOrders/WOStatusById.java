@@ -0,0 +1,13 @@
+package com.grash.dto.analytics.workOrders;
+
+import com.grash.model.enums.Status;
+
+import java.util.Date;
+
+public interface WOStatusById {
+    Long getId();
+
+    Date getCreatedAt();
+
+    Status getStatus();
+}
@@ -0,0 +1,14 @@
+package com.grash.dto.analytics.workOrders;
+
+import com.grash.model.enums.Priority;
+import com.grash.model.enums.Status;
+
+public interface WOStatusPriorityCount {
+    Status getStatus();
+
+    Priority getPriority();
+
+    Long getTotal();
+
+    Double getEstimatedDuration();
+}
@@ -0,0 +1,11 @@
+package com.grash.dto.analytics.workOrders;
+
+import com.grash.model.enums.Status;
+
+public interface WOStatusRevision {
+    Long getId();
+
+    Long getTimestamp();
+
+    Status getStatus();
+}
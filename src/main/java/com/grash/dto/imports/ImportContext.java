@@ -0,0 +1,98 @@
+package com.grash.dto.imports;
+
+import com.grash.model.Company;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import javax.persistence.EntityManager;
+import java.util.*;
+
+/**
+ * Entities referenced by the rows of an import, resolved up front by name (or email for users) and barcode, so that
+ * importing a row doesn't query the database. Only ids are kept; rows get references bound to the current
+ * transaction.
+ * <p>
+ * Keys registered while importing a chunk are pending until {@link #commit()}, and are forgotten by
+ * {@link #rollback()} if the chunk transaction fails.
+ */
+@RequiredArgsConstructor
+public class ImportContext {
+    @Getter
+    private final Company company;
+    private final EntityManager em;
+    private final Map<Class<?>, Map<String, Long>> idsByKey = new HashMap<>();
+    private final Map<Class<?>, Map<String, Long>> idsByBarcode = new HashMap<>();
+    private final Deque<Runnable> pending = new ArrayDeque<>();
+
+    public void putIds(Class<?> type, Map<String, Long> ids) {
+        ids.forEach((key, id) -> keys(type).putIfAbsent(key, id));
+    }
+
+    public void putBarcodeIds(Class<?> type, Map<String, Long> ids) {
+        barcodes(type).putAll(ids);
+    }
+
+    public <T> Optional<T> find(Class<T> type, String key) {
+        if (key == null) return Optional.empty();
+        Long id = keys(type).get(normalize(key));
+        return Optional.ofNullable(id == null ? null : em.getReference(type, id));
+    }
+
+    public <T> List<T> findAll(Class<T> type, Collection<String> keys) {
+        List<T> result = new ArrayList<>();
+        keys.forEach(key -> find(type, key).ifPresent(result::add));
+        return result;
+    }
+
+    /**
+     * Makes an imported entity resolvable by the rows imported after it, unless another entity already has this key
+     */
+    public void register(Class<?> type, String key, Long id) {
+        if (key == null) return;
+        String normalizedKey = normalize(key);
+        Map<String, Long> keys = keys(type);
+        if (keys.putIfAbsent(normalizedKey, id) == null) {
+            pending.push(() -> keys.remove(normalizedKey, id));
+        }
+    }
+
+    public Optional<Long> findIdByBarcode(Class<?> type, String barcode) {
+        return Optional.ofNullable(barcode == null ? null : barcodes(type).get(barcode));
+    }
+
+    public void registerBarcode(Class<?> type, String previousBarcode, String barcode, Long id) {
+        Map<String, Long> barcodes = barcodes(type);
+        if (previousBarcode != null && barcodes.remove(previousBarcode, id)) {
+            pending.push(() -> barcodes.put(previousBarcode, id));
+        }
+        if (barcode != null) {
+            Long previousId = barcodes.put(barcode, id);
+            pending.push(() -> {
+                if (previousId == null) barcodes.remove(barcode, id);
+                else barcodes.put(barcode, previousId);
+            });
+        }
+    }
+
+    public void commit() {
+        pending.clear();
+    }
+
+    public void rollback() {
+        while (!pending.isEmpty()) {
+            pending.pop().run();
+        }
+    }
+
+    public static String normalize(String key) {
+        return key.toLowerCase(Locale.ROOT);
+    }
+
+    private Map<String, Long> keys(Class<?> type) {
+        return idsByKey.computeIfAbsent(type, k -> new HashMap<>());
+    }
+
+    private Map<String, Long> barcodes(Class<?> type) {
+        return idsByBarcode.computeIfAbsent(type, k -> new HashMap<>());
+    }
+}
@@ -0,0 +1,16 @@
+package com.grash.dto.imports;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportError {
+    /**
+     * Index of the row in the imported list
+     */
+    private int row;
+    private String message;
+}
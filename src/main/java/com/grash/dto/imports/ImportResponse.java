@@ -5,6 +5,9 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @Builder
@@ -12,4 +15,6 @@ import lombok.NoArgsConstructor;
 public class ImportResponse {
     private int created;
     private int updated;
+    @Builder.Default
+    private List<ImportError> errors = new ArrayList<>();
 }
@@ -0,0 +1,18 @@
+package com.grash.dto.outbox;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailMessage {
+    private String[] to;
+    private String subject;
+    private Map<String, Object> templateModel;
+    private String template;
+    private String languageTag;
+}
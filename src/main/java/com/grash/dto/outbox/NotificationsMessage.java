@@ -0,0 +1,28 @@
+package com.grash.dto.outbox;
+
+import com.grash.model.enums.NotificationType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationsMessage {
+    private String title;
+    private boolean mobile;
+    private List<Item> notifications = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private String message;
+        private Long userId;
+        private NotificationType notificationType;
+        private Long resourceId;
+    }
+}
@@ -17,6 +17,10 @@ public class StorageServiceFactory {
     private final GCPService gcpService;
     private final MinioService minioService;
 
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
     public StorageService getStorageService() {
         switch (storageType) {
             case GCP:
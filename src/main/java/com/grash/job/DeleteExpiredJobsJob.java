@@ -0,0 +1,24 @@
+package com.grash.job;
+
+import com.grash.service.ExportService;
+import com.grash.service.WorkOrderReportService;
+import lombok.RequiredArgsConstructor;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@DisallowConcurrentExecution
+public class DeleteExpiredJobsJob implements Job {
+
+    private final WorkOrderReportService workOrderReportService;
+    private final ExportService exportService;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        workOrderReportService.deleteExpiredJobs();
+        exportService.deleteExpiredJobs();
+    }
+}
@@ -0,0 +1,22 @@
+package com.grash.job;
+
+import com.grash.service.OutboxService;
+import lombok.RequiredArgsConstructor;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@DisallowConcurrentExecution
+public class OutboxDispatchJob implements Job {
+
+    private final OutboxService outboxService;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        outboxService.dispatchPending();
+        outboxService.deleteProcessed();
+    }
+}
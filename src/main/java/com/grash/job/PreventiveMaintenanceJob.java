@@ -0,0 +1,22 @@
+package com.grash.job;
+
+import com.grash.service.ScheduleService;
+import lombok.RequiredArgsConstructor;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class PreventiveMaintenanceJob implements Job {
+
+    public static final String SCHEDULE_ID = "scheduleId";
+
+    private final ScheduleService scheduleService;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        scheduleService.createWorkOrder(context.getMergedJobDataMap().getLong(SCHEDULE_ID),
+                context.getScheduledFireTime());
+    }
+}
@@ -0,0 +1,20 @@
+package com.grash.job;
+
+import com.grash.service.ScheduleService;
+import lombok.RequiredArgsConstructor;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class PreventiveMaintenanceNotificationJob implements Job {
+
+    private final ScheduleService scheduleService;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        scheduleService.sendComingWorkOrderNotification(context.getMergedJobDataMap()
+                .getLong(PreventiveMaintenanceJob.SCHEDULE_ID));
+    }
+}
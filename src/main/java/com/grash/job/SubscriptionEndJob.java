@@ -0,0 +1,21 @@
+package com.grash.job;
+
+import com.grash.service.SubscriptionService;
+import lombok.RequiredArgsConstructor;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class SubscriptionEndJob implements Job {
+
+    public static final String SUBSCRIPTION_ID = "subscriptionId";
+
+    private final SubscriptionService subscriptionService;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        subscriptionService.endSubscription(context.getMergedJobDataMap().getLong(SUBSCRIPTION_ID));
+    }
+}
@@ -7,7 +7,6 @@ import com.grash.dto.MeterShowDTO;
 import com.grash.model.Asset;
 import com.grash.model.Meter;
 import com.grash.model.Reading;
-import com.grash.service.AssetService;
 import com.grash.service.ReadingService;
 import com.grash.utils.AuditComparator;
 import com.grash.utils.Helper;
@@ -25,7 +24,7 @@ public interface AssetMapper {
     @Mappings({})
     AssetPatchDTO toPatchDto(Asset model);
 
-    AssetShowDTO toShowDto(Asset model, @Context AssetService assetService);
+    AssetShowDTO toShowDto(Asset model, @Context ChildrenLookup childrenLookup);
 
     @Mapping(target = "parentId", source = "parentAsset.id")
     @Mapping(target = "locationId", source = "location.id")
@@ -33,8 +32,8 @@ public interface AssetMapper {
 
     @AfterMapping
     default AssetShowDTO toShowDto(Asset model, @MappingTarget AssetShowDTO target,
-                                   @Context AssetService assetService) {
-        target.setHasChildren(assetService.hasChildren(model.getId()));
+                                   @Context ChildrenLookup childrenLookup) {
+        target.setHasChildren(childrenLookup.hasChildren(model.getId()));
         return target;
     }
 }
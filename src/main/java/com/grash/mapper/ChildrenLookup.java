@@ -0,0 +1,10 @@
+package com.grash.mapper;
+
+/**
+ * Tells the mappers which entities have children: with a count query for a single entity, or from the parent ids
+ * found with one query for a whole list.
+ */
+@FunctionalInterface
+public interface ChildrenLookup {
+    boolean hasChildren(Long id);
+}
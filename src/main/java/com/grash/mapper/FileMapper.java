@@ -1,13 +1,14 @@
 package com.grash.mapper;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import com.grash.dto.FileMiniDTO;
 import com.grash.dto.FileShowDTO;
-import com.grash.factory.StorageServiceFactory;
 import com.grash.model.File;
-import com.grash.service.StorageService;
+import com.grash.service.ImageDerivativeService;
+import com.grash.service.SignedUrlService;
 import org.mapstruct.AfterMapping;
 import org.mapstruct.Mapper;
 import org.mapstruct.MappingTarget;
@@ -17,30 +18,54 @@ import org.springframework.context.annotation.Lazy;
 
 @Mapper(componentModel = "spring")
 public abstract class FileMapper {
+    private static final long URL_EXPIRATION_MINUTES = 60 * 3;
 
     @Lazy
     @Autowired
-    private StorageServiceFactory storageServiceFactory;
+    private SignedUrlService signedUrlService;
 
     @Mappings({})
     public abstract FileMiniDTO toMiniDto(File model);
 
     public abstract FileShowDTO toShowDto(File model);
 
+    /**
+     * Used by the other mappers for the collections of files, so that their URLs are signed together
+     */
+    public List<FileMiniDTO> toMiniDtos(Collection<File> models) {
+        if (models == null) return null;
+        signedUrlService.getSignedUrls(models, URL_EXPIRATION_MINUTES);
+        return models.stream().map(this::toMiniDto).collect(Collectors.toList());
+    }
+
+    public List<FileShowDTO> toShowDtos(Collection<File> models) {
+        if (models == null) return null;
+        signedUrlService.getSignedUrls(models, URL_EXPIRATION_MINUTES);
+        return models.stream().map(this::toShowDto).collect(Collectors.toList());
+    }
+
     @AfterMapping
     protected FileShowDTO toShowDto(File model, @MappingTarget FileShowDTO target) {
         target.setUrl(getSignedUrl(model));
+        target.setThumbnailUrl(getSignedUrl(model.getThumbnailPath()));
+        target.setWebUrl(getSignedUrl(model.getWebPath()));
         return target;
     }
 
     @AfterMapping
     protected FileMiniDTO toMiniDto(File model, @MappingTarget FileMiniDTO target) {
         target.setUrl(getSignedUrl(model));
+        target.setThumbnailUrl(getSignedUrl(model.getThumbnailPath()));
+        target.setWebUrl(getSignedUrl(model.getWebPath()));
         return target;
     }
 
     private String getSignedUrl(File file) {
-        StorageService storageService = storageServiceFactory.getStorageService();
-        return storageService.generateSignedUrl(file.getPath(), 60 * 3);
+        return signedUrlService.getSignedUrl(file, URL_EXPIRATION_MINUTES);
+    }
+
+    private String getSignedUrl(String derivativePath) {
+        return derivativePath == null ? null : signedUrlService.getSignedUrl(derivativePath,
+                ImageDerivativeService.CONTENT_TYPE, URL_EXPIRATION_MINUTES);
     }
 }
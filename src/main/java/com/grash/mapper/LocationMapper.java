@@ -8,7 +8,6 @@ import com.grash.dto.LocationShowDTO;
 import com.grash.model.Asset;
 import com.grash.model.Location;
 import com.grash.service.AssetService;
-import com.grash.service.LocationService;
 import org.mapstruct.*;
 
 @Mapper(componentModel = "spring", uses = {CustomerMapper.class, VendorMapper.class, UserMapper.class,
@@ -19,15 +18,15 @@ public interface LocationMapper {
     @Mappings({})
     LocationPatchDTO toPatchDto(Location model);
 
-    LocationShowDTO toShowDto(Location model, @Context LocationService locationService);
+    LocationShowDTO toShowDto(Location model, @Context ChildrenLookup childrenLookup);
 
     @Mapping(source = "parentLocation.id", target = "parentId")
     LocationMiniDTO toMiniDto(Location model);
 
     @AfterMapping
     default LocationShowDTO toShowDto(Location model, @MappingTarget LocationShowDTO target,
-                                      @Context LocationService locationService) {
-        target.setHasChildren(locationService.hasChildren(model.getId()));
+                                      @Context ChildrenLookup childrenLookup) {
+        target.setHasChildren(childrenLookup.hasChildren(model.getId()));
         return target;
     }
 }
@@ -38,6 +38,14 @@ public class Asset extends CompanyAudit {
     @OnDelete(action = OnDeleteAction.CASCADE)
     private Asset parentAsset;
 
+    /**
+     * The ids from the root asset down to this one, like {@code /1/5/12/}. Kept by a database trigger on insert and
+     * when the parent changes, so that a subtree or the ancestors are read with one query
+     */
+    @JsonIgnore
+    @Column(insertable = false, updatable = false)
+    private String path;
+
     private String area;
 
     private String description;
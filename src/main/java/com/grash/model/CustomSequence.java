@@ -23,30 +23,4 @@ public class CustomSequence {
     private Long preventiveMaintenanceSequence = 1L;
     private Long locationSequence = 1L;
     private Long requestSequence = 1L;
-
-    // Constructor with company
-    public CustomSequence(Company company) {
-        this.company = company;
-    }
-
-    // Methods to get and increment counters
-    public Long getAndIncrementWorkOrderSequence() {
-        return workOrderSequence++;
-    }
-
-    public Long getAndIncrementAssetSequence() {
-        return assetSequence++;
-    }
-
-    public Long getAndIncrementPreventiveMaintenanceSequence() {
-        return preventiveMaintenanceSequence++;
-    }
-
-    public Long getAndIncrementLocationSequence() {
-        return locationSequence++;
-    }
-
-    public Long getAndIncrementRequestSequence() {
-        return requestSequence++;
-    }
 }
@@ -0,0 +1,50 @@
+package com.grash.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.grash.model.enums.ExportType;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+/**
+ * A CSV export running in the background. Stored so that any node can answer its status, while only the node that
+ * created it runs it. {@code rowsCount} is saved once per page of rows
+ */
+@Entity
+@Data
+@NoArgsConstructor
+public class ExportJob {
+    @Id
+    private String id;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private ExportType type;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private ExportJobStatus status = ExportJobStatus.PENDING;
+
+    private long rowsCount;
+
+    private String url;
+
+    private String error;
+
+    @NotNull
+    private Date createdAt = new Date();
+
+    @JsonIgnore
+    @NotNull
+    private Long companyId;
+
+    public enum ExportJobStatus {
+        PENDING,
+        RUNNING,
+        COMPLETE,
+        FAILED
+    }
+}
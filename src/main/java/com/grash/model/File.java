@@ -23,6 +23,15 @@ public class File extends CompanyAudit {
     @NotNull
     private String path;
 
+    private String contentType;
+
+    /**
+     * Downscaled JPEG copies of an image, generated after the upload. Null when not generated yet, or when the
+     * original is already smaller
+     */
+    private String thumbnailPath;
+
+    private String webPath;
 
     private FileType type = FileType.OTHER;
 
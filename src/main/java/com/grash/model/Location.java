@@ -1,5 +1,6 @@
 package com.grash.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.grash.model.abstracts.CompanyAudit;
 import lombok.Data;
@@ -59,6 +60,14 @@ public class Location extends CompanyAudit {
     @OnDelete(action = OnDeleteAction.CASCADE)
     private Location parentLocation;
 
+    /**
+     * The ids from the root location down to this one, like {@code /1/5/12/}. Kept by a database trigger on insert
+     * and when the parent changes, so that a subtree or the ancestors are read with one query
+     */
+    @JsonIgnore
+    @Column(insertable = false, updatable = false)
+    private String path;
+
     @ManyToOne
     private File image;
 
@@ -12,6 +12,7 @@ import org.springframework.http.HttpStatus;
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 @Entity
@@ -53,6 +54,18 @@ public class Meter extends CompanyAudit {
     @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private Asset asset;
 
+    /**
+     * The latest reading, so that listing meters doesn't read their history. Only written by the update queries of
+     * {@link com.grash.repository.MeterRepository}, never from the entity, which may be stale
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(insertable = false, updatable = false)
+    private Long lastReadingValue;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(insertable = false, updatable = false)
+    private Date lastReadingAt;
+
     public void setUpdateFrequency(int updateFrequency){
         if(updateFrequency<1) throw new CustomException("Frequency should not be less than 1", HttpStatus.NOT_ACCEPTABLE);
         this.updateFrequency = updateFrequency;
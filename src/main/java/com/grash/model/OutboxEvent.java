@@ -0,0 +1,57 @@
+package com.grash.model;
+
+import com.grash.model.enums.OutboxEventStatus;
+import com.grash.model.enums.OutboxEventType;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+/**
+ * A side effect to deliver once the transaction that recorded it commits
+ */
+@Entity
+@Data
+@NoArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private OutboxEventType type;
+
+    @NotNull
+    @Column(unique = true)
+    private String idempotencyKey;
+
+    @NotNull
+    private String payload;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private OutboxEventStatus status = OutboxEventStatus.PENDING;
+
+    private int attempts;
+
+    @NotNull
+    private Date nextAttemptAt;
+
+    @NotNull
+    private Date createdAt;
+
+    private Date processedAt;
+
+    private String lastError;
+
+    public OutboxEvent(OutboxEventType type, String idempotencyKey, String payload) {
+        this.type = type;
+        this.idempotencyKey = idempotencyKey;
+        this.payload = payload;
+        this.createdAt = new Date();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
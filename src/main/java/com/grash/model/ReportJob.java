@@ -0,0 +1,53 @@
+package com.grash.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A work order PDF report rendered in the background. Stored so that any node can answer its status, while only the
+ * node that created it renders it
+ */
+@Entity
+@Data
+@NoArgsConstructor
+public class ReportJob {
+    @Id
+    private String id;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private ReportJobStatus status = ReportJobStatus.PENDING;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @OrderColumn
+    private List<Long> workOrderIds = new ArrayList<>();
+
+    private String url;
+
+    private String error;
+
+    @NotNull
+    private Date createdAt = new Date();
+
+    @JsonIgnore
+    @NotNull
+    private Long companyId;
+
+    @JsonIgnore
+    private Locale locale;
+
+    public enum ReportJobStatus {
+        PENDING,
+        RUNNING,
+        COMPLETE,
+        FAILED
+    }
+}
@@ -0,0 +1,22 @@
+package com.grash.model.enums;
+
+import lombok.Getter;
+
+@Getter
+public enum ExportType {
+    WORK_ORDERS("Work Orders.csv", "work-orders", PermissionEntity.WORK_ORDERS),
+    ASSETS("Assets.csv", "assets", PermissionEntity.ASSETS),
+    LOCATIONS("Locations.csv", "locations", PermissionEntity.LOCATIONS),
+    PARTS("Parts.csv", "parts", PermissionEntity.PARTS_AND_MULTIPARTS),
+    METERS("Meters.csv", "meters", PermissionEntity.METERS);
+
+    private final String fileName;
+    private final String folder;
+    private final PermissionEntity permissionEntity;
+
+    ExportType(String fileName, String folder, PermissionEntity permissionEntity) {
+        this.fileName = fileName;
+        this.folder = folder;
+        this.permissionEntity = permissionEntity;
+    }
+}
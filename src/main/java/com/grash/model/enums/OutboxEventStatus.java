@@ -0,0 +1,7 @@
+package com.grash.model.enums;
+
+public enum OutboxEventStatus {
+    PENDING,
+    PROCESSED,
+    FAILED
+}
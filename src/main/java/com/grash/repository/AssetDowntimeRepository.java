@@ -1,7 +1,9 @@
 package com.grash.repository;
 
+import com.grash.dto.analytics.assets.DowntimeDurationByAsset;
 import com.grash.model.AssetDowntime;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -12,9 +14,19 @@ public interface AssetDowntimeRepository extends JpaRepository<AssetDowntime, Lo
 
     List<AssetDowntime> findByAsset_Id(Long id);
 
+    @Modifying
+    @Query(value = "UPDATE asset_downtime SET duration = FLOOR(EXTRACT(EPOCH FROM (CAST(:date AS TIMESTAMP) - " +
+            "starts_on))), updated_at = :date WHERE duration = 0 AND asset_id IN " +
+            "(SELECT id FROM asset WHERE path LIKE CONCAT(:path, '%'))", nativeQuery = true)
+    int stopRunningBySubtree(@Param("path") String path, @Param("date") Date date);
+
     @Query("SELECT ad FROM AssetDowntime ad WHERE ad.company.id = :id AND ad.duration != 0")
     List<AssetDowntime> findByCompany_Id(@Param("id") Long id);
 
+    @Query("SELECT ad.asset.id AS id, SUM(ad.duration) AS total FROM AssetDowntime ad WHERE ad.company.id = :id " +
+            "GROUP BY ad.asset.id")
+    List<DowntimeDurationByAsset> sumDurationsByCompany(@Param("id") Long id);
+
     @Query("SELECT ad FROM AssetDowntime ad WHERE ad.startsOn BETWEEN :date1 AND :date2 AND ad.company.id = :id AND ad.duration != 0")
     List<AssetDowntime> findByStartsOnBetweenAndCompany_Id(@Param("date1") Date date1, @Param("date2") Date date2, @Param("id") Long id);
 
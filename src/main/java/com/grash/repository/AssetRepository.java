@@ -1,11 +1,15 @@
 package com.grash.repository;
 
 import com.grash.model.Asset;
+import com.grash.model.enums.AssetStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.security.core.parameters.P;
 
 import java.util.Collection;
@@ -22,8 +26,26 @@ public interface AssetRepository extends JpaRepository<Asset, Long>, JpaSpecific
 
     Integer countByParentAsset_Id(Long id);
 
+    @Query("SELECT DISTINCT e.parentAsset.id FROM Asset e WHERE e.parentAsset.id IN :ids")
+    List<Long> findParentIdsIn(@Param("ids") Collection<Long> ids);
+
     List<Asset> findByLocation_Id(Long id);
 
+    @Query("SELECT a.path FROM Asset a WHERE a.id = :id")
+    String findPathById(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE Asset a SET a.status = :status, a.updatedAt = :date WHERE a.path LIKE CONCAT(:path, '%') " +
+            "AND a.id <> :id")
+    int updateDescendantsStatus(@Param("id") Long id, @Param("path") String path, @Param("status") AssetStatus status,
+                                @Param("date") Date date);
+
+    @Modifying
+    @Query("UPDATE Asset a SET a.status = :status, a.updatedAt = :date WHERE a.id IN :ids " +
+            "AND a.status NOT IN :unchangedStatuses")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") AssetStatus status,
+                     @Param("unchangedStatuses") Collection<AssetStatus> unchangedStatuses, @Param("date") Date date);
+
     List<Asset> findByNameIgnoreCaseAndCompany_Id(String assetName, Long companyId);
 
     Optional<Asset> findByIdAndCompany_Id(Long id, Long companyId);
@@ -2,6 +2,9 @@ package com.grash.repository;
 
 import com.grash.model.CustomSequence;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -9,4 +12,36 @@ import java.util.Optional;
 @Repository
 public interface CustomSequenceRepository extends JpaRepository<CustomSequence, Long> {
     Optional<CustomSequence> findByCompanyId(Long companyId);
+
+    @Modifying
+    @Query(value = "INSERT INTO custom_sequence (id, company_id, work_order_sequence, asset_sequence, " +
+            "preventive_maintenance_sequence, location_sequence, request_sequence) " +
+            "VALUES (nextval('hibernate_sequence'), :companyId, 1, 1, 1, 1, 1) " +
+            "ON CONFLICT (company_id) DO NOTHING", nativeQuery = true)
+    void createIfAbsent(@Param("companyId") Long companyId);
+
+    /*
+     * The reserve methods increment a counter and return its previous value in one statement, so concurrent callers
+     * can't get the same numbers. They return null when the company has no sequence row.
+     */
+    @Query(value = "UPDATE custom_sequence SET work_order_sequence = work_order_sequence + :count " +
+            "WHERE company_id = :companyId RETURNING work_order_sequence - :count", nativeQuery = true)
+    Long reserveWorkOrderSequences(@Param("companyId") Long companyId, @Param("count") int count);
+
+    @Query(value = "UPDATE custom_sequence SET asset_sequence = asset_sequence + :count " +
+            "WHERE company_id = :companyId RETURNING asset_sequence - :count", nativeQuery = true)
+    Long reserveAssetSequences(@Param("companyId") Long companyId, @Param("count") int count);
+
+    @Query(value = "UPDATE custom_sequence SET preventive_maintenance_sequence = preventive_maintenance_sequence + " +
+            ":count WHERE company_id = :companyId RETURNING preventive_maintenance_sequence - :count",
+            nativeQuery = true)
+    Long reservePreventiveMaintenanceSequences(@Param("companyId") Long companyId, @Param("count") int count);
+
+    @Query(value = "UPDATE custom_sequence SET location_sequence = location_sequence + :count " +
+            "WHERE company_id = :companyId RETURNING location_sequence - :count", nativeQuery = true)
+    Long reserveLocationSequences(@Param("companyId") Long companyId, @Param("count") int count);
+
+    @Query(value = "UPDATE custom_sequence SET request_sequence = request_sequence + :count " +
+            "WHERE company_id = :companyId RETURNING request_sequence - :count", nativeQuery = true)
+    Long reserveRequestSequences(@Param("companyId") Long companyId, @Param("count") int count);
 }
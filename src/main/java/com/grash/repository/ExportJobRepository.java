@@ -0,0 +1,18 @@
+package com.grash.repository;
+
+import com.grash.model.ExportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ExportJobRepository extends JpaRepository<ExportJob, String> {
+    List<ExportJob> findByCreatedAtBefore(Date date);
+
+    @Modifying
+    @Query("UPDATE ExportJob j SET j.rowsCount = :rowsCount WHERE j.id = :id")
+    void updateRowsCount(@Param("id") String id, @Param("rowsCount") long rowsCount);
+}
@@ -3,6 +3,10 @@ package com.grash.repository;
 import com.grash.model.File;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
 import java.util.List;
@@ -11,4 +15,10 @@ public interface FileRepository extends JpaRepository<File, Long>, JpaSpecificat
     Collection<File> findByCompany_Id(Long id);
 
     List<File> findByIdIn(List<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.thumbnailPath = :thumbnailPath, f.webPath = :webPath WHERE f.id = :id")
+    void updateDerivatives(@Param("id") Long id, @Param("thumbnailPath") String thumbnailPath,
+                           @Param("webPath") String webPath);
 }
@@ -1,10 +1,26 @@
 package com.grash.repository;
 
+import com.grash.dto.analytics.workOrders.WOLaborDurations;
 import com.grash.model.Labor;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
+import java.util.Date;
 
 public interface LaborRepository extends JpaRepository<Labor, Long> {
     Collection<Labor> findByWorkOrder_Id(Long id);
+
+    @Query("SELECT COALESCE(SUM(l.duration), 0) FROM Labor l JOIN l.workOrder wo " +
+            "WHERE wo.company.id = :companyId AND wo.createdAt between :start and :end")
+    long sumDurationByCompanyAndWorkOrderCreatedAtBetween(@Param("companyId") Long companyId,
+                                                          @Param("start") Date start, @Param("end") Date end);
+
+    @Query("SELECT COALESCE(SUM(l.duration), 0) AS total, " +
+            "COALESCE(SUM(CASE WHEN wo.parentPreventiveMaintenance IS NULL THEN l.duration ELSE 0 END), 0) AS " +
+            "reactive FROM Labor l JOIN l.workOrder wo WHERE wo.company.id = :companyId " +
+            "AND wo.status = com.grash.model.enums.Status.COMPLETE AND wo.completedOn between :start and :end")
+    WOLaborDurations sumDurationsByCompanyAndCompletedOnBetween(@Param("companyId") Long companyId,
+                                                                @Param("start") Date start, @Param("end") Date end);
 }
@@ -6,6 +6,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
 import java.util.List;
@@ -23,4 +25,7 @@ public interface LocationRepository extends JpaRepository<Location, Long>, JpaSp
     Optional<Location> findByIdAndCompany_Id(Long id, Long companyId);
 
     int countByParentLocation_Id(Long locationId);
+
+    @Query("SELECT DISTINCT e.parentLocation.id FROM Location e WHERE e.parentLocation.id IN :ids")
+    List<Long> findParentIdsIn(@Param("ids") Collection<Long> ids);
 }
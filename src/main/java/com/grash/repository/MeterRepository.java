@@ -1,10 +1,16 @@
 package com.grash.repository;
 
+import com.grash.dto.MeterLastReading;
 import com.grash.model.Meter;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 public interface MeterRepository extends JpaRepository<Meter, Long>, JpaSpecificationExecutor<Meter> {
@@ -13,4 +19,28 @@ public interface MeterRepository extends JpaRepository<Meter, Long>, JpaSpecific
     Collection<Meter> findByAsset_Id(Long id);
 
     Optional<Meter> findByIdAndCompany_Id(Long id, Long companyId);
+
+    @Query("SELECT m.id FROM Meter m WHERE m.id IN :ids AND m.company.id = :companyId")
+    List<Long> findIdsByIdsAndCompany(@Param("ids") Collection<Long> ids, @Param("companyId") Long companyId);
+
+    /**
+     * Locks the meters of the company until the end of the transaction, in id order so that two transactions locking
+     * several meters don't deadlock, and reads their last reading value. Unlike an entity query, this can't return a
+     * meter loaded before the lock was taken.
+     */
+    @Query(value = "SELECT id, last_reading_value AS lastReadingValue FROM meter " +
+            "WHERE id IN :ids AND company_id = :companyId ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<MeterLastReading> lockLastReadings(@Param("ids") Collection<Long> ids, @Param("companyId") Long companyId);
+
+    /**
+     * Records a new reading as the latest one unless a later one was already recorded
+     */
+    @Modifying
+    @Query("UPDATE Meter m SET m.lastReadingValue = :value, m.lastReadingAt = :readingAt " +
+            "WHERE m.id = :id AND (m.lastReadingAt IS NULL OR m.lastReadingAt <= :readingAt)")
+    void updateLastReading(@Param("id") Long id, @Param("value") Long value, @Param("readingAt") Date readingAt);
+
+    @Modifying
+    @Query("UPDATE Meter m SET m.lastReadingValue = :value, m.lastReadingAt = :readingAt WHERE m.id = :id")
+    void setLastReading(@Param("id") Long id, @Param("value") Long value, @Param("readingAt") Date readingAt);
 }
@@ -0,0 +1,28 @@
+package com.grash.repository;
+
+import com.grash.model.OutboxEvent;
+import com.grash.model.enums.OutboxEventStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    boolean existsByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Claims up to {@code limit} due events: their next attempt is pushed to {@code leaseEnd}, so other nodes skip
+     * them until then, and their attempts are counted. Rows being claimed by another node are skipped.
+     */
+    @Query(value = "UPDATE outbox_event SET attempts = attempts + 1, next_attempt_at = :leaseEnd " +
+            "WHERE id IN (SELECT id FROM outbox_event WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) RETURNING id", nativeQuery = true)
+    List<Number> claim(@Param("now") Date now, @Param("leaseEnd") Date leaseEnd, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.status = :status AND e.processedAt < :date")
+    int deleteByStatusAndProcessedAtBefore(@Param("status") OutboxEventStatus status, @Param("date") Date date);
+}
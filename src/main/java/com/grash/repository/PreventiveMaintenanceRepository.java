@@ -3,6 +3,7 @@ package com.grash.repository;
 import com.grash.model.PreventiveMaintenance;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
@@ -12,5 +13,9 @@ import java.util.List;
 public interface PreventiveMaintenanceRepository extends JpaRepository<PreventiveMaintenance, Long>, JpaSpecificationExecutor<PreventiveMaintenance> {
     Collection<PreventiveMaintenance> findByCompany_Id(@Param("x") Long id);
 
-    List<PreventiveMaintenance> findByCreatedAtBeforeAndCompany_Id(Date start, Long companyId);
+    @Query("SELECT pm FROM PreventiveMaintenance pm JOIN FETCH pm.schedule s WHERE pm.company.id = :companyId " +
+            "AND pm.createdAt < :end AND s.disabled = false AND s.startsOn <= :end " +
+            "AND (s.endsOn IS NULL OR s.endsOn >= :start)")
+    List<PreventiveMaintenance> findScheduledBetween(@Param("start") Date start, @Param("end") Date end,
+                                                     @Param("companyId") Long companyId);
 }
@@ -1,15 +1,34 @@
 package com.grash.repository;
 
+import com.grash.dto.ReadingAggregate;
 import com.grash.model.Reading;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
 public interface ReadingRepository extends JpaRepository<Reading, Long> {
     @Query("SELECT r from Reading r where r.meter.company.id = :x ")
     Collection<Reading> findByCompany_Id(@Param("x") Long id);
 
     Collection<Reading> findByMeter_Id(Long id);
+
+    Optional<Reading> findFirstByMeter_IdOrderByCreatedAtDescIdDesc(Long meterId);
+
+    /**
+     * The readings of a meter between start and end grouped in buckets of {@code bucketSeconds}, read through the
+     * (meter, date) index
+     */
+    @Query(value = "SELECT CAST(:start AS TIMESTAMP) + FLOOR(EXTRACT(EPOCH FROM (r.created_at - CAST(:start AS " +
+            "TIMESTAMP))) / :bucketSeconds) * :bucketSeconds * INTERVAL '1 second' AS bucketStart, " +
+            "MIN(r.value) AS min, MAX(r.value) AS max, CAST(AVG(r.value) AS DOUBLE PRECISION) AS average, " +
+            "COUNT(*) AS count " +
+            "FROM reading r WHERE r.meter_id = :meterId AND r.created_at >= :start AND r.created_at < :end " +
+            "GROUP BY 1 ORDER BY 1", nativeQuery = true)
+    List<ReadingAggregate> getAggregates(@Param("meterId") Long meterId, @Param("start") Date start,
+                                         @Param("end") Date end, @Param("bucketSeconds") long bucketSeconds);
 }
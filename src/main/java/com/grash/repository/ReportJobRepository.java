@@ -0,0 +1,11 @@
+package com.grash.repository;
+
+import com.grash.model.ReportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ReportJobRepository extends JpaRepository<ReportJob, String> {
+    List<ReportJob> findByCreatedAtBefore(Date date);
+}
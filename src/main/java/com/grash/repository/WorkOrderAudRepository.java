@@ -1,5 +1,6 @@
 package com.grash.repository;
 
+import com.grash.dto.analytics.workOrders.WOStatusRevision;
 import com.grash.model.AdditionalCost;
 import com.grash.model.envers.WorkOrderAud;
 import org.springframework.data.domain.Pageable;
@@ -19,4 +20,13 @@ public interface WorkOrderAudRepository extends JpaRepository<WorkOrderAud, Long
     @Query("SELECT w FROM WorkOrderAud w WHERE w.workOrderAudId.id = :id AND w.workOrderAudId.rev.timestamp<= :date order by w.workOrderAudId.rev.timestamp desc")
     List<WorkOrderAud> findLastByIdAndDate(@Param("id") Long id, @Param("date") Long date, Pageable pageable);
 
+    @Query("SELECT w.workOrderAudId.id AS id, w.workOrderAudId.rev.timestamp AS timestamp, w.status AS status " +
+            "FROM WorkOrderAud w, WorkOrder wo WHERE wo.id = w.workOrderAudId.id AND wo.company.id = :companyId " +
+            "AND wo.createdAt BETWEEN :start AND :end AND w.workOrderAudId.rev.timestamp <= :date " +
+            "ORDER BY w.workOrderAudId.id, w.workOrderAudId.rev.timestamp, w.workOrderAudId.rev.id")
+    List<WOStatusRevision> findStatusRevisionsByCompanyAndCreatedAtBetween(@Param("companyId") Long companyId,
+                                                                           @Param("start") Date start,
+                                                                           @Param("end") Date end,
+                                                                           @Param("date") Long date);
+
 }
@@ -2,9 +2,15 @@ package com.grash.repository;
 
 import com.grash.model.WorkOrderMeterTrigger;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface WorkOrderMeterTriggerRepository extends JpaRepository<WorkOrderMeterTrigger, Long> {
     Collection<WorkOrderMeterTrigger> findByMeter_Id(Long id);
+
+    @Query("SELECT t FROM WorkOrderMeterTrigger t WHERE t.meter.id IN :meterIds")
+    List<WorkOrderMeterTrigger> findByMeterIds(@Param("meterIds") Collection<Long> meterIds);
 }
@@ -1,5 +1,6 @@
 package com.grash.repository;
 
+import com.grash.dto.analytics.workOrders.*;
 import com.grash.model.WorkOrder;
 import com.grash.model.enums.Priority;
 import org.springframework.data.domain.Page;
@@ -20,6 +21,8 @@ public interface WorkOrderRepository extends JpaRepository<WorkOrder, Long>, Jpa
 
     Collection<WorkOrder> findByLocation_Id(Long id);
 
+    Collection<WorkOrder> findByLocation_PathStartingWith(String path);
+
     Page<WorkOrder> findByParentPreventiveMaintenance_Id(Long id, Pageable pageable);
 
     Collection<WorkOrder> findByPrimaryUser_Id(Long id);
@@ -65,4 +68,137 @@ public interface WorkOrderRepository extends JpaRepository<WorkOrder, Long>, Jpa
     Collection<WorkOrder> findByPriorityAndCompany_IdAndCreatedAtBetween(Priority priority, Long companyId, Date start, Date end);
 
     Collection<WorkOrder> findByCategory_IdAndCreatedAtBetween(Long id, Date start, Date end);
+
+    @Query("SELECT wo.status AS status, wo.priority AS priority, COUNT(wo) AS total, " +
+            "COALESCE(SUM(wo.estimatedDuration), 0) AS estimatedDuration FROM WorkOrder wo " +
+            "WHERE wo.company.id = :companyId AND wo.createdAt between :start and :end " +
+            "GROUP BY wo.status, wo.priority")
+    Collection<WOStatusPriorityCount> countByStatusAndPriority(@Param("companyId") Long companyId,
+                                                               @Param("start") Date start, @Param("end") Date end);
+
+    @Query(value = "SELECT COUNT(*) AS total, " +
+            "COUNT(*) FILTER (WHERE wo.status = :complete) AS complete, " +
+            "COUNT(*) FILTER (WHERE wo.status = :complete AND (wo.due_date IS NULL OR wo.completed_on < wo" +
+            ".due_date)) AS compliant, " +
+            "COUNT(wo.first_time_to_react) AS reacted, " +
+            "CAST(COALESCE(SUM(TRUNC(EXTRACT(EPOCH FROM (wo.first_time_to_react - wo.created_at)) / 3600)), 0) AS " +
+            "BIGINT) AS reactionTime, " +
+            "CAST(COALESCE(SUM(TRUNC(EXTRACT(EPOCH FROM (wo.completed_on - COALESCE(r.created_at, wo.created_at)))" +
+            " / 86400)) FILTER (WHERE wo.status = :complete), 0) AS BIGINT) AS cycleTime, " +
+            "COUNT(*) FILTER (WHERE wo.status <> :complete) AS incomplete, " +
+            "CAST(COALESCE(SUM(TRUNC(EXTRACT(EPOCH FROM (CAST(:now AS TIMESTAMP) - COALESCE(r.created_at, wo" +
+            ".created_at))) / 86400)) FILTER (WHERE wo.status <> :complete), 0) AS BIGINT) AS incompleteAge " +
+            "FROM work_order wo LEFT JOIN request r ON r.id = wo.parent_request_id " +
+            "WHERE wo.company_id = :companyId AND wo.created_at BETWEEN :start AND :end", nativeQuery = true)
+    WOOverviewAggregates getOverviewAggregates(@Param("companyId") Long companyId, @Param("start") Date start,
+                                               @Param("end") Date end, @Param("now") Date now,
+                                               @Param("complete") int completeStatus);
+
+    @Query("SELECT COUNT(wo) AS total, " +
+            "COALESCE(SUM(CASE WHEN wo.dueDate IS NULL OR wo.completedOn < wo.dueDate THEN 1 ELSE 0 END), 0) AS " +
+            "compliant, " +
+            "COALESCE(SUM(CASE WHEN wo.parentPreventiveMaintenance IS NULL THEN 1 ELSE 0 END), 0) AS reactive " +
+            "FROM WorkOrder wo WHERE wo.company.id = :companyId AND wo.status = com.grash.model.enums.Status" +
+            ".COMPLETE AND wo.completedOn between :start and :end")
+    WOCompletionCounts countCompleteByCompletedOnBetween(@Param("companyId") Long companyId,
+                                                         @Param("start") Date start, @Param("end") Date end);
+
+    @Query("SELECT COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status = com.grash.model.enums.Status.OPEN " +
+            "THEN 1 ELSE 0 END), 0) AS open, " +
+            "COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status = com.grash.model.enums.Status.ON_HOLD " +
+            "THEN 1 ELSE 0 END), 0) AS onHold, " +
+            "COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status = com.grash.model.enums.Status.IN_PROGRESS " +
+            "THEN 1 ELSE 0 END), 0) AS inProgress, " +
+            "COALESCE(SUM(CASE WHEN wo.status = com.grash.model.enums.Status.COMPLETE THEN 1 ELSE 0 END), 0) AS " +
+            "complete, " +
+            "COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status <> com.grash.model.enums.Status.COMPLETE " +
+            "AND wo.dueDate > :todayStart AND wo.dueDate < :tomorrowStart THEN 1 ELSE 0 END), 0) AS today, " +
+            "COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status <> com.grash.model.enums.Status.COMPLETE " +
+            "AND wo.priority = com.grash.model.enums.Priority.HIGH THEN 1 ELSE 0 END), 0) AS high " +
+            "FROM WorkOrder wo WHERE wo.company.id = :companyId")
+    MobileWOCounts getMobileCountsByCompany(@Param("companyId") Long companyId, @Param("todayStart") Date todayStart,
+                                            @Param("tomorrowStart") Date tomorrowStart);
+
+    @Query("SELECT COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status = com.grash.model.enums.Status.OPEN " +
+            "THEN 1 ELSE 0 END), 0) AS open, " +
+            "COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status = com.grash.model.enums.Status.ON_HOLD " +
+            "THEN 1 ELSE 0 END), 0) AS onHold, " +
+            "COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status = com.grash.model.enums.Status.IN_PROGRESS " +
+            "THEN 1 ELSE 0 END), 0) AS inProgress, " +
+            "COALESCE(SUM(CASE WHEN wo.status = com.grash.model.enums.Status.COMPLETE THEN 1 ELSE 0 END), 0) AS " +
+            "complete, " +
+            "COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status <> com.grash.model.enums.Status.COMPLETE " +
+            "AND wo.dueDate > :todayStart AND wo.dueDate < :tomorrowStart THEN 1 ELSE 0 END), 0) AS today, " +
+            "COALESCE(SUM(CASE WHEN wo.archived = false AND wo.status <> com.grash.model.enums.Status.COMPLETE " +
+            "AND wo.priority = com.grash.model.enums.Priority.HIGH THEN 1 ELSE 0 END), 0) AS high " +
+            "FROM WorkOrder wo WHERE wo.primaryUser.id = :id " +
+            "OR EXISTS (SELECT assigned.id FROM wo.assignedTo assigned WHERE assigned.id = :id) " +
+            "OR EXISTS (SELECT user.id FROM wo.team team JOIN team.users user WHERE user.id = :id)")
+    MobileWOCounts getMobileCountsByAssignedToUser(@Param("id") Long id, @Param("todayStart") Date todayStart,
+                                                   @Param("tomorrowStart") Date tomorrowStart);
+
+    @Query("SELECT COUNT(wo) AS total, " +
+            "COALESCE(SUM(CASE WHEN wo.status = com.grash.model.enums.Status.COMPLETE THEN 1 ELSE 0 END), 0) AS " +
+            "complete, " +
+            "COALESCE(SUM(CASE WHEN wo.status = com.grash.model.enums.Status.COMPLETE AND wo.completedOn < :now " +
+            "AND wo.completedOn > :weekStart THEN 1 ELSE 0 END), 0) AS completeWeek, " +
+            "COALESCE(SUM(CASE WHEN wo.status = com.grash.model.enums.Status.COMPLETE " +
+            "AND (wo.dueDate IS NULL OR wo.completedOn < wo.dueDate) THEN 1 ELSE 0 END), 0) AS compliant, " +
+            "COALESCE(SUM(CASE WHEN wo.status = com.grash.model.enums.Status.COMPLETE " +
+            "AND (wo.dueDate IS NULL OR wo.completedOn < wo.dueDate) " +
+            "AND (wo.completedOn IS NULL OR wo.completedOn > :weekStart) THEN 1 ELSE 0 END), 0) AS compliantWeek " +
+            "FROM WorkOrder wo WHERE wo.company.id = :companyId")
+    MobileWOCompletionCounts getMobileCompletionCounts(@Param("companyId") Long companyId,
+                                                       @Param("weekStart") Date weekStart, @Param("now") Date now);
+
+    @Query(value = "SELECT assignment.user_id AS id, " +
+            "COUNT(*) FILTER (WHERE wo.status = :complete) AS complete, " +
+            "COUNT(*) FILTER (WHERE wo.status <> :complete) AS incomplete, " +
+            "CAST(COALESCE(SUM(TRUNC(EXTRACT(EPOCH FROM (CAST(:now AS TIMESTAMP) - wo.created_at)) / 86400)) " +
+            "FILTER (WHERE wo.status <> :complete), 0) AS BIGINT) AS incompleteAge " +
+            "FROM (SELECT wo.id AS work_order_id, wo.primary_user_id AS user_id FROM work_order wo " +
+            "WHERE wo.company_id = :companyId AND wo.created_at BETWEEN :start AND :end " +
+            "AND wo.primary_user_id IS NOT NULL " +
+            "UNION SELECT wo.id, assigned.assigned_to_id FROM work_order wo " +
+            "JOIN work_order_assigned_to assigned ON assigned.work_order_id = wo.id " +
+            "WHERE wo.company_id = :companyId AND wo.created_at BETWEEN :start AND :end " +
+            "UNION SELECT wo.id, team_user.id_user FROM work_order wo " +
+            "JOIN t_team_user_associations team_user ON team_user.id_team = wo.team_id " +
+            "WHERE wo.company_id = :companyId AND wo.created_at BETWEEN :start AND :end) assignment " +
+            "JOIN work_order wo ON wo.id = assignment.work_order_id " +
+            "GROUP BY assignment.user_id", nativeQuery = true)
+    Collection<WOAssignmentCounts> countByAssignedUser(@Param("companyId") Long companyId,
+                                                       @Param("start") Date start, @Param("end") Date end,
+                                                       @Param("now") Date now,
+                                                       @Param("complete") int completeStatus);
+
+    @Query("SELECT wo.completedBy.id AS id, COUNT(wo) AS total FROM WorkOrder wo " +
+            "WHERE wo.company.id = :companyId AND wo.status = com.grash.model.enums.Status.COMPLETE " +
+            "AND wo.completedBy IS NOT NULL AND wo.createdAt between :start and :end " +
+            "GROUP BY wo.completedBy.id")
+    Collection<WOCountById> countCompleteByCompletedBy(@Param("companyId") Long companyId,
+                                                       @Param("start") Date start, @Param("end") Date end);
+
+    @Query("SELECT wo.category.id AS id, COUNT(wo) AS total FROM WorkOrder wo " +
+            "WHERE wo.company.id = :companyId AND wo.status = com.grash.model.enums.Status.COMPLETE " +
+            "AND wo.category IS NOT NULL AND wo.createdAt between :start and :end " +
+            "GROUP BY wo.category.id")
+    Collection<WOCountById> countCompleteByCategory(@Param("companyId") Long companyId,
+                                                    @Param("start") Date start, @Param("end") Date end);
+
+    @Query("SELECT wo.id AS id, wo.createdAt AS createdAt, wo.status AS status FROM WorkOrder wo " +
+            "WHERE wo.company.id = :companyId AND wo.createdAt between :start and :end")
+    Collection<WOStatusById> findStatusesByCompanyAndCreatedAtBetween(@Param("companyId") Long companyId,
+                                                                      @Param("start") Date start,
+                                                                      @Param("end") Date end);
+
+    @Query(value = "SELECT wo.asset_id AS id, COUNT(*) AS total, " +
+            "CAST(COALESCE(SUM(TRUNC(EXTRACT(EPOCH FROM (CAST(:now AS TIMESTAMP) - wo.created_at)) / 86400)), 0) " +
+            "AS BIGINT) AS age " +
+            "FROM work_order wo WHERE wo.company_id = :companyId AND wo.asset_id IS NOT NULL " +
+            "AND wo.status <> :complete AND wo.created_at BETWEEN :start AND :end " +
+            "GROUP BY wo.asset_id", nativeQuery = true)
+    Collection<WOAgeById> getIncompleteAgeByAsset(@Param("companyId") Long companyId, @Param("start") Date start,
+                                                  @Param("end") Date end, @Param("now") Date now,
+                                                  @Param("complete") int completeStatus);
 }
@@ -1,5 +1,7 @@
 package com.grash.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.grash.exception.CustomException;
 import com.grash.model.enums.RoleType;
 import com.grash.utils.Consts;
@@ -22,6 +24,7 @@ import java.util.Base64;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Component
@@ -40,7 +43,16 @@ public class JwtTokenProvider {
 
 
     private final CustomUserDetailsService customUserDetailsService;
-    
+
+    /**
+     * Claims of recently verified tokens, so that a token is verified once and not on every request or every
+     * {@link #getUsername(String)} call. Entries are only reused until the token expires.
+     */
+    private final Cache<String, Claims> verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .build();
+
     public String createToken(String username, List<RoleType> roles) {
 
         Claims claims = Jwts.claims().setSubject(username);
@@ -64,7 +76,22 @@ public class JwtTokenProvider {
     }
 
     public String getUsername(String token) {
-        return Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token).getBody().getSubject();
+        return getClaims(token).getSubject();
+    }
+
+    public Claims getClaims(String token) {
+        Claims claims = verifiedTokens.getIfPresent(token);
+        if (claims != null && (claims.getExpiration() == null || claims.getExpiration().after(new Date()))) {
+            return claims;
+        }
+        try {
+            claims = Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            verifiedTokens.invalidate(token);
+            throw new CustomException("Expired or invalid JWT token", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        verifiedTokens.put(token, claims);
+        return claims;
     }
 
     public String resolveToken(HttpServletRequest req) {
@@ -76,12 +103,8 @@ public class JwtTokenProvider {
     }
 
     public boolean validateToken(String token) {
-        try {
-            Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            throw new CustomException("Expired or invalid JWT token", HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        getClaims(token);
+        return true;
     }
 
 }
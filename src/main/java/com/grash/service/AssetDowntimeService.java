@@ -1,6 +1,7 @@
 package com.grash.service;
 
 import com.grash.dto.AssetDowntimePatchDTO;
+import com.grash.dto.analytics.assets.DowntimeDurationByAsset;
 import com.grash.exception.CustomException;
 import com.grash.mapper.AssetDowntimeMapper;
 import com.grash.model.AssetDowntime;
@@ -13,6 +14,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -55,6 +57,18 @@ public class AssetDowntimeService {
         return assetDowntimeRepository.findByAsset_Id(id);
     }
 
+    /**
+     * Ends the running downtimes of the assets whose hierarchy path starts with this one
+     */
+    public int stopRunningBySubtree(String path, Date date) {
+        return assetDowntimeRepository.stopRunningBySubtree(path, date);
+    }
+
+    public Map<Long, Long> getDurationsByAsset(Long companyId) {
+        return assetDowntimeRepository.sumDurationsByCompany(companyId).stream()
+                .collect(Collectors.toMap(DowntimeDurationByAsset::getId, DowntimeDurationByAsset::getTotal));
+    }
+
     public List<AssetDowntime> findByAssetAndStartsOnBetween(Long id, Date start, Date end) {
         return assetDowntimeRepository.findByAsset_IdAndStartsOnBetween(id, start, end);
     }
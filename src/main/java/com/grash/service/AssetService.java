@@ -5,8 +5,10 @@ import com.grash.advancedsearch.SpecificationBuilder;
 import com.grash.dto.AssetPatchDTO;
 import com.grash.dto.AssetShowDTO;
 import com.grash.dto.imports.AssetImportDTO;
+import com.grash.dto.imports.ImportContext;
 import com.grash.exception.CustomException;
 import com.grash.mapper.AssetMapper;
+import com.grash.mapper.ChildrenLookup;
 import com.grash.model.*;
 import com.grash.model.enums.AssetStatus;
 import com.grash.model.enums.NotificationType;
@@ -28,35 +30,32 @@ import javax.persistence.EntityNotFoundException;
 import javax.transaction.Transactional;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 @Service
 @RequiredArgsConstructor
 public class AssetService {
+    private static final List<AssetStatus> DOWN_STATUSES = Arrays.stream(AssetStatus.values())
+            .filter(AssetStatus::isReallyDown).collect(Collectors.toList());
+
     private final AssetRepository assetRepository;
-    private LocationService locationService;
     private final FileService fileService;
-    private final AssetCategoryService assetCategoryService;
     private final DeprecationService deprecationService;
-    private final UserService userService;
-    private final CustomerService customerService;
-    private final VendorService vendorService;
     private LaborService laborService;
     private final NotificationService notificationService;
-    private final TeamService teamService;
-    private final PartService partService;
     private final AssetMapper assetMapper;
     private final EntityManager em;
     private final AssetDowntimeService assetDowntimeService;
     private WorkOrderService workOrderService;
     private final MessageSource messageSource;
     private final CustomSequenceService customSequenceService;
+    private final WorkOrderCostService workOrderCostService;
 
     @Autowired
-    public void setDeps(@Lazy LocationService locationService, @Lazy LaborService laborService,
-                        @Lazy WorkOrderService workOrderService
+    public void setDeps(@Lazy LaborService laborService, @Lazy WorkOrderService workOrderService
     ) {
-        this.locationService = locationService;
         this.laborService = laborService;
         this.workOrderService = workOrderService;
     }
@@ -140,51 +139,47 @@ public class AssetService {
         return assetRepository.findByLocation_Id(id);
     }
 
-    private void stopAssetDowntime(Asset asset) {
-        Collection<AssetDowntime> assetDowntimes = assetDowntimeService.findByAsset(asset.getId());
-        Optional<AssetDowntime> optionalRunningDowntime =
-                assetDowntimes.stream().filter(downtime -> downtime.getDuration() == 0).findFirst();
-
-        if (optionalRunningDowntime.isPresent()) {
-            AssetDowntime runningDowntime = optionalRunningDowntime.get();
-            runningDowntime.setDuration(Helper.getDateDiff(runningDowntime.getStartsOn(), new Date(),
-                    TimeUnit.SECONDS));
-            assetDowntimeService.save(runningDowntime);
-        }
-
-        asset.setStatus(AssetStatus.OPERATIONAL);
-        save(asset);
-    }
-
-    private void recursivelyStopChildrenDowntime(Asset parentAsset) {
-        List<Asset> children = findAssetChildren(parentAsset.getId(), null);
-        for (Asset child : children) {
-            stopAssetDowntime(child);
-            recursivelyStopChildrenDowntime(child);
-        }
+    /**
+     * @return The assets above this one, from the root down
+     */
+    public List<Asset> findAncestors(Long id) {
+        List<Long> ids = Helper.getPathIds(assetRepository.findPathById(id));
+        ids.remove(id);
+        Map<Long, Asset> ancestors = assetRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Asset::getId, Function.identity()));
+        return ids.stream().map(ancestors::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
+    /**
+     * Ends the running downtimes of the asset and of all the assets under it, then sets them operational
+     */
+    @Transactional
     public void stopDownTime(Long id, Locale locale) {
         Asset savedAsset = findById(id).orElseThrow(() -> new EntityNotFoundException("Asset not found"));
-        stopAssetDowntime(savedAsset);
-        recursivelyStopChildrenDowntime(savedAsset);
+        Date now = new Date();
+        String path = assetRepository.findPathById(id);
+        assetDowntimeService.stopRunningBySubtree(path, now);
+        assetRepository.updateDescendantsStatus(id, path, AssetStatus.OPERATIONAL, now);
+        savedAsset.setStatus(AssetStatus.OPERATIONAL);
+        save(savedAsset);
         String message = messageSource.getMessage("notification_asset_operational",
                 new Object[]{savedAsset.getName()}, locale);
         notify(savedAsset, message, messageSource.getMessage("asset_status_change", null, locale));
     }
 
+    /**
+     * Starts a downtime on the asset and on all the assets above it, setting the ones not already down to the status
+     */
+    @Transactional
     public void triggerDownTime(Long id, Locale locale, AssetStatus status) {
         Date now = new Date();
         Asset asset = findById(id).get();
         createAssetDowntime(asset, now, asset.getCompany());
-        Asset parentAsset = asset.getParentAsset();
-        while (parentAsset != null) {
-            createAssetDowntime(parentAsset, now, asset.getCompany());
-            if (!parentAsset.getStatus().isReallyDown()) {
-                parentAsset.setStatus(status);
-                save(parentAsset);
-            }
-            parentAsset = parentAsset.getParentAsset();
+        List<Asset> ancestors = findAncestors(id);
+        ancestors.forEach(ancestor -> createAssetDowntime(ancestor, now, asset.getCompany()));
+        if (!ancestors.isEmpty()) {
+            assetRepository.updateStatus(ancestors.stream().map(Asset::getId).collect(Collectors.toList()), status,
+                    DOWN_STATUSES, now);
         }
         asset.setStatus(status);
         save(asset);
@@ -217,25 +212,44 @@ public class AssetService {
         searchCriteria.getFilterFields().forEach(builder::with);
         Pageable page = PageRequest.of(searchCriteria.getPageNum(), searchCriteria.getPageSize(),
                 searchCriteria.getDirection(), searchCriteria.getSortField());
-        return assetRepository.findAll(builder.build(), page).map(asset -> assetMapper.toShowDto(asset, this));
+        Page<Asset> assets = assetRepository.findAll(builder.build(), page);
+        ChildrenLookup childrenLookup = getChildrenLookup(assets.getContent());
+        return assets.map(asset -> assetMapper.toShowDto(asset, childrenLookup));
+    }
+
+    /**
+     * @return The show DTOs of the assets, finding the ones having children with one query per
+     * {@link Helper#IN_CLAUSE_CHUNK_SIZE} assets
+     */
+    public List<AssetShowDTO> toShowDtos(Collection<Asset> assets) {
+        ChildrenLookup childrenLookup = getChildrenLookup(assets);
+        return assets.stream().map(asset -> assetMapper.toShowDto(asset, childrenLookup))
+                .collect(Collectors.toList());
+    }
+
+    private ChildrenLookup getChildrenLookup(Collection<Asset> assets) {
+        if (assets.isEmpty()) return id -> false;
+        List<Long> ids = assets.stream().map(Asset::getId).collect(Collectors.toList());
+        Set<Long> parentIds = new HashSet<>();
+        Helper.inClauseChunks(ids).forEach(chunk -> parentIds.addAll(assetRepository.findParentIdsIn(chunk)));
+        return parentIds::contains;
     }
 
     public List<Asset> findByNameIgnoreCaseAndCompany(String assetName, Long companyId) {
         return assetRepository.findByNameIgnoreCaseAndCompany_Id(assetName, companyId);
     }
 
-    public void importAsset(Asset asset, AssetImportDTO dto, Company company) {
-        Long companySettingsId = company.getCompanySettings().getId();
-        Long companyId = company.getId();
+    public void importAsset(Asset asset, AssetImportDTO dto, ImportContext context, String customId) {
+        Company company = context.getCompany();
         asset.setArea(dto.getArea());
         if (dto.getBarCode() != null) {
-            Optional<Asset> optionalAssetWithSameBarCode = findByBarcodeAndCompany(dto.getBarCode(), company.getId());
+            Optional<Long> optionalAssetWithSameBarCode = context.findIdByBarcode(Asset.class, dto.getBarCode());
             if (optionalAssetWithSameBarCode.isPresent()) {
                 boolean hasError = false;
                 if (dto.getId() == null) {//creation
                     hasError = true;
                 } else {//update
-                    if (!dto.getId().equals(optionalAssetWithSameBarCode.get().getId())) {
+                    if (!dto.getId().equals(optionalAssetWithSameBarCode.get())) {
                         hasError = true;
                     }
                 }
@@ -244,64 +258,42 @@ public class AssetService {
                             HttpStatus.NOT_ACCEPTABLE);
             }
         }
+        String previousBarCode = asset.getBarCode();
         asset.setBarCode(dto.getBarCode());
         asset.setArea(dto.getArea());
         asset.setArchived(Helper.getBooleanFromString(dto.getArchived()));
         asset.setDescription(dto.getDescription());
         asset.setModel(dto.getModel());
         asset.setPower(dto.getPower());
-        asset.setCustomId(getAssetNumber(company));
+        if (asset.getCustomId() == null) asset.setCustomId(customId);
         asset.setManufacturer(dto.getManufacturer());
-        Optional<Location> optionalLocation = locationService.findByNameIgnoreCaseAndCompany(dto.getLocationName(),
-                companyId).stream().findFirst();
-        optionalLocation.ifPresent(asset::setLocation);
-        Optional<Asset> optionalAsset =
-                findByNameIgnoreCaseAndCompany(dto.getParentAssetName(), companyId).stream().findFirst();
-        optionalAsset.ifPresent(asset::setParentAsset);
-        Optional<AssetCategory> optionalAssetCategory =
-                assetCategoryService.findByNameIgnoreCaseAndCompanySettings(dto.getCategory(), companySettingsId);
-        optionalAssetCategory.ifPresent(asset::setCategory);
+        context.find(Location.class, dto.getLocationName()).ifPresent(asset::setLocation);
+        context.find(Asset.class, dto.getParentAssetName()).ifPresent(asset::setParentAsset);
+        context.find(AssetCategory.class, dto.getCategory()).ifPresent(asset::setCategory);
         asset.setName(dto.getName());
-        Optional<OwnUser> optionalPrimaryUser = userService.findByEmailAndCompany(dto.getPrimaryUserEmail(), companyId);
-        optionalPrimaryUser.ifPresent(asset::setPrimaryUser);
+        context.find(OwnUser.class, dto.getPrimaryUserEmail()).ifPresent(asset::setPrimaryUser);
         asset.setWarrantyExpirationDate(Helper.getDateFromExcelDate(dto.getWarrantyExpirationDate()));
         asset.setAdditionalInfos(dto.getAdditionalInfos());
         asset.setSerialNumber(dto.getSerialNumber());
-        List<OwnUser> assignedTo = new ArrayList<>();
-        dto.getAssignedToEmails().forEach(email -> {
-            Optional<OwnUser> optionalUser1 = userService.findByEmailAndCompany(email, companyId);
-            optionalUser1.ifPresent(assignedTo::add);
-        });
-        asset.setAssignedTo(assignedTo);
-        List<Team> teams = new ArrayList<>();
-        dto.getTeamsNames().forEach(teamName -> {
-            Optional<Team> optionalTeam = teamService.findByNameIgnoreCaseAndCompany(teamName, companyId);
-            optionalTeam.ifPresent(teams::add);
-        });
-        asset.setTeams(teams);
+        asset.setAssignedTo(context.findAll(OwnUser.class, dto.getAssignedToEmails()));
+        asset.setTeams(context.findAll(Team.class, dto.getTeamsNames()));
         asset.setStatus(AssetStatus.getAssetStatusFromString(dto.getStatus(), Helper.getLocale(company),
                 messageSource));
         asset.setAcquisitionCost(dto.getAcquisitionCost());
-        List<Customer> customers = new ArrayList<>();
-        dto.getCustomersNames().forEach(name -> {
-            Optional<Customer> optionalCustomer = customerService.findByNameIgnoreCaseAndCompany(name, companyId);
-            optionalCustomer.ifPresent(customers::add);
-        });
-        asset.setCustomers(customers);
-        List<Vendor> vendors = new ArrayList<>();
-        dto.getVendorsNames().forEach(name -> {
-            Optional<Vendor> optionalVendor = vendorService.findByNameIgnoreCaseAndCompany(name, companyId);
-            optionalVendor.ifPresent(vendors::add);
-        });
-        asset.setVendors(vendors);
-        List<Part> parts = new ArrayList<>();
-        dto.getPartsNames().forEach(name -> {
-            Optional<Part> optionalPart = partService.findByNameIgnoreCaseAndCompany(name, companyId);
-            optionalPart.ifPresent(parts::add);
-        });
-        asset.setParts(parts);
-
-        assetRepository.save(asset);
+        asset.setCustomers(context.findAll(Customer.class, dto.getCustomersNames()));
+        asset.setVendors(context.findAll(Vendor.class, dto.getVendorsNames()));
+        asset.setParts(context.findAll(Part.class, dto.getPartsNames()));
+
+        Asset savedAsset = assetRepository.save(asset);
+        context.register(Asset.class, savedAsset.getName(), savedAsset.getId());
+        context.registerBarcode(Asset.class, previousBarCode, savedAsset.getBarCode(), savedAsset.getId());
+    }
+
+    public List<String> getAssetNumbers(Company company, int count) {
+        Long firstSequence = customSequenceService.reserveAssetSequences(company, count);
+        return LongStream.range(firstSequence, firstSequence + count)
+                .mapToObj(sequence -> "A" + String.format("%06d", sequence))
+                .collect(Collectors.toList());
     }
 
     public Optional<Asset> findByIdAndCompany(Long id, Long companyId) {
@@ -426,7 +418,6 @@ public class AssetService {
     }
 
     public double getTotalCost(Long assetId, Date start, Date end, Boolean includeLaborCost) {
-        Collection<WorkOrder> workOrders = workOrderService.findByAssetAndCreatedAtBetween(assetId, start, end);
-        return workOrderService.getAllCost(workOrders, includeLaborCost);
+        return workOrderCostService.getCostsByAssetAndCreatedAtBetween(assetId, start, end).getTotal(includeLaborCost);
     }
 }
@@ -8,23 +8,51 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * The white labeling settings come from the environment and don't change while running, so they are parsed once
+ */
 @Service
 @RequiredArgsConstructor
 public class BrandingService {
 
+    private static final BrandConfig DEFAULT_CONFIG = BrandConfig.builder()
+            .name("Fieldero")
+            .shortName("Fieldero")
+            .website("https://fieldero.com")
+            .mail("support@fieldero.com")
+            .addressStreet("Calle Setze de Juliol, 73")
+            .addressCity("07009 Palma, Balearen (Illes), SP")
+            .build();
+
     private final ObjectMapper objectMapper;
     private final LicenseService licenseService;
     @Value("${white-labeling.custom-colors:#{null}}")
     private String customColors;
     @Value("${white-labeling.brand-config:#{null}}")
     private String brandRawConfig;
+    private volatile String mailBackgroundColor;
+    private volatile BrandConfig brandConfig;
 
     public String getMailBackgroundColor() {
+        if (mailBackgroundColor == null) {
+            mailBackgroundColor = parseMailBackgroundColor();
+        }
+        return mailBackgroundColor;
+    }
+
+    public BrandConfig getBrandConfig() {
+        if (!licenseService.isLicenseValid()) return DEFAULT_CONFIG;
+        if (brandConfig == null) {
+            brandConfig = parseBrandConfig();
+        }
+        return brandConfig;
+    }
+
+    private String parseMailBackgroundColor() {
         String backgroundColor = "#4B5CF0";
         if (customColors != null && !customColors.isEmpty()) {
-            ObjectMapper mapper = new ObjectMapper();
             try {
-                JsonNode node = mapper.readTree(customColors);
+                JsonNode node = objectMapper.readTree(customColors);
                 backgroundColor = node.get("emailColors").asText();
             } catch (Exception e) {
                 e.printStackTrace();
@@ -33,23 +61,14 @@ public class BrandingService {
         return backgroundColor;
     }
 
-    public BrandConfig getBrandConfig() {
-        BrandConfig defaultConfig = BrandConfig.builder()
-                .name("Fieldero")
-                .shortName("Fieldero")
-                .website("https://fieldero.com")
-                .mail("support@fieldero.com")
-                .addressStreet("Calle Setze de Juliol, 73")
-                .addressCity("07009 Palma, Balearen (Illes), SP")
-                .build();
-        if (!licenseService.isLicenseValid()) return defaultConfig;
+    private BrandConfig parseBrandConfig() {
         if (brandRawConfig == null || brandRawConfig.isEmpty()) {
-            return defaultConfig;
+            return DEFAULT_CONFIG;
         } else {
             try {
                 return objectMapper.readValue(brandRawConfig, BrandConfig.class);
             } catch (Exception e) {
-                return defaultConfig;
+                return DEFAULT_CONFIG;
             }
         }
     }
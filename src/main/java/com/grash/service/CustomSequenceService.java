@@ -7,7 +7,14 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.util.function.BiFunction;
 
+/**
+ * Hands out the numbers of the custom ids. Numbers are reserved with an atomic update of the company's sequence row,
+ * so concurrent callers, on this node or another, never get the same number. Each reservation commits in a
+ * transaction of its own: the row is locked only while it's updated, and a number whose caller rolls back is not
+ * reused.
+ */
 @Service
 @RequiredArgsConstructor
 public class CustomSequenceService {
@@ -18,60 +25,58 @@ public class CustomSequenceService {
                 .orElse(null);
     }
 
-    @Transactional
-    public CustomSequence createCustomSequence(Company company) {
-        CustomSequence customSequence = new CustomSequence(company);
-        return customSequenceRepository.save(customSequence);
-    }
-
-    @Transactional
-    public CustomSequence getOrCreateCustomSequence(Company company) {
-        CustomSequence customSequence = findByCompanyId(company.getId());
-        if (customSequence == null) {
-            customSequence = createCustomSequence(company);
-        }
-        return customSequence;
-    }
-
-    @Transactional
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
     public Long getNextWorkOrderSequence(Company company) {
-        CustomSequence customSequence = getOrCreateCustomSequence(company);
-        Long nextSequence = customSequence.getAndIncrementWorkOrderSequence();
-        customSequenceRepository.save(customSequence);
-        return nextSequence;
+        return reserve(company, 1, customSequenceRepository::reserveWorkOrderSequences);
     }
 
-
-    @Transactional
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
     public Long getNextAssetSequence(Company company) {
-        CustomSequence customSequence = getOrCreateCustomSequence(company);
-        Long nextSequence = customSequence.getAndIncrementAssetSequence();
-        customSequenceRepository.save(customSequence);
-        return nextSequence;
+        return reserve(company, 1, customSequenceRepository::reserveAssetSequences);
     }
 
-    @Transactional
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
     public Long getNextPreventiveMaintenanceSequence(Company company) {
-        CustomSequence customSequence = getOrCreateCustomSequence(company);
-        Long nextSequence = customSequence.getAndIncrementPreventiveMaintenanceSequence();
-        customSequenceRepository.save(customSequence);
-        return nextSequence;
+        return reserve(company, 1, customSequenceRepository::reservePreventiveMaintenanceSequences);
     }
 
-    @Transactional
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
     public Long getNextLocationSequence(Company company) {
-        CustomSequence customSequence = getOrCreateCustomSequence(company);
-        Long nextSequence = customSequence.getAndIncrementLocationSequence();
-        customSequenceRepository.save(customSequence);
-        return nextSequence;
+        return reserve(company, 1, customSequenceRepository::reserveLocationSequences);
     }
 
-    @Transactional
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
     public Long getNextRequestSequence(Company company) {
-        CustomSequence customSequence = getOrCreateCustomSequence(company);
-        Long nextSequence = customSequence.getAndIncrementRequestSequence();
-        customSequenceRepository.save(customSequence);
-        return nextSequence;
+        return reserve(company, 1, customSequenceRepository::reserveRequestSequences);
+    }
+
+    /**
+     * Reserves {@code count} consecutive work order numbers in a transaction of its own, so the sequence row isn't
+     * locked while the caller uses them.
+     *
+     * @return the first reserved number
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Long reserveWorkOrderSequences(Company company, int count) {
+        return reserve(company, count, customSequenceRepository::reserveWorkOrderSequences);
+    }
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Long reserveAssetSequences(Company company, int count) {
+        return reserve(company, count, customSequenceRepository::reserveAssetSequences);
     }
 
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public Long reserveLocationSequences(Company company, int count) {
+        return reserve(company, count, customSequenceRepository::reserveLocationSequences);
+    }
+
+    private Long reserve(Company company, int count, BiFunction<Long, Integer, Long> reserveSequences) {
+        Long firstSequence = reserveSequences.apply(company.getId(), count);
+        if (firstSequence == null) {
+            customSequenceRepository.createIfAbsent(company.getId());
+            firstSequence = reserveSequences.apply(company.getId(), count);
+        }
+        return firstSequence;
+    }
 }
@@ -2,6 +2,7 @@ package com.grash.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grash.configuration.AsyncConfig;
 import com.grash.exception.CustomException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
@@ -25,8 +26,7 @@ import javax.mail.internet.MimeMessage;
 import javax.transaction.Transactional;
 import java.io.File;
 import java.io.UnsupportedEncodingException;
-import java.util.Locale;
-import java.util.Map;
+import java.util.*;
 
 @Service
 @Transactional
@@ -53,6 +53,7 @@ public class EmailService2 {
     private Resource resourceFile;
 
     private final Environment environment;
+    private final MailQueueService mailQueueService;
 
 
     public void sendSimpleMessage(String[] to, String subject, String text) {
@@ -95,46 +96,77 @@ public class EmailService2 {
     }
 
 
-    @Async
+    /**
+     * Renders the mail and queues it in {@link MailQueueService}, which sends it in the background
+     */
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
     public void sendMessageUsingThymeleafTemplate(
             String[] to, String subject, Map<String, Object> templateModel, String template, Locale locale) {
-        if (Boolean.FALSE.equals(enableEmails))
+        if (Boolean.FALSE.equals(enableEmails) || to.length == 0)
             return;
-        Context thymeleafContext = new Context();
-        thymeleafContext.setLocale(locale);
-        thymeleafContext.setVariables(templateModel);
-        thymeleafContext.setVariable("environment", environment);
-        thymeleafContext.setVariable("brandConfig", brandingService.getBrandConfig());
-        thymeleafContext.setVariable("backgroundColor", brandingService.getMailBackgroundColor());
-        String htmlBody = thymeleafTemplateEngine.process(template, thymeleafContext);
-
         try {
-            sendHtmlMessage(to, subject, htmlBody);
+            mailQueueService.enqueue(createHtmlMessage(to, subject, render(templateModel, template, locale)));
         } catch (MessagingException e) {
             throw new CustomException("Can't send the mail", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Renders and sends the mail right away, throwing if it couldn't be sent
+     */
+    public void sendThymeleafMessage(String[] to, String subject, Map<String, Object> templateModel, String template,
+                                     Locale locale) throws MessagingException {
+        if (Boolean.FALSE.equals(enableEmails))
+            return;
+        sendHtmlMessage(to, subject, render(templateModel, template, locale));
+    }
+
 
     public void sendHtmlMessage(String[] to, String subject, String htmlBody) throws MessagingException {
         if (Boolean.FALSE.equals(enableEmails))
             return;
         if (to.length > 0) {
+            emailSender.send(createHtmlMessage(to, subject, htmlBody));
+        }
+    }
 
-            MimeMessage message = emailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            try {
-                helper.setFrom(new InternetAddress(mailProperties.getUsername(),
-                        brandingService.getBrandConfig().getName()));
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e);
-            }
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(htmlBody, true);
-            //helper.addInline("attachment.png", resourceFile);
-            emailSender.send(message);
+    /**
+     * Queues the mail in {@link MailQueueService}, which sends it in the background
+     */
+    public void queueHtmlMessage(String[] to, String subject, String htmlBody) throws MessagingException {
+        if (Boolean.FALSE.equals(enableEmails) || to.length == 0)
+            return;
+        mailQueueService.enqueue(createHtmlMessage(to, subject, htmlBody));
+    }
+
+    private MimeMessage createHtmlMessage(String[] to, String subject, String htmlBody) throws MessagingException {
+        MimeMessage message = emailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        try {
+            helper.setFrom(new InternetAddress(mailProperties.getUsername(),
+                    brandingService.getBrandConfig().getName()));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
         }
+        helper.setTo(to);
+        helper.setSubject(subject);
+        helper.setText(htmlBody, true);
+        //helper.addInline("attachment.png", resourceFile);
+        return message;
+    }
+
+    /**
+     * The template resolver keeps the parsed templates, so only the variables are applied for each mail. Rendered
+     * mails are not kept: their models hold one-time values like tokens and passwords.
+     */
+    private String render(Map<String, Object> templateModel, String template, Locale locale) {
+        Context thymeleafContext = new Context();
+        thymeleafContext.setLocale(locale);
+        thymeleafContext.setVariables(templateModel);
+        thymeleafContext.setVariable("environment", environment);
+        thymeleafContext.setVariable("brandConfig", brandingService.getBrandConfig());
+        thymeleafContext.setVariable("backgroundColor", brandingService.getMailBackgroundColor());
+        return thymeleafTemplateEngine.process(template, thymeleafContext);
     }
 
 }
@@ -0,0 +1,196 @@
+package com.grash.service;
+
+import com.grash.factory.StorageServiceFactory;
+import com.grash.model.*;
+import com.grash.model.abstracts.CompanyAudit;
+import com.grash.model.enums.ExportType;
+import com.grash.repository.ExportJobRepository;
+import com.grash.utils.CsvFileGenerator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Exports the entities of a company to CSV files. Rows are read forward, one page at a time with their relations
+ * fetched in a few queries per page, and the CSV is streamed to the storage, so the memory used does not depend on
+ * the size of the export.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExportService {
+    private static final int PAGE_SIZE = 500;
+    private static final long JOB_RETENTION_MILLIS = 60 * 60 * 1000L;
+
+    private final EntityManager em;
+    private final CsvFileGenerator csvFileGenerator;
+    private final StorageServiceFactory storageServiceFactory;
+    private final AssetDowntimeService assetDowntimeService;
+    private final ExportJobRepository exportJobRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Transactional(readOnly = true)
+    public String export(ExportType type, Long companyId, Locale locale) {
+        return export(type, companyId, locale, () -> {
+        });
+    }
+
+    public ExportJob createJob(ExportType type, Long companyId) {
+        ExportJob job = new ExportJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setType(type);
+        job.setCompanyId(companyId);
+        return exportJobRepository.save(job);
+    }
+
+    public Optional<ExportJob> findJob(String id) {
+        return exportJobRepository.findById(id);
+    }
+
+    public void deleteExpiredJobs() {
+        exportJobRepository.deleteAll(exportJobRepository.findByCreatedAtBefore(
+                new Date(System.currentTimeMillis() - JOB_RETENTION_MILLIS)));
+    }
+
+    /**
+     * Runs a job saved by {@link #createJob}, which must be committed before. The rows count is saved in its own
+     * transaction after each page, the export itself running in a read only one
+     */
+    @Async
+    public void runJob(ExportJob job, Locale locale) {
+        job.setStatus(ExportJob.ExportJobStatus.RUNNING);
+        job = exportJobRepository.save(job);
+        String jobId = job.getId();
+        AtomicLong exportedRows = new AtomicLong();
+        TransactionTemplate progressTransaction = new TransactionTemplate(transactionManager);
+        progressTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            TransactionTemplate exportTransaction = new TransactionTemplate(transactionManager);
+            exportTransaction.setReadOnly(true);
+            ExportJob runningJob = job;
+            job.setUrl(exportTransaction.execute(status -> export(runningJob.getType(), runningJob.getCompanyId(),
+                    locale, () -> {
+                        long rowsCount = exportedRows.incrementAndGet();
+                        if (rowsCount % PAGE_SIZE == 0)
+                            progressTransaction.executeWithoutResult(progressStatus ->
+                                    exportJobRepository.updateRowsCount(jobId, rowsCount));
+                    })));
+            job.setStatus(ExportJob.ExportJobStatus.COMPLETE);
+        } catch (RuntimeException e) {
+            log.error("Could not export the {} of company {}", job.getType(), job.getCompanyId(), e);
+            job.setError(e.getMessage());
+            job.setStatus(ExportJob.ExportJobStatus.FAILED);
+        }
+        job.setRowsCount(exportedRows.get());
+        exportJobRepository.save(job);
+    }
+
+    private String export(ExportType type, Long companyId, Locale locale, Runnable onRow) {
+        StorageService storageService = storageServiceFactory.getStorageService();
+        String filePath = storageService.upload(type.getFileName(), "text/csv",
+                companyId + "/exports/" + type.getFolder(), outputStream -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                    switch (type) {
+                        case WORK_ORDERS:
+                            csvFileGenerator.writeWorkOrdersToCsv(iterate(streamByCompany(WorkOrder.class, companyId,
+                                    Arrays.asList("category", "location", "team", "primaryUser", "asset",
+                                            "completedBy"),
+                                    Arrays.asList("assignedTo", "customers")), onRow), writer, locale);
+                            break;
+                        case ASSETS:
+                            csvFileGenerator.writeAssetsToCsv(iterate(streamByCompany(Asset.class, companyId,
+                                            Arrays.asList("location", "parentAsset", "category", "primaryUser"),
+                                            Arrays.asList("assignedTo", "teams", "parts", "vendors", "customers")),
+                                    onRow), assetDowntimeService.getDurationsByAsset(companyId), writer, locale);
+                            break;
+                        case LOCATIONS:
+                            csvFileGenerator.writeLocationsToCsv(iterate(streamByCompany(Location.class, companyId,
+                                    Collections.singletonList("parentLocation"),
+                                    Arrays.asList("workers", "teams", "vendors", "customers")), onRow), writer,
+                                    locale);
+                            break;
+                        case PARTS:
+                            csvFileGenerator.writePartsToCsv(iterate(streamByCompany(Part.class, companyId,
+                                    Collections.singletonList("category"),
+                                    Arrays.asList("assignedTo", "customers", "vendors", "teams")), onRow),
+                                    writer, locale);
+                            break;
+                        case METERS:
+                            csvFileGenerator.writeMetersToCsv(iterate(streamByCompany(Meter.class, companyId,
+                                    Arrays.asList("meterCategory", "asset", "location"),
+                                    Collections.singletonList("users")), onRow), writer, locale);
+                            break;
+                    }
+                });
+        return storageService.generateSignedUrl(filePath, 10);
+    }
+
+    private <T> Iterable<T> iterate(Stream<T> stream, Runnable onRow) {
+        return stream.peek(row -> onRow.run())::iterator;
+    }
+
+    /**
+     * Streams the entities of a company by id, loading them {@link #PAGE_SIZE} at a time with the given to-one
+     * relations fetch joined and the given collections fetched with one query per collection and page. The
+     * persistence context is cleared between pages.
+     */
+    private <T extends CompanyAudit> Stream<T> streamByCompany(Class<T> entityClass, Long companyId,
+                                                              List<String> fetches, List<String> collections) {
+        String entityName = em.getMetamodel().entity(entityClass).getName();
+        String pageQuery = "SELECT e FROM " + entityName + " e" +
+                fetches.stream().map(fetch -> " LEFT JOIN FETCH e." + fetch).collect(Collectors.joining()) +
+                " WHERE e.company.id = :companyId AND e.id > :lastId ORDER BY e.id";
+        Iterator<T> iterator = new Iterator<T>() {
+            private Iterator<T> page = Collections.emptyIterator();
+            private long lastId = 0;
+            private boolean lastPage = false;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !lastPage) {
+                    em.clear();
+                    List<T> entities = em.createQuery(pageQuery, entityClass)
+                            .setParameter("companyId", companyId)
+                            .setParameter("lastId", lastId)
+                            .setMaxResults(PAGE_SIZE)
+                            .getResultList();
+                    lastPage = entities.size() < PAGE_SIZE;
+                    if (!entities.isEmpty()) {
+                        List<Long> ids = entities.stream().map(CompanyAudit::getId).collect(Collectors.toList());
+                        collections.forEach(collection -> em.createQuery("SELECT DISTINCT e FROM " + entityName +
+                                        " e LEFT JOIN FETCH e." + collection + " WHERE e.id IN :ids", entityClass)
+                                .setParameter("ids", ids)
+                                .getResultList());
+                        lastId = ids.get(ids.size() - 1);
+                    }
+                    page = entities.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
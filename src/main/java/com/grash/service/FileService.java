@@ -2,25 +2,45 @@ package com.grash.service;
 
 import com.grash.advancedsearch.SearchCriteria;
 import com.grash.advancedsearch.SpecificationBuilder;
+import com.grash.configuration.AsyncConfig;
+import com.grash.exception.CustomException;
+import com.grash.factory.StorageServiceFactory;
 import com.grash.model.File;
 import com.grash.model.OwnUser;
+import com.grash.model.Task;
+import com.grash.model.enums.FileType;
 import com.grash.model.enums.RoleType;
 import com.grash.repository.FileRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class FileService {
     private final FileRepository fileRepository;
+    private final StorageServiceFactory storageServiceFactory;
+    private final ImageDerivativeService imageDerivativeService;
+    private TaskExecutor uploadExecutor;
     private AssetService assetService;
     private PartService partService;
     private RequestService requestService;
@@ -30,8 +50,10 @@ public class FileService {
     @Autowired
     public void setDeps(@Lazy AssetService assetService, @Lazy PartService partService,
                         @Lazy RequestService requestService, @Lazy LocationService locationService,
-                        @Lazy WorkOrderService workOrderService
+                        @Lazy WorkOrderService workOrderService,
+                        @Qualifier(AsyncConfig.UPLOAD_EXECUTOR) TaskExecutor uploadExecutor
     ) {
+        this.uploadExecutor = uploadExecutor;
         this.assetService = assetService;
         this.partService = partService;
         this.requestService = requestService;
@@ -43,6 +65,72 @@ public class FileService {
         return fileRepository.save(File);
     }
 
+    /**
+     * Uploads the files to the storage in parallel, then saves them in one batch, so that no connection is held
+     * during the uploads. If an upload fails, or the upload executor is full, the other uploads are waited for and
+     * the stored ones deleted, so nothing is kept. The image thumbnails are generated afterwards.
+     *
+     * @return The saved files, in the order of the uploaded ones
+     */
+    public List<File> upload(MultipartFile[] multipartFiles, String folder, FileType fileType, Task task,
+                             boolean hidden) {
+        StorageService storageService = storageServiceFactory.getStorageService();
+        List<CompletableFuture<File>> uploads = new ArrayList<>();
+        try {
+            for (MultipartFile multipartFile : multipartFiles) {
+                uploads.add(CompletableFuture.supplyAsync(() -> {
+                    File file = new File(multipartFile.getOriginalFilename(),
+                            storageService.upload(multipartFile, folder), fileType, task, hidden);
+                    file.setContentType(multipartFile.getContentType());
+                    return file;
+                }, uploadExecutor));
+            }
+        } catch (TaskRejectedException e) {
+            awaitAll(uploads).exceptionally(throwable -> null).join();
+            deleteUploaded(storageService, uploads);
+            throw new CustomException("Too many uploads in progress, try again later", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        try {
+            awaitAll(uploads).join();
+        } catch (CompletionException e) {
+            deleteUploaded(storageService, uploads);
+            if (e.getCause() instanceof CustomException) throw (CustomException) e.getCause();
+            throw new CustomException(e.getCause().getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        List<File> savedFiles;
+        try {
+            savedFiles = fileRepository.saveAll(uploads.stream().map(CompletableFuture::join)
+                    .collect(Collectors.toList()));
+        } catch (RuntimeException e) {
+            deleteUploaded(storageService, uploads);
+            throw e;
+        }
+        try {
+            imageDerivativeService.generate(savedFiles);
+        } catch (TaskRejectedException e) {
+            // the images keep being served in full size
+        }
+        return savedFiles;
+    }
+
+    /**
+     * @return A future completed once every upload is done, even when one of them failed
+     */
+    private CompletableFuture<Void> awaitAll(List<CompletableFuture<File>> uploads) {
+        return CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0]));
+    }
+
+    private void deleteUploaded(StorageService storageService, List<CompletableFuture<File>> uploads) {
+        uploads.stream().filter(upload -> !upload.isCompletedExceptionally()).map(CompletableFuture::join)
+                .forEach(file -> {
+                    try {
+                        storageService.delete(file.getPath());
+                    } catch (CustomException e) {
+                        log.warn("Could not delete the uploaded file {}", file.getPath(), e);
+                    }
+                });
+    }
+
     public File update(File File) {
         return fileRepository.save(File);
     }
@@ -1,8 +1,11 @@
 package com.grash.service;
 
 import com.google.auth.Credentials;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.storage.*;
+import com.grash.dto.StoredFileInfo;
 import com.grash.exception.CustomException;
 import com.grash.model.File;
 import com.grash.utils.Helper;
@@ -10,6 +13,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.annotation.PostConstruct;
@@ -18,9 +22,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
@@ -59,19 +65,26 @@ public class GCPService implements StorageService {
     }
 
     public String upload(MultipartFile file, String folder) {
+        return upload(file.getOriginalFilename(), file.getContentType(), folder, outputStream -> {
+            try (InputStream inputStream = file.getInputStream()) {
+                StreamUtils.copy(inputStream, outputStream);
+            }
+        });
+    }
+
+    public String upload(String fileName, String contentType, String folder, ContentWriter contentWriter) {
         checkIfConfigured();
         Helper helper = new Helper();
+        String filePath = folder + "/" + helper.generateString() + " " + fileName;
+        WriteChannel channel = storage.writer(BlobInfo.newBuilder(gcpBucketName, filePath)
+                        .setContentType(contentType).build(),
+                Storage.BlobWriteOption.predefinedAcl(Storage.PredefinedAcl.PRIVATE));
         try {
-            String filePath = folder + "/" + helper.generateString() + " " + file.getOriginalFilename();
-            BlobInfo blobInfo = storage.create(
-                    BlobInfo.newBuilder(gcpBucketName, filePath
-                    ).build(), //get
-                    // original file name
-                    file.getBytes(),
-                    Storage.BlobTargetOption.predefinedAcl(Storage.PredefinedAcl.PRIVATE)
-            );
+            // the blob is only created when the channel is closed, so a failed write leaves no partial file
+            contentWriter.write(Channels.newOutputStream(channel));
+            channel.close();
             return filePath;
-        } catch (IllegalStateException | IOException e) {
+        } catch (IOException | StorageException e) {
             throw new CustomException(e.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
         }
     }
@@ -95,6 +108,34 @@ public class GCPService implements StorageService {
         return download(file.getPath());
     }
 
+    public StoredFileInfo stat(String filePath) {
+        checkIfConfigured();
+        Blob blob = getBlob(filePath);
+        return new StoredFileInfo(blob.getSize(), blob.getEtag(), blob.getContentType());
+    }
+
+    public void delete(String filePath) {
+        checkIfConfigured();
+        try {
+            storage.delete(BlobId.of(gcpBucketName, filePath));
+        } catch (StorageException e) {
+            throw new CustomException("Error deleting file", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    public InputStream openStream(String filePath, long offset, long length) {
+        checkIfConfigured();
+        // the reader fetches the blob in chunks as the stream is read, the caller stops after length bytes
+        ReadChannel reader = storage.reader(BlobId.of(gcpBucketName, filePath));
+        try {
+            reader.seek(offset);
+            return Channels.newInputStream(reader);
+        } catch (IOException | StorageException e) {
+            reader.close();
+            throw new CustomException("Error retrieving file", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     private Blob getBlob(String filePath) {
         Blob blob = storage.get(BlobId.of(gcpBucketName, filePath));
 
@@ -104,8 +145,39 @@ public class GCPService implements StorageService {
         return blob;
     }
 
+    /**
+     * Signs locally when the content type of the file is known, instead of fetching the blob to read it
+     */
     public String generateSignedUrl(File file, long expirationMinutes) {
-        return generateSignedUrl(file.getPath(), expirationMinutes);
+        return generateSignedUrl(file.getPath(), file.getContentType(), expirationMinutes);
+    }
+
+    @Override
+    public String generateSignedUrl(String filePath, String contentType, long expirationMinutes) {
+        if (contentType == null) return generateSignedUrl(filePath, expirationMinutes);
+        return generateSignedUrl(BlobInfo.newBuilder(gcpBucketName, filePath).setContentType(contentType).build(),
+                expirationMinutes);
+    }
+
+    /**
+     * Fetches the blobs of the files without content type in a single batch request
+     */
+    @Override
+    public Map<String, String> generateSignedUrls(Collection<File> files, long expirationMinutes) {
+        Map<String, String> urls = new HashMap<>();
+        List<BlobId> blobIds = new ArrayList<>();
+        files.forEach(file -> {
+            if (file.getContentType() == null) blobIds.add(BlobId.of(gcpBucketName, file.getPath()));
+            else urls.put(file.getPath(), generateSignedUrl(file, expirationMinutes));
+        });
+        if (!blobIds.isEmpty()) {
+            for (Blob blob : storage.get(blobIds)) {
+                if (blob == null) continue;
+                urls.put(blob.getName(), generateSignedUrl(BlobInfo.newBuilder(blob.getBlobId())
+                        .setContentType(blob.getContentType()).build(), expirationMinutes));
+            }
+        }
+        return urls;
     }
 
     public String generateSignedUrl(String filePath, long expirationMinutes) {
@@ -0,0 +1,220 @@
+package com.grash.service;
+
+import com.grash.configuration.AsyncConfig;
+import com.grash.dto.StoredFileInfo;
+import com.grash.factory.StorageServiceFactory;
+import com.grash.model.File;
+import com.grash.repository.FileRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Generates the downscaled copies of the uploaded images: a {@link #THUMBNAIL_SIZE} pixels thumbnail for the lists and
+ * a {@link #WEB_SIZE} pixels one for the screens and the PDFs. They are stored as JPEG next to the original.
+ * <p>
+ * The original is decoded once, subsampled while decoding so that a large photo doesn't need its full resolution in
+ * memory, then turned upright according to its EXIF orientation, which ImageIO ignores. Images ImageIO can't read
+ * are left without copies.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageDerivativeService {
+    public static final String CONTENT_TYPE = "image/jpeg";
+    private static final int THUMBNAIL_SIZE = 256;
+    private static final int WEB_SIZE = 1280;
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final int EXIF_MARKER = 0xE1;
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private final StorageServiceFactory storageServiceFactory;
+    private final FileRepository fileRepository;
+
+    @Async(AsyncConfig.IMAGE_EXECUTOR)
+    public void generate(Collection<File> files) {
+        files.stream().filter(this::isImage).forEach(file -> {
+            try {
+                generate(file);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not generate the derivatives of file {}", file.getId(), e);
+            }
+        });
+    }
+
+    private boolean isImage(File file) {
+        return file.getContentType() != null && file.getContentType().startsWith("image/");
+    }
+
+    private void generate(File file) throws IOException {
+        BufferedImage image = read(file.getPath());
+        if (image == null) return;
+        String folder = file.getPath().substring(0, Math.max(file.getPath().lastIndexOf('/'), 0));
+        String baseName = file.getName().replaceFirst("\\.[^.]*$", "");
+        String webPath = null;
+        String thumbnailPath = null;
+        if (Math.max(image.getWidth(), image.getHeight()) > WEB_SIZE) {
+            image = resize(image, WEB_SIZE);
+            webPath = upload(image, folder, "web " + baseName + ".jpg");
+        }
+        if (Math.max(image.getWidth(), image.getHeight()) > THUMBNAIL_SIZE) {
+            thumbnailPath = upload(resize(image, THUMBNAIL_SIZE), folder, "thumbnail " + baseName + ".jpg");
+        }
+        if (webPath != null || thumbnailPath != null) {
+            fileRepository.updateDerivatives(file.getId(), thumbnailPath, webPath);
+        }
+    }
+
+    private BufferedImage read(String filePath) throws IOException {
+        StorageService storageService = storageServiceFactory.getStorageService();
+        StoredFileInfo info = storageService.stat(filePath);
+        try (InputStream inputStream = storageService.openStream(filePath, 0, info.getSize());
+             ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, false);
+                int largestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                // keep at least twice the web size so that downscaling still smooths the result
+                int subsampling = Math.max(1, largestSide / (2 * WEB_SIZE));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                IIOImage image = reader.readAll(0, param);
+                return orient((BufferedImage) image.getRenderedImage(), getOrientation(image.getMetadata()));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return The EXIF orientation of a JPEG, from 1 (upright) to 8, 1 when there is none
+     */
+    private int getOrientation(IIOMetadata metadata) {
+        if (metadata == null || !Arrays.asList(metadata.getMetadataFormatNames()).contains(JPEG_METADATA_FORMAT))
+            return 1;
+        Node markerSequence = ((IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT))
+                .getElementsByTagName("markerSequence").item(0);
+        if (markerSequence == null) return 1;
+        for (Node marker = markerSequence.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+            if (!(marker instanceof IIOMetadataNode) || !"unknown".equals(marker.getNodeName())) continue;
+            Node markerTag = marker.getAttributes().getNamedItem("MarkerTag");
+            if (markerTag == null || Integer.parseInt(markerTag.getNodeValue()) != EXIF_MARKER) continue;
+            Object data = ((IIOMetadataNode) marker).getUserObject();
+            if (data instanceof byte[]) return getOrientation((byte[]) data);
+        }
+        return 1;
+    }
+
+    /**
+     * Reads the orientation tag of the first IFD of an EXIF segment: {@code Exif\0\0}, then a TIFF header giving the
+     * byte order and the offset of the IFD, made of 12 bytes entries
+     */
+    private int getOrientation(byte[] exif) {
+        int tiff = 6;
+        if (exif.length < tiff + 8 || exif[0] != 'E' || exif[1] != 'x' || exif[2] != 'i' || exif[3] != 'f')
+            return 1;
+        ByteBuffer buffer = ByteBuffer.wrap(exif);
+        buffer.order(exif[tiff] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff + buffer.getInt(tiff + 4);
+        if (ifd < tiff || ifd + 2 > exif.length) return 1;
+        int entries = buffer.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > exif.length) break;
+            if ((buffer.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                int orientation = buffer.getShort(entry + 8) & 0xFFFF;
+                return orientation >= 1 && orientation <= 8 ? orientation : 1;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Applies an EXIF orientation: 2 to 4 mirror or turn the image over, 5 to 8 also swap its sides
+     */
+    private BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation == 1) return image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AffineTransform transform;
+        switch (orientation) {
+            case 2:
+                transform = new AffineTransform(-1, 0, 0, 1, width, 0);
+                break;
+            case 3:
+                transform = new AffineTransform(-1, 0, 0, -1, width, height);
+                break;
+            case 4:
+                transform = new AffineTransform(1, 0, 0, -1, 0, height);
+                break;
+            case 5:
+                transform = new AffineTransform(0, 1, 1, 0, 0, 0);
+                break;
+            case 6:
+                transform = new AffineTransform(0, 1, -1, 0, height, 0);
+                break;
+            case 7:
+                transform = new AffineTransform(0, -1, -1, 0, height, width);
+                break;
+            default:
+                transform = new AffineTransform(0, -1, 1, 0, 0, width);
+                break;
+        }
+        boolean swapSides = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(swapSides ? height : width, swapSides ? width : height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    private BufferedImage resize(BufferedImage image, int maxSize) {
+        double scale = (double) maxSize / Math.max(image.getWidth(), image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            // JPEG has no transparency
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    private String upload(BufferedImage image, String folder, String fileName) {
+        return storageServiceFactory.getStorageService().upload(fileName, CONTENT_TYPE, folder,
+                outputStream -> ImageIO.write(image, "jpg", outputStream));
+    }
+}
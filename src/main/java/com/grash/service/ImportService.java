@@ -1,145 +1,307 @@
 package com.grash.service;
 
 import com.grash.dto.imports.*;
+import com.grash.exception.CustomException;
 import com.grash.model.*;
-import org.springframework.stereotype.Service;
+import com.grash.model.abstracts.CompanyAudit;
+import com.grash.utils.Helper;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
-import java.util.Optional;
+import javax.persistence.EntityManager;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+/**
+ * Imports rows in bulk. The entities referenced by name, email or barcode are resolved for all the rows with a few
+ * IN queries, custom ids are reserved in one block, and rows are saved in chunks of {@link #CHUNK_SIZE}, each in its
+ * own transaction so Hibernate batches the inserts. When a chunk fails, it is split until the failing rows are
+ * found, and those are reported as errors while the others are imported.
+ * <p>
+ * The imports must be called outside a transaction: an outer one would hold its connection for the whole import,
+ * besides the one of each chunk.
+ */
 @Service
 @RequiredArgsConstructor
 public class ImportService {
+    private static final int CHUNK_SIZE = 500;
 
     private final AssetService assetService;
     private final LocationService locationService;
     private final PartService partService;
     private final MeterService meterService;
     private final WorkOrderService workOrderService;
+    private final EntityManager em;
+    private final PlatformTransactionManager transactionManager;
 
     public ImportResponse importWorkOrders(List<WorkOrderImportDTO> toImport, Company company) {
-        final int[] created = {0};
-        final int[] updated = {0};
-        toImport.forEach(workOrderImportDTO -> {
-            Long id = workOrderImportDTO.getId();
-            WorkOrder workOrder = new WorkOrder();
-            if (id == null) {
-                created[0]++;
-            } else {
-                Optional<WorkOrder> optionalWorkOrder = workOrderService.findByIdAndCompany(id, company.getId());
-                if (optionalWorkOrder.isPresent()) {
-                    workOrder = optionalWorkOrder.get();
-                    updated[0]++;
-                } else {
-                    created[0]++;
-                }
-            }
-            workOrderService.importWorkOrder(workOrder, workOrderImportDTO, company);
-        });
-        return ImportResponse.builder()
-                .created(created[0])
-                .updated(updated[0])
-                .build();
+        ImportContext context = new ImportContext(company, em);
+        loadIdsByCompany(context, Location.class, "name", keys(toImport, WorkOrderImportDTO::getLocationName));
+        loadIdsByCompany(context, Team.class, "name", keys(toImport, WorkOrderImportDTO::getTeamName));
+        loadIdsByCompany(context, Asset.class, "name", keys(toImport, WorkOrderImportDTO::getAssetName));
+        loadIdsByCompany(context, Customer.class, "name", keysIn(toImport, WorkOrderImportDTO::getCustomersNames));
+        Set<String> emails = keys(toImport, WorkOrderImportDTO::getPrimaryUserEmail,
+                WorkOrderImportDTO::getCompletedByEmail);
+        emails.addAll(keysIn(toImport, WorkOrderImportDTO::getAssignedToEmails));
+        loadIdsByCompany(context, OwnUser.class, "email", emails);
+        loadIdsByCompanySettings(context, WorkOrderCategory.class, keys(toImport, WorkOrderImportDTO::getCategory));
+        return importRows(WorkOrder.class, toImport, toImport, WorkOrderImportDTO::getId, WorkOrder::new, context,
+                count -> workOrderService.getWorkOrderNumbers(company, count),
+                (workOrder, dto, customId) -> workOrderService.importWorkOrder(workOrder, dto, context, customId));
     }
 
     public ImportResponse importAssets(List<AssetImportDTO> toImport, Company company) {
-        final int[] created = {0};
-        final int[] updated = {0};
-        AssetService.orderAssets(toImport).forEach(assetImportDTO -> {
-            Long id = assetImportDTO.getId();
-            Asset asset = new Asset();
-            if (id == null) {
-                created[0]++;
-            } else {
-                Optional<Asset> optionalAsset = assetService.findByIdAndCompany(id, company.getId());
-                if (optionalAsset.isPresent()) {
-                    asset = optionalAsset.get();
-                    updated[0]++;
-                } else {
-                    created[0]++;
-                }
-            }
-            assetService.importAsset(asset, assetImportDTO, company);
-        });
-        return ImportResponse.builder()
-                .created(created[0])
-                .updated(updated[0])
-                .build();
+        ImportContext context = new ImportContext(company, em);
+        loadIdsByCompany(context, Location.class, "name", keys(toImport, AssetImportDTO::getLocationName));
+        loadIdsByCompany(context, Asset.class, "name", keys(toImport, AssetImportDTO::getParentAssetName));
+        loadIdsByCompany(context, Team.class, "name", keysIn(toImport, AssetImportDTO::getTeamsNames));
+        loadIdsByCompany(context, Customer.class, "name", keysIn(toImport, AssetImportDTO::getCustomersNames));
+        loadIdsByCompany(context, Vendor.class, "name", keysIn(toImport, AssetImportDTO::getVendorsNames));
+        loadIdsByCompany(context, Part.class, "name", keysIn(toImport, AssetImportDTO::getPartsNames));
+        Set<String> emails = keys(toImport, AssetImportDTO::getPrimaryUserEmail);
+        emails.addAll(keysIn(toImport, AssetImportDTO::getAssignedToEmails));
+        loadIdsByCompany(context, OwnUser.class, "email", emails);
+        loadIdsByCompanySettings(context, AssetCategory.class, keys(toImport, AssetImportDTO::getCategory));
+        loadIdsByBarcode(context, Asset.class, "barCode", keys(toImport, AssetImportDTO::getBarCode));
+        return importRows(Asset.class, toImport, AssetService.orderAssets(toImport), AssetImportDTO::getId,
+                Asset::new, context, count -> assetService.getAssetNumbers(company, count),
+                (asset, dto, customId) -> assetService.importAsset(asset, dto, context, customId));
     }
 
     public ImportResponse importLocations(List<LocationImportDTO> toImport, Company company) {
-        final int[] created = {0};
-        final int[] updated = {0};
-        LocationService.orderLocations(toImport).forEach(locationImportDTO -> {
-            Long id = locationImportDTO.getId();
-            Location location = new Location();
-            if (id == null) {
-                created[0]++;
-            } else {
-                Optional<Location> optionalLocation = locationService.findByIdAndCompany(id, company.getId());
-                if (optionalLocation.isPresent()) {
-                    location = optionalLocation.get();
-                    updated[0]++;
-                } else {
-                    created[0]++;
-                }
-            }
-            locationService.importLocation(location, locationImportDTO, company);
-        });
-        return ImportResponse.builder()
-                .created(created[0])
-                .updated(updated[0])
-                .build();
+        ImportContext context = new ImportContext(company, em);
+        loadIdsByCompany(context, Location.class, "name", keys(toImport, LocationImportDTO::getParentLocationName));
+        loadIdsByCompany(context, Team.class, "name", keysIn(toImport, LocationImportDTO::getTeamsNames));
+        loadIdsByCompany(context, Customer.class, "name", keysIn(toImport, LocationImportDTO::getCustomersNames));
+        loadIdsByCompany(context, Vendor.class, "name", keysIn(toImport, LocationImportDTO::getVendorsNames));
+        loadIdsByCompany(context, OwnUser.class, "email", keysIn(toImport, LocationImportDTO::getWorkersEmails));
+        return importRows(Location.class, toImport, LocationService.orderLocations(toImport),
+                LocationImportDTO::getId, Location::new, context,
+                count -> locationService.getLocationNumbers(company, count),
+                (location, dto, customId) -> locationService.importLocation(location, dto, context, customId));
     }
 
     public ImportResponse importMeters(List<MeterImportDTO> toImport, Company company) {
-        final int[] created = {0};
-        final int[] updated = {0};
-        toImport.forEach(meterImportDTO -> {
-            Long id = meterImportDTO.getId();
-            Meter meter = new Meter();
-            if (id == null) {
-                created[0]++;
-            } else {
-                Optional<Meter> optionalMeter = meterService.findByIdAndCompany(id, company.getId());
-                if (optionalMeter.isPresent()) {
-                    meter = optionalMeter.get();
-                    updated[0]++;
-                } else {
-                    created[0]++;
-                }
-            }
-            meterService.importMeter(meter, meterImportDTO, company);
-        });
-        return ImportResponse.builder()
-                .created(created[0])
-                .updated(updated[0])
-                .build();
+        ImportContext context = new ImportContext(company, em);
+        loadIdsByCompany(context, Location.class, "name", keys(toImport, MeterImportDTO::getLocationName));
+        loadIdsByCompany(context, Asset.class, "name", keys(toImport, MeterImportDTO::getAssetName));
+        loadIdsByCompany(context, OwnUser.class, "email", keysIn(toImport, MeterImportDTO::getUsersEmails));
+        loadIdsByCompanySettings(context, MeterCategory.class, keys(toImport, MeterImportDTO::getMeterCategory));
+        return importRows(Meter.class, toImport, toImport, MeterImportDTO::getId, Meter::new, context, null,
+                (meter, dto, customId) -> meterService.importMeter(meter, dto, context));
     }
 
     public ImportResponse importParts(List<PartImportDTO> toImport, Company company) {
-        final int[] created = {0};
-        final int[] updated = {0};
-        toImport.forEach(partImportDTO -> {
-            Long id = partImportDTO.getId();
-            Part part = new Part();
-            if (id == null) {
-                created[0]++;
+        ImportContext context = new ImportContext(company, em);
+        loadIdsByCompany(context, Team.class, "name", keysIn(toImport, PartImportDTO::getTeamsNames));
+        loadIdsByCompany(context, Customer.class, "name", keysIn(toImport, PartImportDTO::getCustomersNames));
+        loadIdsByCompany(context, Vendor.class, "name", keysIn(toImport, PartImportDTO::getVendorsNames));
+        loadIdsByCompany(context, OwnUser.class, "email", keysIn(toImport, PartImportDTO::getAssignedToEmails));
+        loadIdsByCompanySettings(context, PartCategory.class, keys(toImport, PartImportDTO::getCategory));
+        loadIdsByBarcode(context, Part.class, "barcode", keys(toImport, PartImportDTO::getBarcode));
+        return importRows(Part.class, toImport, toImport, PartImportDTO::getId, Part::new, context, null,
+                (part, dto, customId) -> partService.importPart(part, dto, context));
+    }
+
+    /**
+     * @param toImport         the rows as received, used to number the errors
+     * @param ordered          the rows in the order they must be imported
+     * @param reserveCustomIds reserves the custom ids of the created entities, null if they have none
+     */
+    private <D, E extends CompanyAudit> ImportResponse importRows(Class<E> entityClass, List<D> toImport,
+                                                                  List<D> ordered, Function<D, Long> idOf,
+                                                                  Supplier<E> newEntity, ImportContext context,
+                                                                  IntFunction<List<String>> reserveCustomIds,
+                                                                  RowImporter<D, E> rowImporter) {
+        Long companyId = context.getCompany().getId();
+        Map<D, Integer> rowNumbers = new IdentityHashMap<>();
+        for (int i = 0; i < toImport.size(); i++) {
+            rowNumbers.putIfAbsent(toImport.get(i), i);
+        }
+        Set<Long> existingIds = findExistingIds(entityClass, ordered.stream().map(idOf).filter(Objects::nonNull)
+                .distinct().collect(Collectors.toList()), companyId);
+        List<ImportRow<D>> rows = new ArrayList<>();
+        ordered.forEach(dto -> {
+            Long id = idOf.apply(dto);
+            rows.add(new ImportRow<>(rowNumbers.get(dto), dto, id != null && existingIds.contains(id) ? id : null));
+        });
+        if (reserveCustomIds != null) {
+            List<ImportRow<D>> createdRows =
+                    rows.stream().filter(row -> row.getExistingId() == null).collect(Collectors.toList());
+            if (!createdRows.isEmpty()) {
+                Iterator<String> customIds = reserveCustomIds.apply(createdRows.size()).iterator();
+                createdRows.forEach(row -> row.setCustomId(customIds.next()));
+            }
+        }
+
+        ImportResponse response = ImportResponse.builder().build();
+        for (int i = 0; i < rows.size(); i += CHUNK_SIZE) {
+            importChunk(entityClass, rows.subList(i, Math.min(i + CHUNK_SIZE, rows.size())), newEntity, context,
+                    rowImporter, response);
+        }
+        response.getErrors().sort(Comparator.comparingInt(ImportError::getRow));
+        return response;
+    }
+
+    private <D, E extends CompanyAudit> void importChunk(Class<E> entityClass, List<ImportRow<D>> chunk,
+                                                         Supplier<E> newEntity, ImportContext context,
+                                                         RowImporter<D, E> rowImporter, ImportResponse response) {
+        ImportResponse chunkResponse = ImportResponse.builder().build();
+        try {
+            newTransaction().executeWithoutResult(status -> {
+                Map<Long, E> existingEntities = findExistingEntities(entityClass, chunk.stream()
+                        .map(ImportRow::getExistingId).filter(Objects::nonNull).collect(Collectors.toList()),
+                        context.getCompany().getId());
+                chunk.forEach(row -> {
+                    E entity;
+                    if (row.getExistingId() == null) {
+                        entity = newEntity.get();
+                        entity.setCompany(context.getCompany());
+                    } else entity = existingEntities.get(row.getExistingId());
+                    try {
+                        rowImporter.importRow(entity, row.getDto(), row.getCustomId());
+                    } catch (CustomException exception) {
+                        if (em.contains(entity)) em.detach(entity);
+                        chunkResponse.getErrors().add(new ImportError(row.getRowNumber(), exception.getMessage()));
+                        return;
+                    }
+                    if (row.getExistingId() == null) chunkResponse.setCreated(chunkResponse.getCreated() + 1);
+                    else chunkResponse.setUpdated(chunkResponse.getUpdated() + 1);
+                });
+            });
+        } catch (RuntimeException exception) {
+            context.rollback();
+            if (chunk.size() == 1) {
+                response.getErrors().add(new ImportError(chunk.get(0).getRowNumber(),
+                        getMostSpecificMessage(exception)));
             } else {
-                Optional<Part> optionalPart = partService.findByIdAndCompany(id, company.getId());
-                if (optionalPart.isPresent()) {
-                    part = optionalPart.get();
-                    updated[0]++;
-                } else {
-                    created[0]++;
-                }
+                int middle = chunk.size() / 2;
+                importChunk(entityClass, chunk.subList(0, middle), newEntity, context, rowImporter, response);
+                importChunk(entityClass, chunk.subList(middle, chunk.size()), newEntity, context, rowImporter,
+                        response);
             }
-            partService.importPart(part, partImportDTO, company);
-        });
-        return ImportResponse.builder()
-                .created(created[0])
-                .updated(updated[0])
-                .build();
+            return;
+        }
+        context.commit();
+        // the request's entity manager runs the chunks, so it must not keep their rows
+        em.clear();
+        response.setCreated(response.getCreated() + chunkResponse.getCreated());
+        response.setUpdated(response.getUpdated() + chunkResponse.getUpdated());
+        response.getErrors().addAll(chunkResponse.getErrors());
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+
+    private String getMostSpecificMessage(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() == null ? throwable.getMessage() : cause.getMessage();
+    }
+
+    private <E extends CompanyAudit> Set<Long> findExistingIds(Class<E> entityClass, List<Long> ids, Long companyId) {
+        Set<Long> result = new HashSet<>();
+        String entityName = em.getMetamodel().entity(entityClass).getName();
+        for (List<Long> chunk : Helper.inClauseChunks(ids)) {
+            result.addAll(em.createQuery("SELECT e.id FROM " + entityName +
+                            " e WHERE e.company.id = :companyId AND e.id IN :ids", Long.class)
+                    .setParameter("companyId", companyId)
+                    .setParameter("ids", chunk)
+                    .getResultList());
+        }
+        return result;
+    }
+
+    private <E extends CompanyAudit> Map<Long, E> findExistingEntities(Class<E> entityClass, List<Long> ids,
+                                                                      Long companyId) {
+        if (ids.isEmpty()) return Collections.emptyMap();
+        String entityName = em.getMetamodel().entity(entityClass).getName();
+        return em.createQuery("SELECT e FROM " + entityName + " e WHERE e.company.id = :companyId AND e.id IN :ids",
+                        entityClass)
+                .setParameter("companyId", companyId)
+                .setParameter("ids", ids)
+                .getResultStream()
+                .collect(Collectors.toMap(CompanyAudit::getId, Function.identity()));
+    }
+
+    private void loadIdsByCompany(ImportContext context, Class<?> type, String keyAttribute,
+                                  Collection<String> keys) {
+        context.putIds(type, loadIds(type, "LOWER(e." + keyAttribute + ")", "e.company.id",
+                context.getCompany().getId(), normalize(keys)));
+    }
+
+    private void loadIdsByCompanySettings(ImportContext context, Class<?> type, Collection<String> keys) {
+        context.putIds(type, loadIds(type, "LOWER(e.name)", "e.companySettings.id",
+                context.getCompany().getCompanySettings().getId(), normalize(keys)));
+    }
+
+    private void loadIdsByBarcode(ImportContext context, Class<?> type, String barcodeAttribute,
+                                  Collection<String> barcodes) {
+        context.putBarcodeIds(type, loadIds(type, "e." + barcodeAttribute, "e.company.id",
+                context.getCompany().getId(), new ArrayList<>(barcodes)));
+    }
+
+    /**
+     * @return the ids of the entities having the given keys, keeping the oldest entity when several have the same key
+     */
+    private Map<String, Long> loadIds(Class<?> type, String keyExpression, String ownerPath, Long ownerId,
+                                      List<String> keys) {
+        Map<String, Long> result = new HashMap<>();
+        String entityName = em.getMetamodel().entity(type).getName();
+        for (List<String> chunk : Helper.inClauseChunks(keys)) {
+            em.createQuery("SELECT " + keyExpression + ", e.id FROM " + entityName + " e WHERE " + ownerPath +
+                            " = :ownerId AND " + keyExpression + " IN :keys ORDER BY e.id", Object[].class)
+                    .setParameter("ownerId", ownerId)
+                    .setParameter("keys", chunk)
+                    .getResultList()
+                    .forEach(row -> result.putIfAbsent((String) row[0], (Long) row[1]));
+        }
+        return result;
+    }
+
+    private static List<String> normalize(Collection<String> keys) {
+        return keys.stream().map(ImportContext::normalize).distinct().collect(Collectors.toList());
+    }
+
+    @SafeVarargs
+    private static <D> Set<String> keys(List<D> rows, Function<D, String>... getters) {
+        return rows.stream()
+                .flatMap(row -> Arrays.stream(getters).map(getter -> getter.apply(row)))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private static <D> Set<String> keysIn(List<D> rows, Function<D, ? extends Collection<String>> getter) {
+        return rows.stream()
+                .map(getter)
+                .filter(Objects::nonNull)
+                .flatMap(Collection::stream)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    @FunctionalInterface
+    private interface RowImporter<D, E> {
+        void importRow(E entity, D dto, String customId);
+    }
+
+    @Data
+    private static class ImportRow<D> {
+        private final int rowNumber;
+        private final D dto;
+        private final Long existingId;
+        private String customId;
     }
 }
@@ -4,13 +4,16 @@ import com.grash.advancedsearch.SearchCriteria;
 import com.grash.advancedsearch.SpecificationBuilder;
 import com.grash.dto.LocationPatchDTO;
 import com.grash.dto.LocationShowDTO;
+import com.grash.dto.imports.ImportContext;
 import com.grash.dto.imports.LocationImportDTO;
 import com.grash.exception.CustomException;
+import com.grash.mapper.ChildrenLookup;
 import com.grash.mapper.LocationMapper;
 import com.grash.model.*;
 import com.grash.model.enums.NotificationType;
 import com.grash.model.enums.RoleType;
 import com.grash.repository.LocationRepository;
+import com.grash.utils.Helper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.MessageSource;
 import org.springframework.data.domain.Page;
@@ -24,19 +27,16 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.persistence.EntityManager;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 @Service
 @RequiredArgsConstructor
 public class LocationService {
     private final LocationRepository locationRepository;
-    private final UserService userService;
     private final CompanyService companyService;
-    private final CustomerService customerService;
     private final MessageSource messageSource;
-    private final VendorService vendorService;
     private final LocationMapper locationMapper;
     private final NotificationService notificationService;
-    private final TeamService teamService;
     private final EntityManager em;
     private final FileService fileService;
     private final CustomSequenceService customSequenceService;
@@ -125,41 +125,26 @@ public class LocationService {
         return locationRepository.findByNameIgnoreCaseAndCompany_Id(locationName, companyId);
     }
 
-    public void importLocation(Location location, LocationImportDTO dto, Company company) {
-        Long companyId = company.getId();
+    public void importLocation(Location location, LocationImportDTO dto, ImportContext context, String customId) {
         location.setName(dto.getName());
         location.setAddress(dto.getAddress());
         location.setLongitude(dto.getLongitude());
         location.setLatitude(dto.getLatitude());
-        Optional<Location> optionalLocation =
-                findByNameIgnoreCaseAndCompany(dto.getParentLocationName(), companyId).stream().findFirst();
-        optionalLocation.ifPresent(location::setParentLocation);
-        List<OwnUser> workers = new ArrayList<>();
-        dto.getWorkersEmails().forEach(email -> {
-            Optional<OwnUser> optionalUser1 = userService.findByEmailAndCompany(email, companyId);
-            optionalUser1.ifPresent(workers::add);
-        });
-        location.setWorkers(workers);
-        List<Team> teams = new ArrayList<>();
-        dto.getTeamsNames().forEach(teamName -> {
-            Optional<Team> optionalTeam = teamService.findByNameIgnoreCaseAndCompany(teamName, companyId);
-            optionalTeam.ifPresent(teams::add);
-        });
-        location.setTeams(teams);
-        location.setCustomId(getLocationNumber(company));
-        List<Customer> customers = new ArrayList<>();
-        dto.getCustomersNames().forEach(name -> {
-            Optional<Customer> optionalCustomer = customerService.findByNameIgnoreCaseAndCompany(name, companyId);
-            optionalCustomer.ifPresent(customers::add);
-        });
-        location.setCustomers(customers);
-        List<Vendor> vendors = new ArrayList<>();
-        dto.getVendorsNames().forEach(name -> {
-            Optional<Vendor> optionalVendor = vendorService.findByNameIgnoreCaseAndCompany(name, companyId);
-            optionalVendor.ifPresent(vendors::add);
-        });
-        location.setVendors(vendors);
-        locationRepository.save(location);
+        context.find(Location.class, dto.getParentLocationName()).ifPresent(location::setParentLocation);
+        location.setWorkers(context.findAll(OwnUser.class, dto.getWorkersEmails()));
+        location.setTeams(context.findAll(Team.class, dto.getTeamsNames()));
+        if (location.getCustomId() == null) location.setCustomId(customId);
+        location.setCustomers(context.findAll(Customer.class, dto.getCustomersNames()));
+        location.setVendors(context.findAll(Vendor.class, dto.getVendorsNames()));
+        Location savedLocation = locationRepository.save(location);
+        context.register(Location.class, savedLocation.getName(), savedLocation.getId());
+    }
+
+    public List<String> getLocationNumbers(Company company, int count) {
+        Long firstSequence = customSequenceService.reserveLocationSequences(company, count);
+        return LongStream.range(firstSequence, firstSequence + count)
+                .mapToObj(sequence -> "L" + String.format("%06d", sequence))
+                .collect(Collectors.toList());
     }
 
     public Optional<Location> findByIdAndCompany(Long id, Long companyId) {
@@ -171,8 +156,27 @@ public class LocationService {
         searchCriteria.getFilterFields().forEach(builder::with);
         Pageable page = PageRequest.of(searchCriteria.getPageNum(), searchCriteria.getPageSize(),
                 searchCriteria.getDirection(), searchCriteria.getSortField());
-        return locationRepository.findAll(builder.build(), page).map(location -> locationMapper.toShowDto(location,
-                this));
+        Page<Location> locations = locationRepository.findAll(builder.build(), page);
+        ChildrenLookup childrenLookup = getChildrenLookup(locations.getContent());
+        return locations.map(location -> locationMapper.toShowDto(location, childrenLookup));
+    }
+
+    /**
+     * @return The show DTOs of the locations, finding the ones having children with one query per
+     * {@link Helper#IN_CLAUSE_CHUNK_SIZE} locations
+     */
+    public List<LocationShowDTO> toShowDtos(Collection<Location> locations) {
+        ChildrenLookup childrenLookup = getChildrenLookup(locations);
+        return locations.stream().map(location -> locationMapper.toShowDto(location, childrenLookup))
+                .collect(Collectors.toList());
+    }
+
+    private ChildrenLookup getChildrenLookup(Collection<Location> locations) {
+        if (locations.isEmpty()) return id -> false;
+        List<Long> ids = locations.stream().map(Location::getId).collect(Collectors.toList());
+        Set<Long> parentIds = new HashSet<>();
+        Helper.inClauseChunks(ids).forEach(chunk -> parentIds.addAll(locationRepository.findParentIdsIn(chunk)));
+        return parentIds::contains;
     }
 
     public static List<LocationImportDTO> orderLocations(List<LocationImportDTO> locations) {
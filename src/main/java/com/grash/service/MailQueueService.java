@@ -0,0 +1,154 @@
+package com.grash.service;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Sends the queued emails from a single thread, in batches sharing one SMTP connection, at most
+ * {@code mail.queue.max-per-second} messages per second. The messages the server refused or that couldn't be sent
+ * are queued again with an exponential backoff, up to {@link #MAX_ATTEMPTS} times.
+ * <p>
+ * On shutdown, every queued message gets one last attempt without waiting for its retry delay, for at most
+ * {@code mail.queue.shutdown-timeout-seconds}. The ones still queued after that are lost.
+ * <p>
+ * The queue is only held in memory: the messages still queued when the node crashes are lost. Mails that must not
+ * be lost go through {@link OutboxService}, which stores them with the change that caused them and sends them
+ * directly, without this queue.
+ */
+@Service
+@Slf4j
+public class MailQueueService {
+    private static final int MAX_QUEUED_MESSAGES = 10000;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long FIRST_RETRY_DELAY_MILLIS = 30 * 1000L;
+
+    private final JavaMailSender emailSender;
+    private final int batchSize;
+    private final long shutdownTimeoutSeconds;
+    private final Bucket bucket;
+    private final DelayQueue<QueuedMail> queue = new DelayQueue<>();
+    private final ExecutorService sender =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("mail-sender-"));
+    private volatile boolean stopping = false;
+
+    public MailQueueService(JavaMailSender emailSender,
+                            @Value("${mail.queue.batch-size:50}") int batchSize,
+                            @Value("${mail.queue.max-per-second:10}") int maxPerSecond,
+                            @Value("${mail.queue.shutdown-timeout-seconds:20}") long shutdownTimeoutSeconds) {
+        this.emailSender = emailSender;
+        this.batchSize = Math.min(batchSize, maxPerSecond);
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+        this.bucket = Bucket.builder().addLimit(Bandwidth.simple(maxPerSecond, Duration.ofSeconds(1))).build();
+        sender.execute(this::run);
+    }
+
+    public void enqueue(MimeMessage message) {
+        if (stopping) {
+            log.warn("The mail queue is stopping, dropping a message");
+            return;
+        }
+        if (queue.size() >= MAX_QUEUED_MESSAGES) {
+            log.warn("The mail queue is full, dropping a message");
+            return;
+        }
+        queue.offer(new QueuedMail(message, 0, System.currentTimeMillis()));
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<QueuedMail> batch = new ArrayList<>();
+                if (stopping) {
+                    // the retry delays are not waited for anymore
+                    Iterator<QueuedMail> queued = queue.iterator();
+                    while (queued.hasNext() && batch.size() < batchSize) {
+                        batch.add(queued.next());
+                        queued.remove();
+                    }
+                    if (batch.isEmpty()) return;
+                } else {
+                    // polled rather than taken so that the shutdown is noticed
+                    QueuedMail first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                bucket.asBlocking().consume(batch.size());
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Mail batch failed", e);
+            }
+        }
+    }
+
+    private void send(List<QueuedMail> batch) {
+        try {
+            emailSender.send(batch.stream().map(QueuedMail::getMessage).toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            Set<Object> failedMessages = Collections.newSetFromMap(new IdentityHashMap<>());
+            failedMessages.addAll(e.getFailedMessages().keySet());
+            batch.stream().filter(mail -> failedMessages.contains(mail.getMessage())).forEach(mail -> retry(mail, e));
+        } catch (MailException e) {
+            batch.forEach(mail -> retry(mail, e));
+        }
+    }
+
+    private void retry(QueuedMail mail, MailException e) {
+        int attempts = mail.getAttempts() + 1;
+        if (attempts >= MAX_ATTEMPTS || stopping) {
+            log.error("Giving up sending a mail after {} attempts", attempts, e);
+            return;
+        }
+        log.warn("Sending a mail failed, attempt {}: {}", attempts, e.getMessage());
+        queue.offer(new QueuedMail(mail.getMessage(), attempts,
+                System.currentTimeMillis() + (FIRST_RETRY_DELAY_MILLIS << (attempts - 1))));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        sender.shutdown();
+        try {
+            if (!sender.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) sender.shutdownNow();
+        } catch (InterruptedException e) {
+            sender.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) log.warn("{} queued mails were not sent", queue.size());
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class QueuedMail implements Delayed {
+        private final MimeMessage message;
+        private final int attempts;
+        private final long notBefore;
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(notBefore - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(notBefore, ((QueuedMail) other).getNotBefore());
+        }
+    }
+}
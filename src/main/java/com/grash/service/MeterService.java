@@ -2,8 +2,10 @@ package com.grash.service;
 
 import com.grash.advancedsearch.SearchCriteria;
 import com.grash.advancedsearch.SpecificationBuilder;
+import com.grash.dto.MeterLastReading;
 import com.grash.dto.MeterPatchDTO;
 import com.grash.dto.MeterShowDTO;
+import com.grash.dto.imports.ImportContext;
 import com.grash.dto.imports.MeterImportDTO;
 import com.grash.exception.CustomException;
 import com.grash.mapper.MeterMapper;
@@ -11,6 +13,7 @@ import com.grash.model.*;
 import com.grash.model.enums.NotificationType;
 import com.grash.model.enums.RoleType;
 import com.grash.repository.MeterRepository;
+import com.grash.utils.Helper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.MessageSource;
 import org.springframework.data.domain.Page;
@@ -28,17 +31,13 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MeterService {
     private final MeterRepository meterRepository;
-    private final MeterCategoryService meterCategoryService;
     private final FileService fileService;
-    private final AssetService assetService;
     private final CompanyService companyService;
     private final MessageSource messageSource;
-    private final LocationService locationService;
-    private final UserService userService;
     private final EntityManager em;
     private final MeterMapper meterMapper;
     private final NotificationService notificationService;
-    private final ReadingService readingService;
+    private final OutboxService outboxService;
 
     @Transactional
     public Meter create(Meter meter) {
@@ -73,12 +72,40 @@ public class MeterService {
         return meterRepository.findByCompany_Id(id);
     }
 
+    public List<MeterLastReading> lockLastReadings(Collection<Long> ids, Long companyId) {
+        return meterRepository.lockLastReadings(ids, companyId);
+    }
+
+    /**
+     * @return The ids among these which are meters of the company, looked up {@link Helper#IN_CLAUSE_CHUNK_SIZE} at a
+     * time
+     */
+    public Set<Long> findExistingIds(Collection<Long> ids, Long companyId) {
+        Set<Long> existingIds = new HashSet<>();
+        Helper.inClauseChunks(ids).forEach(chunk ->
+                existingIds.addAll(meterRepository.findIdsByIdsAndCompany(chunk, companyId)));
+        return existingIds;
+    }
+
+    public Meter getReference(Long id) {
+        return em.getReference(Meter.class, id);
+    }
+
+    public void updateLastReading(Long id, Long value, Date readingAt) {
+        meterRepository.updateLastReading(id, value, readingAt);
+    }
+
+    public void setLastReading(Long id, Long value, Date readingAt) {
+        meterRepository.setLastReading(id, value, readingAt);
+    }
+
     public void notify(Meter meter, Locale locale) {
         String title = messageSource.getMessage("new_assignment", null, locale);
         String message = messageSource.getMessage("notification_meter_assigned", new Object[]{meter.getName()}, locale);
         if (meter.getUsers() != null) {
-            notificationService.createMultiple(meter.getUsers().stream().map(assignedUser ->
-                    new Notification(message, assignedUser, NotificationType.METER, meter.getId())).collect(Collectors.toList()), true, title);
+            outboxService.createNotifications("meter_created:" + meter.getId(), meter.getUsers().stream()
+                    .map(assignedUser -> new Notification(message, assignedUser, NotificationType.METER,
+                            meter.getId())).collect(Collectors.toList()), true, title);
         }
     }
 
@@ -113,31 +140,17 @@ public class MeterService {
         searchCriteria.getFilterFields().forEach(builder::with);
         Pageable page = PageRequest.of(searchCriteria.getPageNum(), searchCriteria.getPageSize(),
                 searchCriteria.getDirection(), searchCriteria.getSortField());
-        return meterRepository.findAll(builder.build(), page).map(meter -> meterMapper.toShowDto(meter,
-                readingService));
+        return meterRepository.findAll(builder.build(), page).map(meterMapper::toShowDto);
     }
 
-    public void importMeter(Meter meter, MeterImportDTO dto, Company company) {
-        Long companyId = company.getId();
-        Long companySettingsId = company.getCompanySettings().getId();
+    public void importMeter(Meter meter, MeterImportDTO dto, ImportContext context) {
         meter.setName(dto.getName());
         meter.setUnit(dto.getUnit());
         meter.setUpdateFrequency(dto.getUpdateFrequency());
-        Optional<Location> optionalLocation = locationService.findByNameIgnoreCaseAndCompany(dto.getLocationName(),
-                companyId).stream().findFirst();
-        optionalLocation.ifPresent(meter::setLocation);
-        Optional<Asset> optionalAsset = assetService.findByNameIgnoreCaseAndCompany(dto.getAssetName(),
-                companyId).stream().findFirst();
-        optionalAsset.ifPresent(meter::setAsset);
-        Optional<MeterCategory> optionalMeterCategory =
-                meterCategoryService.findByNameIgnoreCaseAndCompanySettings(dto.getMeterCategory(), companySettingsId);
-        optionalMeterCategory.ifPresent(meter::setMeterCategory);
-        List<OwnUser> users = new ArrayList<>();
-        dto.getUsersEmails().forEach(email -> {
-            Optional<OwnUser> optionalUser1 = userService.findByEmailAndCompany(email, companyId);
-            optionalUser1.ifPresent(users::add);
-        });
-        meter.setUsers(users);
+        context.find(Location.class, dto.getLocationName()).ifPresent(meter::setLocation);
+        context.find(Asset.class, dto.getAssetName()).ifPresent(meter::setAsset);
+        context.find(MeterCategory.class, dto.getMeterCategory()).ifPresent(meter::setMeterCategory);
+        meter.setUsers(context.findAll(OwnUser.class, dto.getUsersEmails()));
         meterRepository.save(meter);
     }
 
@@ -1,5 +1,7 @@
 package com.grash.service;
 
+import com.grash.configuration.AsyncConfig;
+import com.grash.dto.StoredFileInfo;
 import com.grash.exception.CustomException;
 import com.grash.model.File;
 import com.grash.utils.Helper;
@@ -8,19 +10,24 @@ import io.minio.errors.*;
 import io.minio.http.Method;
 import lombok.RequiredArgsConstructor;
 import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.annotation.PostConstruct;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.net.*;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @RequiredArgsConstructor
@@ -36,9 +43,18 @@ public class MinioService implements StorageService {
     @Value("${storage.minio.public-endpoint}")
     private String minioPublicEndpoint;
 
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final long STREAM_PART_SIZE = 5 * 1024 * 1024;
+
     private MinioClient minioClient;
+    private AsyncTaskExecutor storageStreamExecutor;
     private static boolean configured = false;
 
+    @Autowired
+    public void setDeps(@Qualifier(AsyncConfig.STORAGE_STREAM_EXECUTOR) AsyncTaskExecutor storageStreamExecutor) {
+        this.storageStreamExecutor = storageStreamExecutor;
+    }
+
     @PostConstruct
     private void init() {
         if (minioEndpoint.isEmpty() || minioBucket.isEmpty() || minioAccessKey.isEmpty() || minioSecretKey.isEmpty() || minioPublicEndpoint.isEmpty()) {
@@ -87,6 +103,55 @@ public class MinioService implements StorageService {
         }
     }
 
+    public String upload(String fileName, String contentType, String folder, ContentWriter contentWriter) {
+        checkIfConfigured();
+        Helper helper = new Helper();
+        String filePath = folder + "/" + helper.generateString() + " " + fileName;
+        // the content goes through a bounded pipe into a multipart upload running on another thread
+        try (PipedInputStream inputStream = new PipedInputStream(STREAM_BUFFER_SIZE)) {
+            PipedOutputStream outputStream = new PipedOutputStream(inputStream);
+            AtomicReference<Exception> uploadError = new AtomicReference<>();
+            Future<ObjectWriteResponse> upload = storageStreamExecutor.submit(() -> {
+                try {
+                    return minioClient.putObject(
+                            PutObjectArgs.builder()
+                                    .bucket(minioBucket)
+                                    .object(filePath)
+                                    .stream(inputStream, -1, STREAM_PART_SIZE)
+                                    .contentType(contentType)
+                                    .build()
+                    );
+                } catch (Exception e) {
+                    // the pipe is not read anymore, closing it fails the writer instead of blocking it forever
+                    uploadError.set(e);
+                    inputStream.close();
+                    throw e;
+                }
+            });
+            try {
+                contentWriter.write(outputStream);
+            } catch (IOException | RuntimeException e) {
+                if (uploadError.get() != null)
+                    throw new CustomException(uploadError.get().getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+                // interrupt the upload before the pipe is closed so that a partial file is never stored
+                upload.cancel(true);
+                throw e;
+            }
+            outputStream.close();
+            upload.get();
+            return filePath;
+        } catch (ExecutionException e) {
+            throw new CustomException(e.getCause().getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+        } catch (TaskRejectedException e) {
+            throw new CustomException("Too many uploads in progress, try again later", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException(e.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+        } catch (IOException e) {
+            throw new CustomException(e.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+    }
+
     public String generateSignedUrl(File file, long expirationMinutes) {
         return generateSignedUrl(file.getPath(), expirationMinutes);
     }
@@ -151,6 +216,47 @@ public class MinioService implements StorageService {
         return download(filePath);
     }
 
+    public StoredFileInfo stat(String filePath) {
+        checkIfConfigured();
+        try {
+            StatObjectResponse stat = minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(minioBucket)
+                    .object(filePath)
+                    .build());
+            return new StoredFileInfo(stat.size(), stat.etag(), stat.contentType());
+        } catch (ErrorResponseException e) {
+            throw new CustomException("File not found", HttpStatus.NOT_FOUND);
+        } catch (MinioException | IOException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw new CustomException("Error retrieving file", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    public void delete(String filePath) {
+        checkIfConfigured();
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(minioBucket)
+                    .object(filePath)
+                    .build());
+        } catch (MinioException | IOException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw new CustomException("Error deleting file", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    public InputStream openStream(String filePath, long offset, long length) {
+        checkIfConfigured();
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(minioBucket)
+                    .object(filePath)
+                    .offset(offset)
+                    .length(length)
+                    .build());
+        } catch (MinioException | IOException | InvalidKeyException | NoSuchAlgorithmException e) {
+            throw new CustomException("Error retrieving file", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     private void checkIfConfigured() {
         if (!configured)
             throw new CustomException("MinIO is not configured. Please define the MinIO credentials in the env " +
@@ -2,18 +2,14 @@ package com.grash.service;
 
 import com.grash.advancedsearch.SearchCriteria;
 import com.grash.advancedsearch.SpecificationBuilder;
+import com.grash.configuration.AsyncConfig;
 import com.grash.dto.NotificationPatchDTO;
 import com.grash.exception.CustomException;
 import com.grash.mapper.NotificationMapper;
 import com.grash.model.Notification;
-import com.grash.model.OwnUser;
-import com.grash.model.PushNotificationToken;
 import com.grash.repository.NotificationRepository;
-import com.grash.service.expo.AuthenticatedPushServerResolver;
-import io.github.jav.exposerversdk.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -24,8 +20,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,31 +29,33 @@ import java.util.stream.Collectors;
 public class NotificationService {
     private final NotificationRepository notificationRepository;
     private final NotificationMapper notificationMapper;
-    private final PushNotificationTokenService pushNotificationTokenService;
+    private final PushNotificationDispatcher pushNotificationDispatcher;
     private final SimpMessageSendingOperations messagingTemplate;
 
-    @Async
+    @Async(AsyncConfig.NOTIFICATION_EXECUTOR)
     public Notification create(Notification notification) {
         Notification savedNotification = notificationRepository.save(notification);
         messagingTemplate.convertAndSend("/notifications/" + notification.getUser().getId(), savedNotification);
         return savedNotification;
     }
 
-    @Async
+    @Async(AsyncConfig.NOTIFICATION_EXECUTOR)
     public void createMultiple(List<Notification> notifications, boolean mobile, String title) {
+        saveAndSendMultiple(notifications, mobile, title);
+    }
+
+    public void saveAndSendMultiple(List<Notification> notifications, boolean mobile, String title) {
         List<Notification> savedNotifications = notificationRepository.saveAll(notifications);
         savedNotifications.forEach(notification ->
                 messagingTemplate.convertAndSend("/notifications/" + notification.getUser().getId(), notification));
-        if (mobile && !notifications.isEmpty())
-            try {
-                sendPushNotifications(notifications.stream().map(Notification::getUser).collect(Collectors.toList()),
-                        title, notifications.get(0).getMessage(), new HashMap<String, Object>() {{
-                            put("type", notifications.get(0).getNotificationType());
-                            put("id", notifications.get(0).getResourceId());
-                        }});
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        if (mobile && !notifications.isEmpty()) {
+            Notification first = notifications.get(0);
+            Map<String, Object> data = new HashMap<>();
+            data.put("type", first.getNotificationType());
+            data.put("id", first.getResourceId());
+            pushNotificationDispatcher.send(notifications.stream().map(notification -> notification.getUser().getId())
+                    .collect(Collectors.toSet()), title, first.getMessage(), data);
+        }
     }
 
     public Notification update(Long id, NotificationPatchDTO notificationsPatchDTO) {
@@ -94,112 +90,6 @@ public class NotificationService {
         return notificationRepository.findAll(builder.build(), page);
     }
 
-    public void sendPushNotifications(Collection<OwnUser> users, String title, String message,
-                                      Map<String, Object> data) throws PushClientException, InterruptedException {
-
-        List<String> tokens = new ArrayList<>();
-        users.forEach(user -> {
-            Optional<PushNotificationToken> optionalPushNotificationToken =
-                    pushNotificationTokenService.findByUser(user.getId());
-            if (optionalPushNotificationToken.isPresent()) {
-                String token = optionalPushNotificationToken.get().getToken();
-                if (PushClient.isExponentPushToken(token))
-                    tokens.add(token);
-            }
-        });
-
-        ExpoPushMessage expoPushMessage = new ExpoPushMessage();
-        expoPushMessage.getTo().addAll(tokens);
-        expoPushMessage.setTitle(title);
-        expoPushMessage.setBody(message);
-        expoPushMessage.setData(data);
-
-        List<ExpoPushMessage> expoPushMessages = new ArrayList<>();
-        expoPushMessages.add(expoPushMessage);
-
-        PushClientCustomData client = new PushClientCustomData();
-        String expoAccessToken = Optional.ofNullable(System.getenv("EXPO_ACCESS_TOKEN"))
-                .orElseGet(() -> System.getProperty("EXPO_ACCESS_TOKEN", ""));
-        if (!expoAccessToken.isEmpty()) {
-            client.pushServerResolver = new AuthenticatedPushServerResolver(expoAccessToken);
-        }
-        List<List<ExpoPushMessage>> chunks = client.chunkPushNotifications(expoPushMessages);
-
-        List<CompletableFuture<List<ExpoPushTicket>>> messageRepliesFutures = new ArrayList<>();
-
-        for (List<ExpoPushMessage> chunk : chunks) {
-            messageRepliesFutures.add(client.sendPushNotificationsAsync(chunk));
-        }
-
-        // Wait for each completable future to finish
-        List<ExpoPushTicket> allTickets = new ArrayList<>();
-        for (CompletableFuture<List<ExpoPushTicket>> messageReplyFuture : messageRepliesFutures) {
-            try {
-                allTickets.addAll(messageReplyFuture.get());
-            } catch (InterruptedException | ExecutionException e) {
-                log.error("Expo push future failed", e);
-            }
-        }
-
-        if (allTickets.isEmpty()) {
-            log.error("Expo push request returned zero tickets (tokens count={}, title={}). Raw response might have failed.",
-                    tokens.size(), title);
-            return;
-        }
-
-        List<ExpoPushMessageTicketPair<ExpoPushMessage>> zippedMessagesTickets =
-                client.zipMessagesTickets(expoPushMessages, allTickets);
-
-        List<ExpoPushMessageTicketPair<ExpoPushMessage>> okTicketMessages =
-                client.filterAllSuccessfulMessages(zippedMessagesTickets);
-        String okTicketMessagesString = okTicketMessages.stream().map(
-                p -> "Title: " + p.message.getTitle() + ", Id:" + p.ticket.getId()
-        ).collect(Collectors.joining(","));
-        log.debug("Received OK tickets for {} messages: {}", okTicketMessages.size(), okTicketMessagesString);
-
-        List<ExpoPushMessageTicketPair<ExpoPushMessage>> errorTicketMessages =
-                client.filterAllMessagesWithError(zippedMessagesTickets);
-        if (!errorTicketMessages.isEmpty()) {
-            String errorTicketMessagesString = errorTicketMessages.stream().map(
-                    p -> "Title: " + p.message.getTitle() + ", Error: " + p.ticket.getDetails().getError()
-            ).collect(Collectors.joining(","));
-            log.warn("Expo push returned {} error tickets: {}", errorTicketMessages.size(), errorTicketMessagesString);
-        }
-
-
-        // TODO
-        // Countdown 30s
-//            int wait = 30;
-//            for (int i = wait; i >= 0; i--) {
-//                System.out.print("Waiting for " + wait + " seconds. " + i + "s\r");
-//                Thread.sleep(1000);
-//            }
-//        System.out.println("Fetching receipts...");
-//
-//        List<String> ticketIds = (client.getTicketIdsFromPairs(okTicketMessages));
-//        CompletableFuture<List<ExpoPushReceipt>> receiptFutures = client.getPushNotificationReceiptsAsync(ticketIds);
-//
-//        List<ExpoPushReceipt> receipts = new ArrayList<>();
-//        try {
-//            receipts = receiptFutures.get();
-//        } catch (ExecutionException | InterruptedException e) {
-//            e.printStackTrace();
-//        }
-//
-//        System.out.println(
-//                "Received " + receipts.size() + " receipts:");
-//
-//        for (ExpoPushReceipt receipt : receipts) {
-//            System.out.println(
-//                    "Receipt for id: " +
-//                            receipt.getId() +
-//                            " had status: " +
-//                            receipt.getStatus());
-//
-//        }
-
-    }
-
     public void readAll(Long userId) {
         notificationRepository.readAll(userId);
     }
@@ -0,0 +1,170 @@
+package com.grash.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.grash.dto.outbox.EmailMessage;
+import com.grash.dto.outbox.NotificationsMessage;
+import com.grash.exception.CustomException;
+import com.grash.model.Notification;
+import com.grash.model.OutboxEvent;
+import com.grash.model.OwnUser;
+import com.grash.model.enums.OutboxEventStatus;
+import com.grash.model.enums.OutboxEventType;
+import com.grash.repository.OutboxEventRepository;
+import com.grash.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.mail.MessagingException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional outbox for the notifications and emails sent when entities change. They are recorded as
+ * {@link OutboxEvent}s in the caller's transaction and delivered after it commits, so they are never sent for a
+ * rolled back change and the caller doesn't wait for SMTP or Expo.
+ * <p>
+ * Events are dispatched right after the commit, and by {@link com.grash.job.OutboxDispatchJob} for the ones to
+ * retry. Delivery is at least once: an event is claimed with a lease, and claimed again if its node dies before
+ * marking it processed. An idempotency key identifies each event, and recording a key twice is a no-op.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxService {
+    private static final int BATCH_SIZE = 50;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long LEASE_MILLIS = 5 * 60 * 1000L;
+    private static final long FIRST_RETRY_DELAY_MILLIS = 30 * 1000L;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60 * 60 * 1000L;
+    private static final long PROCESSED_RETENTION_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final UserRepository userRepository;
+    private final NotificationService notificationService;
+    private final EmailService2 emailService2;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PlatformTransactionManager transactionManager;
+
+    @Transactional
+    public void createNotifications(String idempotencyKey, List<Notification> notifications, boolean mobile,
+                                    String title) {
+        if (notifications.isEmpty()) return;
+        enqueue(OutboxEventType.NOTIFICATIONS, idempotencyKey, new NotificationsMessage(title, mobile,
+                notifications.stream().map(notification -> new NotificationsMessage.Item(notification.getMessage(),
+                                notification.getUser().getId(), notification.getNotificationType(),
+                                notification.getResourceId()))
+                        .collect(Collectors.toList())));
+    }
+
+    @Transactional
+    public void sendEmail(String idempotencyKey, String[] to, String subject, Map<String, Object> templateModel,
+                          String template, Locale locale) {
+        if (to.length == 0) return;
+        enqueue(OutboxEventType.EMAIL, idempotencyKey, new EmailMessage(to, subject, templateModel, template,
+                locale.toLanguageTag()));
+    }
+
+    private void enqueue(OutboxEventType type, String idempotencyKey, Object message) {
+        String key = idempotencyKey == null ? UUID.randomUUID().toString() : idempotencyKey;
+        if (idempotencyKey != null && outboxEventRepository.existsByIdempotencyKey(key)) return;
+        try {
+            OutboxEvent event = outboxEventRepository.save(new OutboxEvent(type, key,
+                    objectMapper.writeValueAsString(message)));
+            eventPublisher.publishEvent(event);
+        } catch (JsonProcessingException e) {
+            throw new CustomException("Can't record the " + type + " event", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Async
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRecorded(OutboxEvent event) {
+        dispatchPending();
+    }
+
+    /**
+     * Delivers the due events, {@link #BATCH_SIZE} at a time, each one outside of any transaction so that a slow or
+     * failing delivery doesn't hold the others
+     */
+    public void dispatchPending() {
+        List<Long> ids;
+        do {
+            Date now = new Date();
+            ids = newTransaction().execute(status -> outboxEventRepository.claim(now,
+                            new Date(now.getTime() + LEASE_MILLIS), BATCH_SIZE).stream()
+                    .map(Number::longValue).collect(Collectors.toList()));
+            ids.forEach(this::dispatch);
+        } while (ids.size() == BATCH_SIZE);
+    }
+
+    public void deleteProcessed() {
+        newTransaction().executeWithoutResult(status -> outboxEventRepository.deleteByStatusAndProcessedAtBefore(
+                OutboxEventStatus.PROCESSED, new Date(System.currentTimeMillis() - PROCESSED_RETENTION_MILLIS)));
+    }
+
+    private void dispatch(Long id) {
+        Optional<OutboxEvent> optionalEvent = outboxEventRepository.findById(id);
+        if (!optionalEvent.isPresent()) return;
+        OutboxEvent event = optionalEvent.get();
+        try {
+            switch (event.getType()) {
+                case NOTIFICATIONS:
+                    deliverNotifications(objectMapper.readValue(event.getPayload(), NotificationsMessage.class));
+                    break;
+                case EMAIL:
+                    deliverEmail(objectMapper.readValue(event.getPayload(), EmailMessage.class));
+                    break;
+            }
+            event.setStatus(OutboxEventStatus.PROCESSED);
+            event.setProcessedAt(new Date());
+            event.setLastError(null);
+        } catch (Exception e) {
+            log.warn("Delivery of outbox event {} ({}) failed, attempt {}", event.getId(), event.getType(),
+                    event.getAttempts(), e);
+            event.setLastError(String.valueOf(e.getMessage()));
+            if (event.getAttempts() >= MAX_ATTEMPTS) {
+                event.setStatus(OutboxEventStatus.FAILED);
+            } else {
+                long delay = Math.min(FIRST_RETRY_DELAY_MILLIS << (event.getAttempts() - 1), MAX_RETRY_DELAY_MILLIS);
+                event.setNextAttemptAt(new Date(System.currentTimeMillis() + delay));
+            }
+        }
+        newTransaction().executeWithoutResult(status -> outboxEventRepository.save(event));
+    }
+
+    private void deliverNotifications(NotificationsMessage message) {
+        Map<Long, OwnUser> users = userRepository.findAllById(message.getNotifications().stream()
+                        .map(NotificationsMessage.Item::getUserId).collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(OwnUser::getId, Function.identity()));
+        List<Notification> notifications = message.getNotifications().stream()
+                .filter(item -> users.containsKey(item.getUserId()))
+                .map(item -> new Notification(item.getMessage(), users.get(item.getUserId()),
+                        item.getNotificationType(), item.getResourceId()))
+                .collect(Collectors.toList());
+        if (!notifications.isEmpty()) {
+            notificationService.saveAndSendMultiple(notifications, message.isMobile(), message.getTitle());
+        }
+    }
+
+    private void deliverEmail(EmailMessage message) throws MessagingException {
+        emailService2.sendThymeleafMessage(message.getTo(), message.getSubject(), message.getTemplateModel(),
+                message.getTemplate(), Locale.forLanguageTag(message.getLanguageTag()));
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+}
@@ -4,6 +4,7 @@ import com.grash.advancedsearch.SearchCriteria;
 import com.grash.advancedsearch.SpecificationBuilder;
 import com.grash.dto.PartPatchDTO;
 import com.grash.dto.PartShowDTO;
+import com.grash.dto.imports.ImportContext;
 import com.grash.dto.imports.PartImportDTO;
 import com.grash.exception.CustomException;
 import com.grash.mapper.PartMapper;
@@ -29,18 +30,14 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class PartService {
     private final PartRepository partRepository;
-    private final PartCategoryService partCategoryService;
     private final PartConsumptionService partConsumptionService;
     private final CompanyService companyService;
-    private final CustomerService customerService;
-    private final VendorService vendorService;
     private final MessageSource messageSource;
     private final LocationService locationService;
     private final PartMapper partMapper;
     private final EntityManager em;
     private final NotificationService notificationService;
-    private final UserService userService;
-    private final TeamService teamService;
+    private final OutboxService outboxService;
 
     @Transactional
     public Part create(Part Part) {
@@ -74,7 +71,8 @@ public class PartService {
             String message = messageSource.getMessage("notification_part_low", new Object[]{part.getName()}, locale);
             if (part.getQuantity() >= quantity) {
                 if (part.getQuantity() < part.getMinQuantity()) {
-                    notificationService.createMultiple(part.getAssignedTo().stream().map(user ->
+                    outboxService.createNotifications("part_low_stock:" + part.getId() + ":" + part.getQuantity(),
+                            part.getAssignedTo().stream().map(user ->
                             new Notification(message, user, NotificationType.PART, part.getId())
                     ).collect(Collectors.toList()), true, message);
                 }
@@ -138,23 +136,19 @@ public class PartService {
         return partRepository.findAll(builder.build(), page).map(partMapper::toShowDto);
     }
 
-    public void importPart(Part part, PartImportDTO dto, Company company) {
-        Long companyId = company.getId();
-        Long companySettingsId = company.getCompanySettings().getId();
+    public void importPart(Part part, PartImportDTO dto, ImportContext context) {
         part.setName(dto.getName());
         part.setCost(dto.getCost());
-        Optional<PartCategory> optionalPartCategory =
-                partCategoryService.findByNameIgnoreCaseAndCompanySettings(dto.getCategory(), companySettingsId);
-        optionalPartCategory.ifPresent(part::setCategory);
+        context.find(PartCategory.class, dto.getCategory()).ifPresent(part::setCategory);
         part.setNonStock(Helper.getBooleanFromString(dto.getCategory()));
         if (dto.getBarcode() != null) {
-            Optional<Part> optionalPartWithSameBarCode = findByBarcodeAndCompany(dto.getBarcode(), company.getId());
+            Optional<Long> optionalPartWithSameBarCode = context.findIdByBarcode(Part.class, dto.getBarcode());
             if (optionalPartWithSameBarCode.isPresent()) {
                 boolean hasError = false;
                 if (dto.getId() == null) {//creation
                     hasError = true;
                 } else {//update
-                    if (!dto.getId().equals(optionalPartWithSameBarCode.get().getId())) {
+                    if (!dto.getId().equals(optionalPartWithSameBarCode.get())) {
                         hasError = true;
                     }
                 }
@@ -163,6 +157,7 @@ public class PartService {
                             HttpStatus.NOT_ACCEPTABLE);
             }
         }
+        String previousBarcode = part.getBarcode();
         part.setBarcode(dto.getBarcode());
         part.setDescription(dto.getDescription());
         part.setQuantity(dto.getQuantity());
@@ -172,31 +167,12 @@ public class PartService {
 //        Optional<Location> optionalLocation = locationService.findByNameIgnoreCaseAndCompany(dto.getLocationName(),
 //        companyId);
 //        optionalLocation.ifPresent(part::setLocation);
-        List<OwnUser> users = new ArrayList<>();
-        dto.getAssignedToEmails().forEach(email -> {
-            Optional<OwnUser> optionalUser1 = userService.findByEmailAndCompany(email, companyId);
-            optionalUser1.ifPresent(users::add);
-        });
-        part.setAssignedTo(users);
-        List<Team> teams = new ArrayList<>();
-        dto.getTeamsNames().forEach(teamName -> {
-            Optional<Team> optionalTeam = teamService.findByNameIgnoreCaseAndCompany(teamName, companyId);
-            optionalTeam.ifPresent(teams::add);
-        });
-        part.setTeams(teams);
-        List<Customer> customers = new ArrayList<>();
-        dto.getCustomersNames().forEach(name -> {
-            Optional<Customer> optionalCustomer = customerService.findByNameIgnoreCaseAndCompany(name, companyId);
-            optionalCustomer.ifPresent(customers::add);
-        });
-        part.setCustomers(customers);
-        List<Vendor> vendors = new ArrayList<>();
-        dto.getVendorsNames().forEach(name -> {
-            Optional<Vendor> optionalVendor = vendorService.findByNameIgnoreCaseAndCompany(name, companyId);
-            optionalVendor.ifPresent(vendors::add);
-        });
-        part.setVendors(vendors);
-        partRepository.save(part);
+        part.setAssignedTo(context.findAll(OwnUser.class, dto.getAssignedToEmails()));
+        part.setTeams(context.findAll(Team.class, dto.getTeamsNames()));
+        part.setCustomers(context.findAll(Customer.class, dto.getCustomersNames()));
+        part.setVendors(context.findAll(Vendor.class, dto.getVendorsNames()));
+        Part savedPart = partRepository.save(part);
+        context.registerBarcode(Part.class, previousBarcode, savedPart.getBarcode(), savedPart.getId());
     }
 
     public Optional<Part> findByIdAndCompany(Long id, Long companyId) {
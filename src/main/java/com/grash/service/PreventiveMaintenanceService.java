@@ -12,7 +12,10 @@ import com.grash.model.OwnUser;
 import com.grash.model.PreventiveMaintenance;
 import com.grash.model.Schedule;
 import com.grash.repository.PreventiveMaintenanceRepository;
+import com.grash.utils.Helper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -22,7 +25,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -37,6 +39,12 @@ public class PreventiveMaintenanceService {
     private final CustomSequenceService customSequenceService;
 
     private final PreventiveMaintenanceMapper preventiveMaintenanceMapper;
+    private ScheduleService scheduleService;
+
+    @Autowired
+    public void setDeps(@Lazy ScheduleService scheduleService) {
+        this.scheduleService = scheduleService;
+    }
 
     @Transactional
     public PreventiveMaintenance create(PreventiveMaintenance preventiveMaintenance, OwnUser user) {
@@ -65,7 +73,12 @@ public class PreventiveMaintenanceService {
         return preventiveMaintenanceRepository.findAll();
     }
 
+    /**
+     * Deletes the preventive maintenance along with the stored jobs of its schedule
+     */
     public void delete(Long id) {
+        preventiveMaintenanceRepository.findById(id).ifPresent(preventiveMaintenance ->
+                scheduleService.stopScheduleTimers(preventiveMaintenance.getSchedule().getId()));
         preventiveMaintenanceRepository.deleteById(id);
     }
 
@@ -97,37 +110,18 @@ public class PreventiveMaintenanceService {
         }
     }
 
-    public List<CalendarEvent<PreventiveMaintenance>> getEvents(Date end, Long companyId) {
-        List<PreventiveMaintenance> preventiveMaintenances =
-                preventiveMaintenanceRepository.findByCreatedAtBeforeAndCompany_Id(end, companyId);
+    /**
+     * @return The occurrences of the enabled schedules between start and end, loaded with their schedule in one query
+     */
+    public List<CalendarEvent<PreventiveMaintenance>> getEvents(Date start, Date end, Long companyId) {
         List<CalendarEvent<PreventiveMaintenance>> result = new ArrayList<>();
-        for (PreventiveMaintenance preventiveMaintenance : preventiveMaintenances) {
+        for (PreventiveMaintenance preventiveMaintenance :
+                preventiveMaintenanceRepository.findScheduledBetween(start, end, companyId)) {
             Schedule schedule = preventiveMaintenance.getSchedule();
-            if (schedule.isDisabled()) continue;
-            List<Date> dates = new ArrayList<>();
-
-            // Create a Calendar instance and set the start date
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTime(schedule.getStartsOn());
-
-            // Add the start date to the list
-            dates.add(schedule.getStartsOn());
-
-            Date max = schedule.getEndsOn() == null ? end : schedule.getEndsOn().before(end) ? schedule.getEndsOn() :
-                    end;
-            // Loop until the calendar date is after the end date
-            while (calendar.getTime().before(max)) {
-                // Add the frequency days to the current date
-                calendar.add(Calendar.DAY_OF_MONTH, schedule.getFrequency());
-
-                // Add the new date to the list if it's before or equal to the end date
-                if (!calendar.getTime().after(max)) {
-                    dates.add(calendar.getTime());
-                }
-            }
-
-            result.addAll(dates.stream().map(date -> new CalendarEvent<>("PREVENTIVE_MAINTENANCE",
-                    preventiveMaintenance, date)).collect(Collectors.toList()));
+            Date max = schedule.getEndsOn() == null || schedule.getEndsOn().after(end) ? end : schedule.getEndsOn();
+            Helper.getOccurrences(schedule.getStartsOn(), schedule.getFrequency(), start, max)
+                    .forEach(date -> result.add(new CalendarEvent<>("PREVENTIVE_MAINTENANCE", preventiveMaintenance,
+                            date)));
         }
         return result;
     }
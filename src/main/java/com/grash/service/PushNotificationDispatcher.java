@@ -0,0 +1,136 @@
+package com.grash.service;
+
+import com.grash.configuration.AsyncConfig;
+import com.grash.service.expo.AuthenticatedPushServerResolver;
+import io.github.jav.exposerversdk.*;
+import io.github.jav.exposerversdk.enums.Status;
+import io.github.jav.exposerversdk.enums.TicketError;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Sends the Expo push notifications. Messages are queued, one per device, and flushed every
+ * {@link #FLUSH_INTERVAL_MILLIS} in chunks as large as Expo accepts, so the notifications of concurrent requests share
+ * the same HTTP calls. The calls don't block the flushing thread; their tickets are read on the push executor, where
+ * the tokens of the devices that are no longer registered are deleted.
+ */
+@Service
+@Slf4j
+public class PushNotificationDispatcher {
+    private static final long FLUSH_INTERVAL_MILLIS = 500;
+    private static final int MAX_QUEUED_MESSAGES = 10000;
+    /**
+     * The messages Expo accepts per request
+     */
+    static final int CHUNK_SIZE = 100;
+
+    private final PushNotificationTokenService pushNotificationTokenService;
+    private final TaskExecutor pushExecutor;
+    private final PushClient client;
+    private final BlockingQueue<ExpoPushMessage> queue = new LinkedBlockingQueue<>(MAX_QUEUED_MESSAGES);
+    private final ScheduledExecutorService flushExecutor =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("push-flush-"));
+
+    public PushNotificationDispatcher(PushNotificationTokenService pushNotificationTokenService,
+                                      @Qualifier(AsyncConfig.PUSH_EXECUTOR) TaskExecutor pushExecutor,
+                                      @Value("${EXPO_ACCESS_TOKEN:}") String expoAccessToken,
+                                      @Value("${expo.base-url:}") String expoBaseUrl)
+            throws PushClientException, MalformedURLException {
+        this.pushNotificationTokenService = pushNotificationTokenService;
+        this.pushExecutor = pushExecutor;
+        this.client = new PushClient();
+        if (!expoAccessToken.isEmpty()) {
+            client.pushServerResolver = new AuthenticatedPushServerResolver(expoAccessToken);
+        }
+        if (!expoBaseUrl.isEmpty()) {
+            client.setBaseApiUrl(new URL(expoBaseUrl));
+        }
+        flushExecutor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a push notification for the devices of these users, resolving their tokens with at most one query
+     */
+    public void send(Collection<Long> userIds, String title, String body, Map<String, Object> data) {
+        if (userIds.isEmpty()) return;
+        int dropped = 0;
+        for (String token : new HashSet<>(pushNotificationTokenService.findTokensByUsers(userIds).values())) {
+            if (!PushClient.isExponentPushToken(token)) continue;
+            ExpoPushMessage message = new ExpoPushMessage(token);
+            message.setTitle(title);
+            message.setBody(body);
+            message.setData(data);
+            if (!queue.offer(message)) dropped++;
+        }
+        if (dropped > 0) log.warn("The push queue is full, dropped {} messages: {}", dropped, title);
+    }
+
+    private void flush() {
+        try {
+            List<ExpoPushMessage> chunk = new ArrayList<>();
+            while (queue.drainTo(chunk, CHUNK_SIZE) > 0) {
+                send(chunk);
+                chunk = new ArrayList<>();
+            }
+        } catch (RuntimeException e) {
+            log.error("Expo push flush failed", e);
+        }
+    }
+
+    private void send(List<ExpoPushMessage> chunk) {
+        try {
+            client.sendPushNotificationsAsync(chunk)
+                    .whenCompleteAsync((tickets, throwable) -> {
+                        if (throwable != null) {
+                            log.error("Expo push request for {} messages failed", chunk.size(), throwable);
+                        } else handleTickets(chunk, tickets);
+                    }, pushExecutor);
+        } catch (PushNotificationException e) {
+            log.error("Expo push request for {} messages failed", chunk.size(), e);
+        }
+    }
+
+    /**
+     * Each message having a single recipient, Expo returns one ticket per message, in the same order
+     */
+    private void handleTickets(List<ExpoPushMessage> chunk, List<ExpoPushTicket> tickets) {
+        if (tickets.size() != chunk.size()) {
+            log.error("Expo push returned {} tickets for {} messages", tickets.size(), chunk.size());
+            return;
+        }
+        List<ExpoPushMessageTicketPair<ExpoPushMessage>> pairs = client.zipMessagesTickets(chunk, tickets);
+        List<ExpoPushMessageTicketPair<ExpoPushMessage>> errors = client.filterAllMessagesWithError(pairs);
+        log.debug("Received {} OK tickets", pairs.size() - errors.size());
+        if (errors.isEmpty()) return;
+        log.warn("Expo push returned {} error tickets: {}", errors.size(), errors.stream()
+                .map(pair -> "Title: " + pair.message.getTitle() + ", Error: " + (pair.ticket.getDetails() == null ?
+                        pair.ticket.getMessage() : pair.ticket.getDetails().getError()))
+                .collect(Collectors.joining(",")));
+        Set<String> unregisteredTokens = errors.stream()
+                .filter(pair -> pair.ticket.getStatus() == Status.ERROR && pair.ticket.getDetails() != null
+                        && pair.ticket.getDetails().getError() == TicketError.DEVICENOTREGISTERED)
+                .flatMap(pair -> pair.message.getTo().stream())
+                .collect(Collectors.toSet());
+        if (!unregisteredTokens.isEmpty()) {
+            pushNotificationTokenService.deleteByTokens(unregisteredTokens);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flush();
+    }
+}
@@ -1,32 +1,69 @@
 package com.grash.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.grash.model.PushNotificationToken;
 import com.grash.repository.PushNotificationTokenRepository;
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class PushNotificationTokenService {
 
     private final PushNotificationTokenRepository pushNotificationTokenRepository;
-
+    /**
+     * Push token by user id, the empty string standing for a user without token. Entries are evicted when this node
+     * changes a token and expire for the changes made by the other nodes.
+     */
+    private final Cache<Long, String> tokensByUser = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
 
     public PushNotificationToken create(PushNotificationToken pushNotificationToken) {
-        return pushNotificationTokenRepository.save(pushNotificationToken);
+        return save(pushNotificationToken);
     }
 
     public Optional<PushNotificationToken> findByUser(Long userId) {
         return pushNotificationTokenRepository.findByUser_Id(userId);
     }
 
+    /**
+     * @return the push token of each of these users having one, loading the ones not cached in a single query
+     */
+    public Map<Long, String> findTokensByUsers(Collection<Long> userIds) {
+        return tokensByUser.getAll(userIds, keys -> {
+                    List<Long> missingUserIds = new ArrayList<>();
+                    keys.forEach(missingUserIds::add);
+                    Map<Long, String> tokens = pushNotificationTokenRepository.findByUserIds(missingUserIds).stream()
+                            .collect(Collectors.toMap(token -> token.getUser().getId(),
+                                    PushNotificationToken::getToken, (token1, token2) -> token1));
+                    return missingUserIds.stream().collect(Collectors.toMap(Function.identity(),
+                            userId -> tokens.getOrDefault(userId, "")));
+                }).entrySet().stream()
+                .filter(entry -> !entry.getValue().isEmpty())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
     public PushNotificationToken save(PushNotificationToken pushNotificationToken) {
-        return pushNotificationTokenRepository.save(pushNotificationToken);
+        PushNotificationToken savedToken = pushNotificationTokenRepository.save(pushNotificationToken);
+        tokensByUser.invalidate(savedToken.getUser().getId());
+        return savedToken;
+    }
+
+    public void deleteByTokens(Collection<String> tokens) {
+        pushNotificationTokenRepository.deleteByTokens(tokens);
+        tokensByUser.asMap().values().removeIf(tokens::contains);
     }
 
     public void delete(Long id) {
         pushNotificationTokenRepository.deleteById(id);
+        tokensByUser.invalidateAll();
     }
 }
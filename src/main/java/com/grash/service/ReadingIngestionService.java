@@ -0,0 +1,101 @@
+package com.grash.service;
+
+import com.grash.dto.MeterThreshold;
+import com.grash.exception.CustomException;
+import com.grash.model.*;
+import com.grash.model.enums.NotificationType;
+import com.grash.model.enums.WorkOrderMeterTriggerCondition;
+import com.grash.repository.ReadingRepository;
+import com.grash.utils.Helper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.MessageSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Saves readings and runs the work order triggers of their meters.
+ * <p>
+ * Triggers are edge triggered: one fires when a reading breaches its threshold while the previous reading of the
+ * meter didn't, so a meter staying out of range creates a single work order. The thresholds come from the cached
+ * index of {@link WorkOrderMeterTriggerService}, the previous value from the meter row, locked while the readings are
+ * saved so that concurrent batches of a meter are evaluated one after the other. A trigger crossed several times in
+ * the same batch fires once, and the notifications of a batch are sent together.
+ * <p>
+ * Readings created here or through {@link ReadingService} record the last reading of their meter with the update
+ * queries of {@link com.grash.repository.MeterRepository} only.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReadingIngestionService {
+    public static final int BATCH_SIZE = 500;
+
+    private final ReadingRepository readingRepository;
+    private final MeterService meterService;
+    private final WorkOrderMeterTriggerService workOrderMeterTriggerService;
+    private final WorkOrderService workOrderService;
+    private final OutboxService outboxService;
+    private final MessageSource messageSource;
+
+    /**
+     * Saves at most {@link #BATCH_SIZE} readings, in their order, all or none of them
+     *
+     * @return The number of work orders created
+     */
+    @Transactional
+    public int ingest(List<Reading> readings, OwnUser user) {
+        if (readings.size() > BATCH_SIZE)
+            throw new CustomException("At most " + BATCH_SIZE + " readings can be saved at once",
+                    HttpStatus.BAD_REQUEST);
+        Set<Long> meterIds = readings.stream().map(reading -> reading.getMeter().getId())
+                .collect(Collectors.toSet());
+        // values can be null, for the meters without readings
+        Map<Long, Long> lastValues = new HashMap<>();
+        meterService.lockLastReadings(meterIds, user.getCompany().getId())
+                .forEach(meter -> lastValues.put(meter.getId(), meter.getLastReadingValue()));
+        Map<Long, List<MeterThreshold>> thresholds = workOrderMeterTriggerService.getThresholds(lastValues.keySet());
+        Set<Long> firedTriggerIds = new LinkedHashSet<>();
+        for (Reading reading : readings) {
+            Long meterId = reading.getMeter().getId();
+            if (!lastValues.containsKey(meterId))
+                throw new CustomException("Meter " + meterId + " not found", HttpStatus.NOT_FOUND);
+            Long previousValue = lastValues.get(meterId);
+            thresholds.get(meterId).stream()
+                    .filter(threshold -> threshold.isBreachedBy(reading.getValue()) &&
+                            (previousValue == null || !threshold.isBreachedBy(previousValue)))
+                    .forEach(threshold -> firedTriggerIds.add(threshold.getTriggerId()));
+            reading.setMeter(meterService.getReference(meterId));
+            lastValues.put(meterId, reading.getValue());
+        }
+        Map<Long, Reading> lastReadings = new HashMap<>();
+        List<Reading> savedReadings = readingRepository.saveAll(readings);
+        savedReadings.forEach(reading -> lastReadings.put(reading.getMeter().getId(), reading));
+        lastReadings.forEach((meterId, reading) -> meterService.updateLastReading(meterId, reading.getValue(),
+                reading.getCreatedAt()));
+        if (firedTriggerIds.isEmpty()) return 0;
+        // the readings of a batch being saved together, their first id identifies it
+        return fire(workOrderMeterTriggerService.findAllById(firedTriggerIds), user.getCompany(),
+                "meter_triggers_fired:" + savedReadings.get(0).getId());
+    }
+
+    private int fire(List<WorkOrderMeterTrigger> meterTriggers, Company company, String idempotencyKey) {
+        Locale locale = Helper.getLocale(company);
+        List<Notification> notifications = new ArrayList<>();
+        meterTriggers.forEach(meterTrigger -> {
+            Meter meter = meterTrigger.getMeter();
+            Object[] notificationArgs = new Object[]{meter.getName(), meterTrigger.getValue(), meter.getUnit()};
+            String message = messageSource.getMessage(meterTrigger.getTriggerCondition()
+                            .equals(WorkOrderMeterTriggerCondition.LESS_THAN) ? "notification_reading_less_than" :
+                            "notification_reading_more_than", notificationArgs, locale);
+            meter.getUsers().forEach(user -> notifications.add(new Notification(message, user,
+                    NotificationType.METER, meter.getId())));
+            workOrderService.create(workOrderService.getWorkOrderFromWorkOrderBase(meterTrigger), company);
+        });
+        outboxService.createNotifications(idempotencyKey, notifications, true,
+                messageSource.getMessage("new_wo", null, locale));
+        return meterTriggers.size();
+    }
+}
@@ -1,5 +1,6 @@
 package com.grash.service;
 
+import com.grash.dto.ReadingAggregate;
 import com.grash.dto.ReadingPatchDTO;
 import com.grash.exception.CustomException;
 import com.grash.mapper.ReadingMapper;
@@ -12,13 +13,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class ReadingService {
+    public static final int MAX_AGGREGATES = 2000;
+
     private final ReadingRepository readingRepository;
     private final ReadingMapper readingMapper;
     private MeterService meterService;
@@ -29,14 +35,13 @@ public class ReadingService {
         this.meterService = meterService;
     }
 
-    public Reading create(Reading Reading) {
-        return readingRepository.save(Reading);
-    }
-
+    @Transactional
     public Reading update(Long id, ReadingPatchDTO reading) {
         if (readingRepository.existsById(id)) {
             Reading savedReading = readingRepository.findById(id).get();
-            return readingRepository.save(readingMapper.updateReading(savedReading, reading));
+            Reading updatedReading = readingRepository.save(readingMapper.updateReading(savedReading, reading));
+            refreshLastReading(updatedReading.getMeter().getId());
+            return updatedReading;
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
 
@@ -44,8 +49,20 @@ public class ReadingService {
         return readingRepository.findAll();
     }
 
+    @Transactional
     public void delete(Long id) {
-        readingRepository.deleteById(id);
+        Optional<Reading> optionalReading = readingRepository.findById(id);
+        if (optionalReading.isPresent()) {
+            readingRepository.delete(optionalReading.get());
+            readingRepository.flush();
+            refreshLastReading(optionalReading.get().getMeter().getId());
+        }
+    }
+
+    private void refreshLastReading(Long meterId) {
+        Optional<Reading> lastReading = readingRepository.findFirstByMeter_IdOrderByCreatedAtDescIdDesc(meterId);
+        meterService.setLastReading(meterId, lastReading.map(Reading::getValue).orElse(null),
+                lastReading.map(Reading::getCreatedAt).orElse(null));
     }
 
     public Optional<Reading> findById(Long id) {
@@ -59,4 +76,13 @@ public class ReadingService {
     public Collection<Reading> findByMeter(Long id) {
         return readingRepository.findByMeter_Id(id);
     }
+
+    /**
+     * @param points at most {@link #MAX_AGGREGATES}, so that the buckets of a long range keep several readings
+     * @return At most {@code points} aggregates of the readings of the meter between start and end, for the charts
+     */
+    public List<ReadingAggregate> getAggregates(Long meterId, Date start, Date end, int points) {
+        long bucketSeconds = Math.max(1, (long) Math.ceil((end.getTime() - start.getTime()) / 1000d / points));
+        return readingRepository.getAggregates(meterId, start, end, bucketSeconds);
+    }
 }
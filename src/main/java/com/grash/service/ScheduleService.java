@@ -2,12 +2,15 @@ package com.grash.service;
 
 import com.grash.dto.SchedulePatchDTO;
 import com.grash.exception.CustomException;
+import com.grash.job.PreventiveMaintenanceJob;
+import com.grash.job.PreventiveMaintenanceNotificationJob;
 import com.grash.mapper.ScheduleMapper;
 import com.grash.model.*;
 import com.grash.model.enums.PermissionEntity;
 import com.grash.repository.ScheduleRepository;
 import com.grash.utils.Helper;
 import lombok.RequiredArgsConstructor;
+import org.quartz.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
 import org.springframework.data.domain.Page;
@@ -24,6 +27,8 @@ import java.util.stream.Stream;
 @RequiredArgsConstructor
 @Transactional
 public class ScheduleService {
+    private static final String JOB_GROUP = "preventive_maintenance";
+
     private final ScheduleRepository scheduleRepository;
     private final PreventiveMaintenanceService preventiveMaintenanceService;
     private final ScheduleMapper scheduleMapper;
@@ -34,7 +39,9 @@ public class ScheduleService {
     private final UserService userService;
     @Value("${frontend.url}")
     private String frontendUrl;
-    private final Map<Long, Map<String, Timer>> timersState = new HashMap<>();
+    @Value("${preventive-maintenance.catch-up:false}")
+    private boolean catchUp;
+    private final Scheduler scheduler;
 
     public Schedule create(Schedule Schedule) {
         return scheduleRepository.save(Schedule);
@@ -51,7 +58,11 @@ public class ScheduleService {
         return scheduleRepository.findAll();
     }
 
+    /**
+     * Deletes the schedule along with its stored jobs, which would otherwise keep firing
+     */
     public void delete(Long id) {
+        stopScheduleTimers(id);
         scheduleRepository.deleteById(id);
     }
 
@@ -63,117 +74,176 @@ public class ScheduleService {
         return scheduleRepository.findByCompany_Id(id);
     }
 
-    public void scheduleWorkOrder(Schedule schedule) {
+    /**
+     * Disables the schedule when none of its last work orders was reacted to
+     *
+     * @return Whether the schedule is stale
+     */
+    private boolean disableIfStale(Schedule schedule) {
         int limit = 10; //inclusive schedules at 10
-        PreventiveMaintenance preventiveMaintenance = schedule.getPreventiveMaintenance();
-        Page<WorkOrder> workOrdersPage = workOrderService.findLastByPM(preventiveMaintenance.getId(), limit);
-        boolean isStale = false;
+        Page<WorkOrder> workOrdersPage = workOrderService.findLastByPM(schedule.getPreventiveMaintenance().getId(),
+                limit);
         if (workOrdersPage.getTotalElements() >= limit && workOrdersPage.getContent().stream().allMatch(workOrder -> workOrder.getFirstTimeToReact() == null)) {
-            isStale = true;
             schedule.setDisabled(true);
             scheduleRepository.save(schedule);
+            return true;
         }
+        return false;
+    }
+
+    public void scheduleWorkOrder(Schedule schedule) {
+        PreventiveMaintenance preventiveMaintenance = schedule.getPreventiveMaintenance();
+        boolean isStale = disableIfStale(schedule);
         boolean shouldSchedule = !schedule.isDisabled() && (schedule.getEndsOn() == null || schedule.getEndsOn()
                 .after(new Date())) && !isStale;
         if (shouldSchedule) {
-            Timer timer = new Timer();
-            //  Collection<WorkOrder> workOrders = workOrderService.findByPM(schedule.getPreventiveMaintenance()
-            //  .getId());
             Date startsOn = Helper.getNextOccurence(schedule.getStartsOn(), schedule.getFrequency());
-            TimerTask timerTask = new TimerTask() {
-                @Override
-                public void run() {//create WO
-                    PreventiveMaintenance preventiveMaintenance = schedule.getPreventiveMaintenance();
-                    WorkOrder workOrder = workOrderService.getWorkOrderFromWorkOrderBase(preventiveMaintenance);
-                    Collection<Task> tasks = taskService.findByPreventiveMaintenance(preventiveMaintenance.getId());
-                    workOrder.setParentPreventiveMaintenance(preventiveMaintenance);
-                    if (schedule.getDueDateDelay() != null) {
-                        workOrder.setDueDate(Helper.incrementDays(new Date(), schedule.getDueDateDelay()));
-                    }
-                    WorkOrder savedWorkOrder = workOrderService.create(workOrder, preventiveMaintenance.getCompany());
-                    tasks.forEach(task -> {
-                        Task copiedTask = new Task(task.getTaskBase(), savedWorkOrder, null, task.getValue());
-                        copiedTask.setCompany(preventiveMaintenance.getCompany());
-                        taskService.create(copiedTask);
-                    });
-                }
-            };
-            timer.scheduleAtFixedRate(timerTask, startsOn, (long) schedule.getFrequency() * 24 * 60 * 60 * 1000);
-            Map<String, Timer> localTimers = new HashMap<>();
-            localTimers.put("wo_creation", timer);//first wo creation
-
-            Timer timer1 = new Timer();// use daysBeforePrevMaintNotification
+            scheduleJob(PreventiveMaintenanceJob.class, getWorkOrderJobKey(schedule.getId()), schedule, startsOn,
+                    catchUp);
+
             int daysBeforePMNotification = preventiveMaintenance.getCompany()
                     .getCompanySettings().getGeneralPreferences().getDaysBeforePrevMaintNotification();
             if (daysBeforePMNotification > 0) {
                 Date trueStartsOn = preventiveMaintenance.getEstimatedStartDate() == null ? startsOn :
                         preventiveMaintenance.getEstimatedStartDate();
-                TimerTask timerTask1 = new TimerTask() {
-                    @Override
-                    public void run() {
-                        //send notification to assigned users
-                        PreventiveMaintenance preventiveMaintenance = schedule.getPreventiveMaintenance();
-                        Locale locale = Helper.getLocale(preventiveMaintenance.getCompany());
-                        String title = messageSource.getMessage("coming_wo", null, locale);
-                        Collection<OwnUser> admins =
-                                userService.findWorkersByCompany(preventiveMaintenance.getCompany().getId()).stream().filter(ownUser -> ownUser.getRole().getViewPermissions().contains(PermissionEntity.SETTINGS)).collect(Collectors.toList());
-                        List<OwnUser> usersToMail = new ArrayList<>(Stream.concat(
-                                        preventiveMaintenance.getUsers().stream(),
-                                        admins.stream()).filter(user -> user.isEnabled() && user.getUserSettings().shouldEmailUpdatesForWorkOrders())
-                                .collect(Collectors.toMap(
-                                        OwnUser::getId,  // key by ID
-                                        Function.identity(), // value is the user object
-                                        (existing, replacement) -> existing))  // if duplicate keys, keep existing
-                                .values());
-                        Map<String, Object> mailVariables = new HashMap<String, Object>() {{
-                            put("pmLink",
-                                    frontendUrl + "/app/preventive-maintenances/" + preventiveMaintenance.getId());
-                            put("featuresLink", frontendUrl + "/#key-features");
-                            put("pmTitle", preventiveMaintenance.getTitle());
-                        }};
-                        emailService2.sendMessageUsingThymeleafTemplate(usersToMail.stream().map(OwnUser::getEmail)
-                                .toArray(String[]::new), title, mailVariables, "coming-work-order.html", locale);
-                    }
-                };
-                timer1.scheduleAtFixedRate(timerTask1, Helper.getNextOccurence(Helper.minusDays(trueStartsOn,
-                                daysBeforePMNotification), 1),
-                        (long) schedule.getFrequency() * 24 * 60 * 60 * 1000);
-                localTimers.put("notification", timer1);
-            }
-            if (schedule.getEndsOn() != null) {
-                Timer timer2 = new Timer();
-                TimerTask timerTask2 = new TimerTask() {
-                    @Override
-                    public void run() {
-                        //stop other timers
-                        timersState.get(schedule.getId()).get("wo_creation").cancel();
-                        timersState.get(schedule.getId()).get("wo_creation").purge();
-                        if (timersState.get(schedule.getId()).containsKey("notification")) {
-                            timersState.get(schedule.getId()).get("notification").cancel();
-                            timersState.get(schedule.getId()).get("notification").purge();
-                        }
-                    }
-                };
-                timer2.schedule(timerTask2, schedule.getEndsOn());
-                localTimers.put("stop", timer2); //third schedule stopping
-            }
-            timersState.put(schedule.getId(), localTimers);
+                scheduleJob(PreventiveMaintenanceNotificationJob.class, getNotificationJobKey(schedule.getId()),
+                        schedule, Helper.getNextOccurence(Helper.minusDays(trueStartsOn, daysBeforePMNotification), 1),
+                        false);
+            } else deleteJobs(Collections.singletonList(getNotificationJobKey(schedule.getId())));
         }
     }
 
+    /**
+     * Registers the jobs of a schedule unless they are already stored, so that triggers persisted by the job store
+     * keep their fire times (and their missed occurrences) across restarts. The staleness of a stored schedule is
+     * checked by {@link #createWorkOrder} each time it fires.
+     */
+    public void resumeSchedule(Schedule schedule) {
+        try {
+            if (scheduler.checkExists(getWorkOrderJobKey(schedule.getId()))) return;
+        } catch (SchedulerException e) {
+            throw new CustomException("Error scheduling work order: " + e.getMessage(),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        scheduleWorkOrder(schedule);
+    }
+
+    public void createWorkOrder(Long scheduleId, Date scheduledOn) {
+        Optional<Schedule> optionalSchedule = scheduleRepository.findById(scheduleId);
+        if (!optionalSchedule.isPresent()) {
+            // the jobs of a schedule deleted without them
+            stopScheduleTimers(scheduleId);
+            return;
+        }
+        Schedule schedule = optionalSchedule.get();
+        if (schedule.isDisabled() || disableIfStale(schedule)) {
+            stopScheduleTimers(scheduleId);
+            return;
+        }
+        PreventiveMaintenance preventiveMaintenance = schedule.getPreventiveMaintenance();
+        WorkOrder workOrder = workOrderService.getWorkOrderFromWorkOrderBase(preventiveMaintenance);
+        Collection<Task> tasks = taskService.findByPreventiveMaintenance(preventiveMaintenance.getId());
+        workOrder.setParentPreventiveMaintenance(preventiveMaintenance);
+        if (schedule.getDueDateDelay() != null) {
+            workOrder.setDueDate(Helper.incrementDays(scheduledOn, schedule.getDueDateDelay()));
+        }
+        WorkOrder savedWorkOrder = workOrderService.create(workOrder, preventiveMaintenance.getCompany());
+        tasks.forEach(task -> {
+            Task copiedTask = new Task(task.getTaskBase(), savedWorkOrder, null, task.getValue());
+            copiedTask.setCompany(preventiveMaintenance.getCompany());
+            taskService.create(copiedTask);
+        });
+    }
+
+    public void sendComingWorkOrderNotification(Long scheduleId) {
+        Optional<Schedule> optionalSchedule = scheduleRepository.findById(scheduleId);
+        if (!optionalSchedule.isPresent()) {
+            stopScheduleTimers(scheduleId);
+            return;
+        }
+        //send notification to assigned users
+        PreventiveMaintenance preventiveMaintenance = optionalSchedule.get().getPreventiveMaintenance();
+        Locale locale = Helper.getLocale(preventiveMaintenance.getCompany());
+        String title = messageSource.getMessage("coming_wo", null, locale);
+        Collection<OwnUser> admins =
+                userService.findWorkersByCompany(preventiveMaintenance.getCompany().getId()).stream().filter(ownUser -> ownUser.getRole().getViewPermissions().contains(PermissionEntity.SETTINGS)).collect(Collectors.toList());
+        List<OwnUser> usersToMail = new ArrayList<>(Stream.concat(
+                        preventiveMaintenance.getUsers().stream(),
+                        admins.stream()).filter(user -> user.isEnabled() && user.getUserSettings().shouldEmailUpdatesForWorkOrders())
+                .collect(Collectors.toMap(
+                        OwnUser::getId,  // key by ID
+                        Function.identity(), // value is the user object
+                        (existing, replacement) -> existing))  // if duplicate keys, keep existing
+                .values());
+        Map<String, Object> mailVariables = new HashMap<String, Object>() {{
+            put("pmLink",
+                    frontendUrl + "/app/preventive-maintenances/" + preventiveMaintenance.getId());
+            put("featuresLink", frontendUrl + "/#key-features");
+            put("pmTitle", preventiveMaintenance.getTitle());
+        }};
+        emailService2.sendMessageUsingThymeleafTemplate(usersToMail.stream().map(OwnUser::getEmail)
+                .toArray(String[]::new), title, mailVariables, "coming-work-order.html", locale);
+    }
+
     public void reScheduleWorkOrder(Long id, Schedule schedule) {
         stopScheduleTimers(id);
         scheduleWorkOrder(schedule);
     }
 
     public void stopScheduleTimers(Long id) {
-        if (!timersState.containsKey(id)) {
+        deleteJobs(Arrays.asList(getWorkOrderJobKey(id), getNotificationJobKey(id)));
+    }
+
+    /**
+     * Registers (or replaces) the Quartz job firing every {@code frequency} days from {@code startsOn} until the
+     * schedule ends. The scheduler computes each next fire time itself and runs the jobs on its own thread pool.
+     * With {@code catchUp}, occurrences missed while no node was running are all fired once a node is back,
+     * otherwise they are skipped.
+     */
+    private void scheduleJob(Class<? extends Job> jobClass, JobKey jobKey, Schedule schedule, Date startsOn,
+                             boolean catchUp) {
+        if (schedule.getEndsOn() != null && startsOn.after(schedule.getEndsOn())) {
+            deleteJobs(Collections.singletonList(jobKey));
             return;
         }
-        timersState.get(id).forEach((key, timer) -> {
-            timer.cancel();
-            timer.purge();
-        });
+        JobDetail jobDetail = JobBuilder.newJob(jobClass)
+                .withIdentity(jobKey)
+                .usingJobData(PreventiveMaintenanceJob.SCHEDULE_ID, schedule.getId())
+                .build();
+        SimpleScheduleBuilder scheduleBuilder = SimpleScheduleBuilder.simpleSchedule()
+                .withIntervalInHours(schedule.getFrequency() * 24)
+                .repeatForever();
+        Trigger trigger = TriggerBuilder.newTrigger()
+                .forJob(jobDetail)
+                .withIdentity(jobKey.getName(), jobKey.getGroup())
+                .startAt(startsOn)
+                .endAt(schedule.getEndsOn())
+                .withSchedule(catchUp ? scheduleBuilder.withMisfireHandlingInstructionIgnoreMisfires() :
+                        scheduleBuilder.withMisfireHandlingInstructionNextWithRemainingCount())
+                .build();
+        try {
+            scheduler.scheduleJob(jobDetail, Collections.singleton(trigger), true);
+        } catch (SchedulerException e) {
+            throw new CustomException("Error scheduling work order: " + e.getMessage(),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private void deleteJobs(List<JobKey> jobKeys) {
+        try {
+            scheduler.deleteJobs(jobKeys);
+        } catch (SchedulerException e) {
+            throw new CustomException("Error unscheduling work order: " + e.getMessage(),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private JobKey getWorkOrderJobKey(Long scheduleId) {
+        return JobKey.jobKey("wo_creation_" + scheduleId, JOB_GROUP);
+    }
+
+    private JobKey getNotificationJobKey(Long scheduleId) {
+        return JobKey.jobKey("notification_" + scheduleId, JOB_GROUP);
     }
 
     public Schedule save(Schedule schedule) {
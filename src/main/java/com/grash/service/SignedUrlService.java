@@ -0,0 +1,86 @@
+package com.grash.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.grash.factory.StorageServiceFactory;
+import com.grash.model.File;
+import com.grash.model.enums.StorageType;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the signed URLs of the files by storage backend, path and validity. A URL is reused for the first two thirds
+ * of its validity, so the one returned is always valid for at least a third of the requested duration.
+ */
+@Service
+@RequiredArgsConstructor
+public class SignedUrlService {
+    private final StorageServiceFactory storageServiceFactory;
+    private final Cache<SignedUrlKey, String> signedUrls = Caffeine.newBuilder()
+            .maximumSize(50000)
+            .expireAfter(new Expiry<SignedUrlKey, String>() {
+                @Override
+                public long expireAfterCreate(SignedUrlKey key, String url, long currentTime) {
+                    return TimeUnit.MINUTES.toNanos(key.getExpirationMinutes() * 2 / 3);
+                }
+
+                @Override
+                public long expireAfterUpdate(SignedUrlKey key, String url, long currentTime,
+                                              long currentDuration) {
+                    return expireAfterCreate(key, url, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(SignedUrlKey key, String url, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
+    public String getSignedUrl(File file, long expirationMinutes) {
+        return getSignedUrl(file.getPath(), file.getContentType(), expirationMinutes);
+    }
+
+    public String getSignedUrl(String filePath, String contentType, long expirationMinutes) {
+        StorageService storageService = storageServiceFactory.getStorageService();
+        return signedUrls.get(new SignedUrlKey(storageServiceFactory.getStorageType(), filePath,
+                expirationMinutes), key -> storageService.generateSignedUrl(filePath, contentType, expirationMinutes));
+    }
+
+    /**
+     * @return The signed URL of each file path, signing the ones not cached together
+     */
+    public Map<String, String> getSignedUrls(Collection<File> files, long expirationMinutes) {
+        StorageType storageType = storageServiceFactory.getStorageType();
+        Map<SignedUrlKey, File> filesByKey = files.stream().collect(Collectors.toMap(file ->
+                new SignedUrlKey(storageType, file.getPath(), expirationMinutes), Function.identity(),
+                (file1, file2) -> file1));
+        return signedUrls.getAll(filesByKey.keySet(), keys -> {
+                    List<File> missingFiles = new ArrayList<>();
+                    keys.forEach(key -> missingFiles.add(filesByKey.get(key)));
+                    Map<String, String> urls = storageServiceFactory.getStorageService()
+                            .generateSignedUrls(missingFiles, expirationMinutes);
+                    Map<SignedUrlKey, String> result = new HashMap<>();
+                    keys.forEach(key -> {
+                        String url = urls.get(key.getPath());
+                        if (url != null) result.put(key, url);
+                    });
+                    return result;
+                }).entrySet().stream()
+                .collect(Collectors.toMap(entry -> entry.getKey().getPath(), Map.Entry::getValue));
+    }
+
+    @Data
+    private static class SignedUrlKey {
+        private final StorageType storageType;
+        private final String path;
+        private final long expirationMinutes;
+    }
+}
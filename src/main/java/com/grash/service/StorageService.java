@@ -1,8 +1,16 @@
 package com.grash.service;
 
+import com.grash.dto.StoredFileInfo;
 import com.grash.model.File;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 public interface StorageService {
     /**
      * Uploads a file to the storage and returns the public URL.
@@ -13,6 +21,18 @@ public interface StorageService {
      */
     String upload(MultipartFile file, String folder);
 
+    /**
+     * Uploads a file whose content is written to the storage as it is produced, without holding the whole content
+     * in memory.
+     *
+     * @param fileName      The name of the file.
+     * @param contentType   The content type of the file.
+     * @param folder        The folder where the file should be uploaded.
+     * @param contentWriter Writes the content of the file to the given stream.
+     * @return The file Path of the uploaded file.
+     */
+    String upload(String fileName, String contentType, String folder, ContentWriter contentWriter);
+
     /**
      * Downloads a file from the storage using its file path.
      *
@@ -29,11 +49,59 @@ public interface StorageService {
      */
     byte[] download(File file);
 
+    /**
+     * Reads the metadata of a stored file without downloading it.
+     *
+     * @param filePath The path of the file.
+     * @return The size, ETag and content type of the file.
+     */
+    StoredFileInfo stat(String filePath);
+
+    /**
+     * Opens a stream reading the content of a stored file from the storage as it is consumed. The caller closes it.
+     *
+     * @param filePath The path of the file.
+     * @param offset   The position of the first byte to read.
+     * @param length   The number of bytes the caller will read, so that the storage fetches no more than needed.
+     * @return A stream of the content starting at the offset.
+     */
+    InputStream openStream(String filePath, long offset, long length);
+
+    /**
+     * Deletes a stored file. Deleting a file that doesn't exist does nothing.
+     *
+     * @param filePath The path of the file.
+     */
+    void delete(String filePath);
+
     String generateSignedUrl(File file, long expirationMinutes);
 
     String generateSignedUrl(String filePath, long expirationMinutes);
 
+    /**
+     * Signs the URL of a file whose content type is known, which lets some storages sign without fetching it.
+     */
+    default String generateSignedUrl(String filePath, String contentType, long expirationMinutes) {
+        return generateSignedUrl(filePath, expirationMinutes);
+    }
+
+    /**
+     * Signs the URLs of several files, fetching what signing needs in as few calls as possible.
+     *
+     * @return The signed URL of each file path.
+     */
+    default Map<String, String> generateSignedUrls(Collection<File> files, long expirationMinutes) {
+        Map<String, String> urls = new HashMap<>();
+        files.forEach(file -> urls.put(file.getPath(), generateSignedUrl(file, expirationMinutes)));
+        return urls;
+    }
+
     default String uploadAndSign(MultipartFile file, String folder) {
         return generateSignedUrl(upload(file, folder), 10);
     }
+
+    @FunctionalInterface
+    interface ContentWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
 }
@@ -2,10 +2,12 @@ package com.grash.service;
 
 import com.grash.dto.SubscriptionPatchDTO;
 import com.grash.exception.CustomException;
+import com.grash.job.SubscriptionEndJob;
 import com.grash.mapper.SubscriptionMapper;
 import com.grash.model.Subscription;
 import com.grash.repository.SubscriptionRepository;
 import lombok.RequiredArgsConstructor;
+import org.quartz.*;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,11 +18,14 @@ import java.util.*;
 @Service
 @RequiredArgsConstructor
 public class SubscriptionService {
+    private static final String JOB_GROUP = "subscription";
+
     private final SubscriptionRepository subscriptionRepository;
     private final CompanyService companyService;
     private final SubscriptionPlanService subscriptionPlanService;
     private final SubscriptionMapper subscriptionMapper;
     private final EntityManager em;
+    private final Scheduler scheduler;
 
     @Transactional
     public Subscription create(Subscription subscription) {
@@ -60,18 +65,39 @@ public class SubscriptionService {
     public void scheduleEnd(Subscription subscription) {
         boolean shouldSchedule =
                 !subscription.getSubscriptionPlan().getCode().equals("FREE") && subscription.getEndsOn() != null;
-        if (shouldSchedule) {
-            Timer timer = new Timer();
-            TimerTask timerTask = new TimerTask() {
-                @Override
-                public void run() {
-                    resetToFreePlan(subscription);
-                }
-            };
-            timer.schedule(timerTask, subscription.getEndsOn());
+        JobKey jobKey = JobKey.jobKey("subscription_end_" + subscription.getId(), JOB_GROUP);
+        try {
+            if (shouldSchedule) {
+                JobDetail jobDetail = JobBuilder.newJob(SubscriptionEndJob.class)
+                        .withIdentity(jobKey)
+                        .usingJobData(SubscriptionEndJob.SUBSCRIPTION_ID, subscription.getId())
+                        .build();
+                // an end missed while every node was down fires as soon as a node is back
+                Trigger trigger = TriggerBuilder.newTrigger()
+                        .forJob(jobDetail)
+                        .withIdentity(jobKey.getName(), jobKey.getGroup())
+                        .startAt(subscription.getEndsOn())
+                        .withSchedule(SimpleScheduleBuilder.simpleSchedule()
+                                .withMisfireHandlingInstructionFireNow())
+                        .build();
+                scheduler.scheduleJob(jobDetail, Collections.singleton(trigger), true);
+            } else scheduler.deleteJob(jobKey);
+        } catch (SchedulerException e) {
+            throw new CustomException("Error scheduling subscription end: " + e.getMessage(),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    @Transactional
+    public void endSubscription(Long id) {
+        Optional<Subscription> optionalSubscription = subscriptionRepository.findById(id);
+        if (!optionalSubscription.isPresent()) return;
+        Subscription subscription = optionalSubscription.get();
+        // the subscription may have been renewed since the job was scheduled
+        if (subscription.getEndsOn() != null && !subscription.getEndsOn().after(new Date()))
+            resetToFreePlan(subscription);
+    }
+
     public Optional<Subscription> findByFastSpringId(String id) {
         return subscriptionRepository.findByFastSpringId(id);
     }
@@ -14,6 +14,7 @@ import com.grash.model.enums.RoleCode;
 import com.grash.repository.UserRepository;
 import com.grash.repository.UserWorkingHourRepository;
 import com.grash.repository.VerificationTokenRepository;
+import com.grash.security.CustomUserDetail;
 import com.grash.security.JwtTokenProvider;
 import com.grash.utils.Helper;
 import com.grash.utils.Utils;
@@ -24,11 +25,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -203,6 +204,11 @@ public class UserService {
     }
 
     public OwnUser whoami(HttpServletRequest req) {
+        // the user was already loaded by JwtTokenFilter for this request
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof CustomUserDetail) {
+            return ((CustomUserDetail) authentication.getPrincipal()).getUser();
+        }
         return userRepository.findByEmailIgnoreCase(jwtTokenProvider.getUsername(jwtTokenProvider.resolveToken(req))).get();
     }
 
@@ -403,8 +409,10 @@ public class UserService {
         return users;
     }
 
-    @Async
-    void sendRegistrationMailToSuperAdmins(OwnUser user, UserSignupRequest userSignupRequest) {
+    /**
+     * Only builds the mail, the mail queue sends it
+     */
+    private void sendRegistrationMailToSuperAdmins(OwnUser user, UserSignupRequest userSignupRequest) {
         if (user.getEmail().equals("superadmin@test.com")) return;
         if (user.getCompany() != null && user.getCompany().isDemo()) return;
         if (recipients == null || recipients.length == 0) {
@@ -412,7 +420,7 @@ public class UserService {
 //            throw new CustomException("MAIL_RECIPIENTS env variable not set", HttpStatus.INTERNAL_SERVER_ERROR);
         }
         try {
-            emailService2.sendHtmlMessage(recipients, userSignupRequest.getSubscriptionPlanId() == null ?
+            emailService2.queueHtmlMessage(recipients, userSignupRequest.getSubscriptionPlanId() == null ?
                             "New " + brandingService.getBrandConfig().getShortName() + " " +
                                     "registration" :
                             brandingService.getBrandConfig().getShortName() + " plan " + userSignupRequest.getSubscriptionPlanId() + " used",
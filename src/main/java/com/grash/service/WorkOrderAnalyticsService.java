@@ -0,0 +1,289 @@
+package com.grash.service;
+
+import com.grash.dto.analytics.workOrders.*;
+import com.grash.model.Asset;
+import com.grash.model.OwnUser;
+import com.grash.model.WorkOrderCategory;
+import com.grash.model.enums.Priority;
+import com.grash.model.enums.Status;
+import com.grash.repository.LaborRepository;
+import com.grash.repository.WorkOrderAudRepository;
+import com.grash.repository.WorkOrderRepository;
+import com.grash.utils.Helper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Computes the work order analytics with grouped aggregates so that no {@link com.grash.model.WorkOrder} entity
+ * is loaded, whatever the number of work orders of the company.
+ */
+@Service
+@RequiredArgsConstructor
+public class WorkOrderAnalyticsService {
+    private final WorkOrderRepository workOrderRepository;
+    private final LaborRepository laborRepository;
+    private final UserService userService;
+    private final WorkOrderCategoryService workOrderCategoryService;
+    private final AssetService assetService;
+    private final WorkOrderCostService workOrderCostService;
+    private final WorkOrderAudRepository workOrderAudRepository;
+
+    public WOStats getCompleteStats(Long companyId, Date start, Date end) {
+        WOOverviewAggregates aggregates = getOverviewAggregates(companyId, start, end);
+        long complete = aggregates.getComplete();
+        long reacted = aggregates.getReacted();
+        return WOStats.builder()
+                .total(Math.toIntExact(aggregates.getTotal()))
+                .complete(Math.toIntExact(complete))
+                .compliant(Math.toIntExact(aggregates.getCompliant()))
+                .mtta(reacted == 0 ? 0 : aggregates.getReactionTime() / reacted)
+                .avgCycleTime(complete == 0 ? 0 : aggregates.getCycleTime() / complete).build();
+    }
+
+    public WOIncompleteStats getIncompleteStats(Long companyId, Date start, Date end) {
+        WOOverviewAggregates aggregates = getOverviewAggregates(companyId, start, end);
+        int total = Math.toIntExact(aggregates.getIncomplete());
+        return WOIncompleteStats.builder()
+                .total(total)
+                .averageAge(total == 0 ? 0 : (int) (aggregates.getIncompleteAge() / total))
+                .build();
+    }
+
+    public WOStatsByPriority getIncompleteByPriority(Long companyId, Date start, Date end) {
+        Map<Priority, WOStatsByPriority.BasicStats> stats = new EnumMap<>(Priority.class);
+        Arrays.stream(Priority.values()).forEach(priority -> stats.put(priority, new WOStatsByPriority.BasicStats()));
+        workOrderRepository.countByStatusAndPriority(companyId, start, end).stream()
+                .filter(count -> !count.getStatus().equals(Status.COMPLETE))
+                .forEach(count -> {
+                    WOStatsByPriority.BasicStats basicStats = stats.get(count.getPriority());
+                    basicStats.setCount(basicStats.getCount() + Math.toIntExact(count.getTotal()));
+                    basicStats.setEstimatedHours(basicStats.getEstimatedHours() + count.getEstimatedDuration());
+                });
+        return WOStatsByPriority.builder()
+                .high(stats.get(Priority.HIGH))
+                .none(stats.get(Priority.NONE))
+                .low(stats.get(Priority.LOW))
+                .medium(stats.get(Priority.MEDIUM))
+                .build();
+    }
+
+    public WOStatuses getIncompleteStatuses(Long companyId, Date start, Date end) {
+        Map<Status, Integer> counts = new EnumMap<>(Status.class);
+        workOrderRepository.countByStatusAndPriority(companyId, start, end).stream()
+                .filter(count -> !count.getStatus().equals(Status.COMPLETE))
+                .forEach(count -> counts.merge(count.getStatus(), Math.toIntExact(count.getTotal()), Integer::sum));
+        return WOStatuses.builder()
+                .open(counts.getOrDefault(Status.OPEN, 0))
+                .inProgress(counts.getOrDefault(Status.IN_PROGRESS, 0))
+                .onHold(counts.getOrDefault(Status.ON_HOLD, 0))
+                .complete(counts.getOrDefault(Status.COMPLETE, 0))
+                .build();
+    }
+
+    /**
+     * Reconstructs the status counts of the company work orders as they were at each of the given dates, counting
+     * for each date the work orders created between {@code start} and that date. The work orders and their audited
+     * status revisions are loaded once, then merged with the dates in ascending order.
+     */
+    public List<WOStatuses> getStatusesAt(Long companyId, Date start, List<Date> dates) {
+        if (dates.isEmpty()) return new ArrayList<>();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < dates.size(); i++) order.add(i);
+        order.sort(Comparator.comparing(dates::get));
+        List<Map<Status, Integer>> counts = new ArrayList<>();
+        dates.forEach(date -> counts.add(new EnumMap<>(Status.class)));
+        Date last = dates.get(order.get(order.size() - 1));
+        Map<Long, List<WOStatusRevision>> revisionsByWorkOrder =
+                workOrderAudRepository.findStatusRevisionsByCompanyAndCreatedAtBetween(companyId, start, last,
+                        last.getTime()).stream().collect(Collectors.groupingBy(WOStatusRevision::getId));
+        workOrderRepository.findStatusesByCompanyAndCreatedAtBetween(companyId, start, last).forEach(workOrder -> {
+            List<WOStatusRevision> revisions = revisionsByWorkOrder.getOrDefault(workOrder.getId(),
+                    Collections.emptyList());
+            int revision = -1;
+            for (int index : order) {
+                Date date = dates.get(index);
+                while (revision + 1 < revisions.size() && revisions.get(revision + 1).getTimestamp() <= date.getTime())
+                    revision++;
+                if (workOrder.getCreatedAt().after(date)) continue;
+                Status status = revision < 0 ? workOrder.getStatus() : revisions.get(revision).getStatus();
+                if (status != null) counts.get(index).merge(status, 1, Integer::sum);
+            }
+        });
+        return counts.stream().map(statusCounts -> WOStatuses.builder()
+                .open(statusCounts.getOrDefault(Status.OPEN, 0))
+                .onHold(statusCounts.getOrDefault(Status.ON_HOLD, 0))
+                .inProgress(statusCounts.getOrDefault(Status.IN_PROGRESS, 0))
+                .complete(statusCounts.getOrDefault(Status.COMPLETE, 0))
+                .build()).collect(Collectors.toList());
+    }
+
+    public WOHours getHours(Long companyId, Date start, Date end) {
+        double estimated = workOrderRepository.countByStatusAndPriority(companyId, start, end).stream()
+                .mapToDouble(WOStatusPriorityCount::getEstimatedDuration).sum();
+        long actual = laborRepository.sumDurationByCompanyAndWorkOrderCreatedAtBetween(companyId, start, end);
+        return WOHours.builder()
+                .estimated(estimated)
+                .actual(Math.toIntExact(actual / 3600))
+                .build();
+    }
+
+    public Map<Priority, Integer> getCompleteCountsByPriority(Long companyId, Date start, Date end) {
+        Map<Priority, Integer> results = new HashMap<>();
+        Arrays.stream(Priority.values()).forEach(priority -> results.put(priority, 0));
+        workOrderRepository.countByStatusAndPriority(companyId, start, end).stream()
+                .filter(count -> count.getStatus().equals(Status.COMPLETE))
+                .forEach(count -> results.merge(count.getPriority(), Math.toIntExact(count.getTotal()), Integer::sum));
+        return results;
+    }
+
+    public WOCountByWeek getCompleteCountsBetween(Long companyId, Date start, Date end) {
+        WOCompletionCounts counts = workOrderRepository.countCompleteByCompletedOnBetween(companyId, start, end);
+        return WOCountByWeek.builder()
+                .count(Math.toIntExact(counts.getTotal()))
+                .compliant(Math.toIntExact(counts.getCompliant()))
+                .reactive(Math.toIntExact(counts.getReactive()))
+                .date(end).build();
+    }
+
+    public WOTimeByWeek getCompleteTimeBetween(Long companyId, Date start, Date end) {
+        WOLaborDurations durations = laborRepository.sumDurationsByCompanyAndCompletedOnBetween(companyId, start,
+                end);
+        return WOTimeByWeek.builder()
+                .total(durations.getTotal())
+                .reactive(durations.getReactive())
+                .date(end).build();
+    }
+
+    public WOCostsAndTime getCompleteCostsAndTime(Long companyId, Date start, Date end) {
+        WOCostRollup costs = workOrderCostService.getCompleteCostsByCompanyAndCreatedAtBetween(companyId, start, end);
+        long completeCount = workOrderRepository.countByStatusAndPriority(companyId, start, end).stream()
+                .filter(count -> count.getStatus().equals(Status.COMPLETE))
+                .mapToLong(WOStatusPriorityCount::getTotal).sum();
+        double total = costs.getTotal(true);
+        return WOCostsAndTime.builder()
+                .total(total)
+                .average(completeCount == 0 ? 0 : total / completeCount)
+                .additionalCost(costs.getAdditionalCost())
+                .laborCost(costs.getLaborCost())
+                .partCost(costs.getPartCost())
+                .laborTime(costs.getLaborTime())
+                .build();
+    }
+
+    public MobileWOStats getMobileOverview(Long companyId, Long userId, boolean assignedToMe) {
+        LocalDateTime todayMidnight = LocalDateTime.of(LocalDate.now(ZoneId.of("UTC")), LocalTime.MIDNIGHT);
+        Date todayStart = Helper.localDateTimeToDate(todayMidnight);
+        Date tomorrowStart = Helper.localDateTimeToDate(todayMidnight.plusDays(1));
+        MobileWOCounts counts = assignedToMe ?
+                workOrderRepository.getMobileCountsByAssignedToUser(userId, todayStart, tomorrowStart) :
+                workOrderRepository.getMobileCountsByCompany(companyId, todayStart, tomorrowStart);
+        return MobileWOStats.builder()
+                .open(Math.toIntExact(counts.getOpen()))
+                .onHold(Math.toIntExact(counts.getOnHold()))
+                .inProgress(Math.toIntExact(counts.getInProgress()))
+                .complete(Math.toIntExact(counts.getComplete()))
+                .today(Math.toIntExact(counts.getToday()))
+                .high(Math.toIntExact(counts.getHigh())).build();
+    }
+
+    public MobileWOStatsExtended getMobileExtendedStats(Long companyId) {
+        Date weekStart = Helper.localDateToDate(LocalDate.now().minusDays(7));
+        MobileWOCompletionCounts counts = workOrderRepository.getMobileCompletionCounts(companyId, weekStart,
+                new Date());
+        return MobileWOStatsExtended.builder()
+                .complete(Math.toIntExact(counts.getComplete()))
+                .completeWeek(Math.toIntExact(counts.getCompleteWeek()))
+                .compliantRate(counts.getTotal() == 0 ? 1 : ((double) counts.getCompliant()) / counts.getTotal())
+                .compliantRateWeek(counts.getCompleteWeek() == 0 ? 1 :
+                        ((double) counts.getCompliantWeek()) / counts.getCompleteWeek())
+                .build();
+    }
+
+    public Collection<WOCountByUser> getCompleteCountsByUser(Long companyId, Date start, Date end) {
+        Map<Long, WOAssignmentCounts> counts = getAssignmentCounts(companyId, start, end);
+        return userService.findWorkersByCompany(companyId).stream().map(user -> {
+            WOAssignmentCounts userCounts = counts.get(user.getId());
+            return WOCountByUser.builder()
+                    .firstName(user.getFirstName())
+                    .lastName(user.getLastName())
+                    .id(user.getId())
+                    .count(userCounts == null ? 0 : Math.toIntExact(userCounts.getComplete()))
+                    .build();
+        }).collect(Collectors.toList());
+    }
+
+    public Collection<WOCountByUser> getCompleteCountsByCompletedBy(Long companyId, Date start, Date end) {
+        Map<Long, Long> counts = toCountMap(workOrderRepository.countCompleteByCompletedBy(companyId, start, end));
+        return userService.findWorkersByCompany(companyId).stream().map(user -> WOCountByUser.builder()
+                .firstName(user.getFirstName())
+                .lastName(user.getLastName())
+                .id(user.getId())
+                .count(Math.toIntExact(counts.getOrDefault(user.getId(), 0L)))
+                .build()).collect(Collectors.toList());
+    }
+
+    public Collection<WOCountByCategory> getCompleteCountsByCategory(Long companyId, Long companySettingsId,
+                                                                     Date start, Date end) {
+        Map<Long, Long> counts = toCountMap(workOrderRepository.countCompleteByCategory(companyId, start, end));
+        Collection<WorkOrderCategory> categories = workOrderCategoryService.findByCompanySettings(companySettingsId);
+        return categories.stream().map(category -> WOCountByCategory.builder()
+                .name(category.getName())
+                .id(category.getId())
+                .count(Math.toIntExact(counts.getOrDefault(category.getId(), 0L)))
+                .build()).collect(Collectors.toList());
+    }
+
+    public Collection<IncompleteWOByUser> getIncompleteByUser(Long companyId, Date start, Date end) {
+        Map<Long, WOAssignmentCounts> counts = getAssignmentCounts(companyId, start, end);
+        Collection<OwnUser> users = userService.findWorkersByCompany(companyId);
+        return users.stream().map(user -> {
+            WOAssignmentCounts userCounts = counts.get(user.getId());
+            int count = userCounts == null ? 0 : Math.toIntExact(userCounts.getIncomplete());
+            return IncompleteWOByUser.builder()
+                    .count(count)
+                    .averageAge(count == 0 ? 0 : userCounts.getIncompleteAge() / count)
+                    .firstName(user.getFirstName())
+                    .lastName(user.getLastName())
+                    .id(user.getId())
+                    .build();
+        }).collect(Collectors.toList());
+    }
+
+    public Collection<IncompleteWOByAsset> getIncompleteByAsset(Long companyId, Date start, Date end) {
+        Map<Long, WOAgeById> ages = workOrderRepository.getIncompleteAgeByAsset(companyId, start, end, new Date(),
+                Status.COMPLETE.ordinal()).stream().collect(Collectors.toMap(WOAgeById::getId, Function.identity()));
+        Collection<Asset> assets = assetService.findByCompanyAndBefore(companyId, end);
+        return assets.stream().map(asset -> {
+            WOAgeById assetAges = ages.get(asset.getId());
+            int count = assetAges == null ? 0 : Math.toIntExact(assetAges.getTotal());
+            return IncompleteWOByAsset.builder()
+                    .count(count)
+                    .averageAge(count == 0 ? 0 : assetAges.getAge() / count)
+                    .name(asset.getName())
+                    .id(asset.getId())
+                    .build();
+        }).collect(Collectors.toList());
+    }
+
+    private Map<Long, WOAssignmentCounts> getAssignmentCounts(Long companyId, Date start, Date end) {
+        return workOrderRepository.countByAssignedUser(companyId, start, end, new Date(), Status.COMPLETE.ordinal())
+                .stream().collect(Collectors.toMap(WOAssignmentCounts::getId, Function.identity()));
+    }
+
+    private Map<Long, Long> toCountMap(Collection<WOCountById> counts) {
+        return counts.stream().collect(Collectors.toMap(WOCountById::getId, WOCountById::getTotal));
+    }
+
+    private WOOverviewAggregates getOverviewAggregates(Long companyId, Date start, Date end) {
+        return workOrderRepository.getOverviewAggregates(companyId, start, end, new Date(),
+                Status.COMPLETE.ordinal());
+    }
+}
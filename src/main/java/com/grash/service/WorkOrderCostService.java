@@ -0,0 +1,96 @@
+package com.grash.service;
+
+import com.grash.dto.analytics.workOrders.WOCostBreakdown;
+import com.grash.dto.analytics.workOrders.WOCostRollup;
+import com.grash.model.*;
+import com.grash.model.enums.Status;
+import com.grash.utils.Helper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.*;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Rolls up labor, part and additional costs of many work orders with one SUM/GROUP BY query per cost type, instead
+ * of loading the costs of each work order separately.
+ */
+@Service
+@RequiredArgsConstructor
+public class WorkOrderCostService {
+    private final EntityManager em;
+
+    public WOCostRollup getCosts(Collection<WorkOrder> workOrders) {
+        List<Long> ids = workOrders.stream().map(WorkOrder::getId).distinct().collect(Collectors.toList());
+        WOCostRollup result = new WOCostRollup();
+        for (List<Long> chunk : Helper.inClauseChunks(ids)) {
+            result.getByWorkOrder().putAll(rollup((cb, workOrder) -> workOrder.get("id").in(chunk)).getByWorkOrder());
+        }
+        return result;
+    }
+
+    public WOCostRollup getCompleteCostsByCompanyAndCreatedAtBetween(Long companyId, Date start, Date end) {
+        return rollup((cb, workOrder) -> cb.and(
+                cb.equal(workOrder.get("company").get("id"), companyId),
+                cb.equal(workOrder.get("status"), Status.COMPLETE),
+                cb.between(workOrder.get("createdAt"), start, end)));
+    }
+
+    public WOCostRollup getCompleteCostsByCompanyAndCompletedOnBetween(Long companyId, Date start, Date end) {
+        return rollup((cb, workOrder) -> cb.and(
+                cb.equal(workOrder.get("company").get("id"), companyId),
+                cb.equal(workOrder.get("status"), Status.COMPLETE),
+                cb.between(workOrder.get("completedOn"), start, end)));
+    }
+
+    public WOCostRollup getCostsByAssetAndCreatedAtBetween(Long assetId, Date start, Date end) {
+        return rollup((cb, workOrder) -> cb.and(
+                cb.equal(workOrder.get("asset").get("id"), assetId),
+                cb.between(workOrder.get("createdAt"), start, end)));
+    }
+
+    private WOCostRollup rollup(BiFunction<CriteriaBuilder, Path<WorkOrder>, Predicate> filter) {
+        Map<Long, WOCostBreakdown> breakdowns = new HashMap<>();
+        Function<Tuple, WOCostBreakdown> breakdownOf = tuple ->
+                breakdowns.computeIfAbsent(tuple.get(0, Long.class),
+                        id -> new WOCostBreakdown(id, tuple.get(1, Long.class), tuple.get(2, Date.class)));
+
+        sumByWorkOrder(Labor.class, filter, (cb, labor) -> Arrays.asList(
+                cb.sum(cb.quot(cb.prod(labor.<Long>get("hourlyRate"), labor.<Long>get("duration")), 3600)),
+                cb.sum(labor.<Long>get("duration"))))
+                .forEach(tuple -> {
+                    WOCostBreakdown breakdown = breakdownOf.apply(tuple);
+                    breakdown.setLaborCost(tuple.get(3, Number.class).longValue());
+                    breakdown.setLaborTime(tuple.get(4, Number.class).longValue());
+                });
+        sumByWorkOrder(PartQuantity.class, filter, (cb, partQuantity) -> Collections.singletonList(
+                cb.sum(cb.prod(partQuantity.<Double>get("quantity"), partQuantity.join("part").<Double>get("cost")))))
+                .forEach(tuple -> breakdownOf.apply(tuple).setPartCost(tuple.get(3, Number.class).doubleValue()));
+        sumByWorkOrder(AdditionalCost.class, filter, (cb, additionalCost) -> Collections.singletonList(
+                cb.sum(additionalCost.<Double>get("cost"))))
+                .forEach(tuple -> breakdownOf.apply(tuple).setAdditionalCost(tuple.get(3, Number.class).doubleValue()));
+        return new WOCostRollup(breakdowns);
+    }
+
+    private <T> List<Tuple> sumByWorkOrder(Class<T> entityClass,
+                                           BiFunction<CriteriaBuilder, Path<WorkOrder>, Predicate> filter,
+                                           BiFunction<CriteriaBuilder, Root<T>, List<Expression<?>>> sums) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<T> root = query.from(entityClass);
+        Join<T, WorkOrder> workOrder = root.join("workOrder");
+        Join<WorkOrder, Asset> asset = workOrder.join("asset", JoinType.LEFT);
+        List<Selection<?>> selections = new ArrayList<>(Arrays.asList(workOrder.get("id"), asset.get("id"),
+                workOrder.get("completedOn")));
+        selections.addAll(sums.apply(cb, root));
+        query.multiselect(selections)
+                .where(filter.apply(cb, workOrder))
+                .groupBy(workOrder.get("id"), asset.get("id"), workOrder.get("completedOn"));
+        return em.createQuery(query).getResultList();
+    }
+}
@@ -1,5 +1,8 @@
 package com.grash.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.grash.dto.MeterThreshold;
 import com.grash.dto.WorkOrderMeterTriggerPatchDTO;
 import com.grash.exception.CustomException;
 import com.grash.mapper.WorkOrderMeterTriggerMapper;
@@ -11,8 +14,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
-import java.util.Collection;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -22,11 +27,20 @@ public class WorkOrderMeterTriggerService {
     private final WorkOrderMeterTriggerMapper workOrderMeterTriggerMapper;
     private final MeterService meterService;
     private final EntityManager em;
+    /**
+     * Thresholds by meter id. Entries are evicted when this node changes a trigger and expire for the changes made by
+     * the other nodes.
+     */
+    private final Cache<Long, List<MeterThreshold>> thresholdsByMeter = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
 
     @Transactional
     public WorkOrderMeterTrigger create(WorkOrderMeterTrigger workOrderMeterTrigger) {
         WorkOrderMeterTrigger savedWorkOrderMeterTrigger = workOrderMeterTriggerRepository.saveAndFlush(workOrderMeterTrigger);
         em.refresh(savedWorkOrderMeterTrigger);
+        thresholdsByMeter.invalidate(savedWorkOrderMeterTrigger.getMeter().getId());
         return savedWorkOrderMeterTrigger;
     }
 
@@ -35,6 +49,7 @@ public class WorkOrderMeterTriggerService {
         if (workOrderMeterTriggerRepository.existsById(id)) {
             WorkOrderMeterTrigger savedWorkOrderMeterTrigger = workOrderMeterTriggerRepository.findById(id).get();
             WorkOrderMeterTrigger updatedWorkOrderMeterTrigger = workOrderMeterTriggerRepository.save(workOrderMeterTriggerMapper.updateWorkOrderMeterTrigger(savedWorkOrderMeterTrigger, workOrderMeterTrigger));
+            thresholdsByMeter.invalidate(updatedWorkOrderMeterTrigger.getMeter().getId());
             return updatedWorkOrderMeterTrigger;
         } else throw new CustomException("Not found", HttpStatus.NOT_FOUND);
     }
@@ -44,6 +59,8 @@ public class WorkOrderMeterTriggerService {
     }
 
     public void delete(Long id) {
+        workOrderMeterTriggerRepository.findById(id).ifPresent(workOrderMeterTrigger ->
+                thresholdsByMeter.invalidate(workOrderMeterTrigger.getMeter().getId()));
         workOrderMeterTriggerRepository.deleteById(id);
     }
 
@@ -54,4 +71,24 @@ public class WorkOrderMeterTriggerService {
     public Collection<WorkOrderMeterTrigger> findByMeter(Long id) {
         return workOrderMeterTriggerRepository.findByMeter_Id(id);
     }
+
+    public List<WorkOrderMeterTrigger> findAllById(Collection<Long> ids) {
+        return workOrderMeterTriggerRepository.findAllById(ids);
+    }
+
+    /**
+     * @return the thresholds of each of these meters, loading the ones not cached in a single query
+     */
+    public Map<Long, List<MeterThreshold>> getThresholds(Collection<Long> meterIds) {
+        return thresholdsByMeter.getAll(meterIds, keys -> {
+            List<Long> missingMeterIds = new ArrayList<>();
+            keys.forEach(missingMeterIds::add);
+            Map<Long, List<MeterThreshold>> thresholds = workOrderMeterTriggerRepository
+                    .findByMeterIds(missingMeterIds).stream()
+                    .collect(Collectors.groupingBy(trigger -> trigger.getMeter().getId(),
+                            Collectors.mapping(MeterThreshold::new, Collectors.toList())));
+            return missingMeterIds.stream().collect(Collectors.toMap(Function.identity(),
+                    meterId -> thresholds.getOrDefault(meterId, Collections.emptyList())));
+        });
+    }
 }
@@ -0,0 +1,292 @@
+package com.grash.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.grash.configuration.AsyncConfig;
+import com.grash.exception.CustomException;
+import com.grash.factory.StorageServiceFactory;
+import com.grash.model.*;
+import com.grash.model.abstracts.DateAudit;
+import com.grash.repository.ReportJobRepository;
+import com.grash.utils.Helper;
+import com.itextpdf.html2pdf.ConverterProperties;
+import com.itextpdf.html2pdf.HtmlConverter;
+import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.utils.PdfMerger;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.MessageSource;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders the work order PDF reports on the report executor, so that at most its pool size of renders run at once.
+ * The PDFs are streamed to the storage and their paths cached by work orders, revision, branding and locale: the
+ * revision being the last update of the work order and of everything shown in the report, with the names of the
+ * users and entities it references, downloading an unchanged report again only signs its URL.
+ * <p>
+ * Loading the fonts is the costly part of setting up a conversion, so each report thread keeps its
+ * {@link ConverterProperties}. A font provider can't be shared by concurrent conversions.
+ * <p>
+ * The jobs are stored so that their status can be polled through any node, but the cache of the rendered reports is
+ * per node: another node renders an unchanged report again.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WorkOrderReportService {
+    public static final int MAX_WORK_ORDERS = 100;
+    private static final String CONTENT_TYPE = "application/pdf";
+    private static final long URL_EXPIRATION_MINUTES = 10;
+    private static final long JOB_RETENTION_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final CompanyService companyService;
+    private final WorkOrderService workOrderService;
+    private final UserService userService;
+    private final TaskService taskService;
+    private final PartQuantityService partQuantityService;
+    private final LaborService laborService;
+    private final RelationService relationService;
+    private final AdditionalCostService additionalCostService;
+    private final WorkOrderHistoryService workOrderHistoryService;
+    private final BrandingService brandingService;
+    private final SpringTemplateEngine thymeleafTemplateEngine;
+    private final StorageServiceFactory storageServiceFactory;
+    private final MessageSource messageSource;
+    private final Environment environment;
+    private final ReportJobRepository reportJobRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ThreadLocal<ConverterProperties> converterProperties = ThreadLocal.withInitial(() ->
+            new ConverterProperties().setFontProvider(new DefaultFontProvider()));
+    private final Cache<ReportKey, String> reports = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(7, TimeUnit.DAYS)
+            .build();
+
+    public ReportJob createJob(List<Long> workOrderIds, Long companyId, Locale locale) {
+        ReportJob job = new ReportJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setWorkOrderIds(workOrderIds);
+        job.setCompanyId(companyId);
+        job.setLocale(locale);
+        return reportJobRepository.save(job);
+    }
+
+    /**
+     * Marks a job whose run was rejected, so that it isn't polled as pending until it expires
+     */
+    public ReportJob failJob(ReportJob job, String error) {
+        job.setError(error);
+        job.setStatus(ReportJob.ReportJobStatus.FAILED);
+        return reportJobRepository.save(job);
+    }
+
+    public Optional<ReportJob> findJob(String id) {
+        return reportJobRepository.findById(id);
+    }
+
+    public void deleteExpiredJobs() {
+        reportJobRepository.deleteAll(reportJobRepository.findByCreatedAtBefore(
+                new Date(System.currentTimeMillis() - JOB_RETENTION_MILLIS)));
+    }
+
+    /**
+     * Runs a job saved by {@link #createJob}, which must be committed before
+     */
+    @Async(AsyncConfig.REPORT_EXECUTOR)
+    public CompletableFuture<ReportJob> runJob(ReportJob job) {
+        job.setStatus(ReportJob.ReportJobStatus.RUNNING);
+        job = reportJobRepository.save(job);
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            transactionTemplate.setReadOnly(true);
+            ReportJob runningJob = job;
+            job.setUrl(transactionTemplate.execute(status -> render(runningJob)));
+            job.setStatus(ReportJob.ReportJobStatus.COMPLETE);
+        } catch (RuntimeException e) {
+            log.error("Could not render the report of work orders {}", job.getWorkOrderIds(), e);
+            job.setError(e.getMessage());
+            job.setStatus(ReportJob.ReportJobStatus.FAILED);
+        }
+        return CompletableFuture.completedFuture(reportJobRepository.save(job));
+    }
+
+    /**
+     * @return The signed URL of the PDF, rendered again only if one of the work orders changed
+     */
+    private String render(ReportJob job) {
+        Company company = companyService.findById(job.getCompanyId())
+                .orElseThrow(() -> new CustomException("Company not found", HttpStatus.NOT_FOUND));
+        List<WorkOrderReport> workOrderReports = job.getWorkOrderIds().stream().map(this::load)
+                .collect(Collectors.toList());
+        ReportKey key = new ReportKey(job.getWorkOrderIds(), workOrderReports.stream()
+                .map(WorkOrderReport::getRevision).collect(Collectors.toList()), company.getUpdatedAt(),
+                brandingService.getMailBackgroundColor(), job.getLocale());
+        StorageService storageService = storageServiceFactory.getStorageService();
+        String filePath = reports.getIfPresent(key);
+        if (filePath == null) {
+            filePath = storageService.upload(workOrderReports.size() == 1 ? "Work Order Report.pdf" :
+                            "Work Orders Report.pdf", CONTENT_TYPE, "reports/" + company.getId(),
+                    outputStream -> write(workOrderReports, company, job.getLocale(), outputStream));
+            reports.put(key, filePath);
+        }
+        return storageService.generateSignedUrl(filePath, CONTENT_TYPE, URL_EXPIRATION_MINUTES);
+    }
+
+    private WorkOrderReport load(Long id) {
+        WorkOrder workOrder = workOrderService.findById(id)
+                .orElseThrow(() -> new CustomException("Work order " + id + " not found", HttpStatus.NOT_FOUND));
+        OwnUser creator = workOrder.getCreatedBy() == null ? null :
+                userService.findById(workOrder.getCreatedBy()).orElse(null);
+        return new WorkOrderReport(workOrder, creator, taskService.findByWorkOrder(id),
+                partQuantityService.findByWorkOrder(id), laborService.findByWorkOrder(id),
+                relationService.findByWorkOrder(id), additionalCostService.findByWorkOrder(id),
+                workOrderHistoryService.findByWorkOrder(id));
+    }
+
+    /**
+     * Writes the report of a single work order directly, and the ones of several work orders one after the other,
+     * each rendered alone then appended
+     */
+    private void write(List<WorkOrderReport> workOrderReports, Company company, Locale locale,
+                       OutputStream outputStream) throws IOException {
+        ConverterProperties properties = converterProperties.get();
+        PdfWriter writer = new PdfWriter(outputStream);
+        writer.setCloseStream(false);
+        if (workOrderReports.size() == 1) {
+            HtmlConverter.convertToPdf(toHtml(workOrderReports.get(0), company, locale), writer, properties);
+            return;
+        }
+        PdfDocument pdfDocument = new PdfDocument(writer);
+        PdfMerger merger = new PdfMerger(pdfDocument);
+        for (WorkOrderReport workOrderReport : workOrderReports) {
+            ByteArrayOutputStream part = new ByteArrayOutputStream();
+            HtmlConverter.convertToPdf(toHtml(workOrderReport, company, locale), part, properties);
+            PdfDocument partDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(part.toByteArray())));
+            merger.merge(partDocument, 1, partDocument.getNumberOfPages());
+            partDocument.close();
+        }
+        pdfDocument.close();
+    }
+
+    private String toHtml(WorkOrderReport workOrderReport, Company company, Locale locale) {
+        WorkOrder workOrder = workOrderReport.getWorkOrder();
+        StorageService storageService = storageServiceFactory.getStorageService();
+        Map<Long, String[]> tasksImagesUrls = workOrderReport.getTasks().stream()
+                .collect(Collectors.toMap(
+                        Task::getId,
+                        task -> task.getImages().stream()
+                                .map(image -> image.getWebPath() == null ?
+                                        storageService.generateSignedUrl(image, 5) :
+                                        storageService.generateSignedUrl(image.getWebPath(),
+                                                ImageDerivativeService.CONTENT_TYPE, 5))
+                                .toArray(String[]::new)
+                ));
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("companyName", company.getName());
+        variables.put("companyPhone", company.getPhone());
+        variables.put("currency", company.getCompanySettings().getGeneralPreferences().getCurrency().getCode());
+        variables.put("assignedTo", Helper.enumerate(workOrder.getAssignedTo().stream().map(OwnUser::getFullName)
+                .collect(Collectors.toList())));
+        variables.put("customers", Helper.enumerate(workOrder.getCustomers().stream().map(Customer::getName)
+                .collect(Collectors.toList())));
+        variables.put("workOrder", workOrder);
+        variables.put("primaryUserName", workOrder.getPrimaryUser() == null ? null :
+                workOrder.getPrimaryUser().getFullName());
+        variables.put("createdBy", workOrderReport.getCreator() == null ? null :
+                workOrderReport.getCreator().getFullName());
+        variables.put("tasks", workOrderReport.getTasks());
+        variables.put("labors", workOrderReport.getLabors());
+        variables.put("relations", workOrderReport.getRelations());
+        variables.put("additionalCosts", workOrderReport.getAdditionalCosts());
+        variables.put("workOrderHistories", workOrderReport.getWorkOrderHistories());
+        variables.put("partQuantities", workOrderReport.getPartQuantities());
+        variables.put("environment", environment);
+        variables.put("tasksImagesUrls", tasksImagesUrls);
+        variables.put("messageSource", messageSource);
+        variables.put("locale", locale);
+        variables.put("backgroundColor", brandingService.getMailBackgroundColor());
+        Context thymeleafContext = new Context();
+        thymeleafContext.setLocale(locale);
+        thymeleafContext.setVariables(variables);
+        return thymeleafTemplateEngine.process("work-order-report.html", thymeleafContext);
+    }
+
+    @Data
+    private static class WorkOrderReport {
+        private final WorkOrder workOrder;
+        private final OwnUser creator;
+        private final List<Task> tasks;
+        private final Collection<PartQuantity> partQuantities;
+        private final Collection<Labor> labors;
+        private final Collection<Relation> relations;
+        private final Collection<AdditionalCost> additionalCosts;
+        private final Collection<WorkOrderHistory> workOrderHistories;
+
+        /**
+         * The last update of anything shown in the report, with the number of rows and images so that a deletion
+         * changes it too, and a hash of the referenced names, which are updated without touching the work order
+         */
+        public String getRevision() {
+            List<DateAudit> rows = Stream.of(Collections.singletonList(workOrder), tasks, partQuantities, labors,
+                            relations, additionalCosts, workOrderHistories)
+                    .flatMap(Collection::stream)
+                    .collect(Collectors.toList());
+            long lastUpdate = rows.stream().map(DateAudit::getUpdatedAt).filter(Objects::nonNull)
+                    .mapToLong(Date::getTime).max().orElse(0);
+            int imagesCount = tasks.stream().mapToInt(task -> task.getImages().size()).sum();
+            return lastUpdate + "-" + rows.size() + "-" + imagesCount + "-" + getReferencedNames().hashCode();
+        }
+
+        private List<String> getReferencedNames() {
+            List<String> names = new ArrayList<>();
+            workOrder.getAssignedTo().forEach(user -> names.add(user.getFullName()));
+            workOrder.getCustomers().forEach(customer -> names.add(customer.getName()));
+            Stream.of(workOrder.getPrimaryUser(), creator, workOrder.getCompletedBy())
+                    .forEach(user -> names.add(user == null ? null : user.getFullName()));
+            names.add(workOrder.getAsset() == null ? null : workOrder.getAsset().getName());
+            names.add(workOrder.getLocation() == null ? null : workOrder.getLocation().getName());
+            names.add(workOrder.getCategory() == null ? null : workOrder.getCategory().getName());
+            names.add(workOrder.getTeam() == null ? null : workOrder.getTeam().getName());
+            labors.forEach(labor -> names.add(labor.getAssignedTo() == null ? null :
+                    labor.getAssignedTo().getFullName()));
+            partQuantities.forEach(partQuantity -> names.add(partQuantity.getPart().getName()));
+            relations.forEach(relation -> {
+                names.add(relation.getParent().getTitle());
+                names.add(relation.getChild().getTitle());
+            });
+            workOrderHistories.forEach(history -> names.add(history.getUser() == null ? null :
+                    history.getUser().getFullName()));
+            return names;
+        }
+    }
+
+    @Data
+    private static class ReportKey {
+        private final List<Long> workOrderIds;
+        private final List<String> revisions;
+        private final Date companyUpdatedAt;
+        private final String backgroundColor;
+        private final Locale locale;
+    }
+}
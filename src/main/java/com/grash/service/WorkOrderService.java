@@ -4,12 +4,13 @@ import com.grash.advancedsearch.FilterField;
 import com.grash.advancedsearch.SearchCriteria;
 import com.grash.advancedsearch.SpecificationBuilder;
 import com.grash.dto.WorkOrderPatchDTO;
+import com.grash.dto.analytics.workOrders.WOCostRollup;
+import com.grash.dto.imports.ImportContext;
 import com.grash.dto.imports.WorkOrderImportDTO;
 import com.grash.dto.workOrder.WorkOrderPostDTO;
 import com.grash.exception.CustomException;
 import com.grash.mapper.WorkOrderMapper;
 import com.grash.model.*;
-import com.grash.model.abstracts.Cost;
 import com.grash.model.abstracts.WorkOrderBase;
 import com.grash.model.enums.*;
 import com.grash.model.enums.workflow.WFMainCondition;
@@ -34,29 +35,23 @@ import javax.persistence.criteria.JoinType;
 import javax.transaction.Transactional;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 @Service
 @RequiredArgsConstructor
 public class WorkOrderService {
     private final WorkOrderRepository workOrderRepository;
     private final WorkOrderHistoryRepository workOrderHistoryRepository;
-    private final LocationService locationService;
-    private final CustomerService customerService;
     private final TeamService teamService;
     private final AssetService assetService;
-    private final UserService userService;
     private final CompanyService companyService;
-    private LaborService laborService;
-    private AdditionalCostService additionalCostService;
-    private PartQuantityService partQuantityService;
-    private final NotificationService notificationService;
+    private final OutboxService outboxService;
     private final WorkOrderMapper workOrderMapper;
     private final EntityManager em;
-    private final EmailService2 emailService2;
-    private final WorkOrderCategoryService workOrderCategoryService;
     private WorkflowService workflowService;
     private final MessageSource messageSource;
     private final CustomSequenceService customSequenceService;
+    private final WorkOrderCostService workOrderCostService;
 
     @Value("${frontend.url}")
     private String frontendUrl;
@@ -95,15 +90,6 @@ public class WorkOrderService {
         return "WO" + String.format("%06d", nextSequence);
     }
 
-    @Autowired
-    public void setDeps(@Lazy LaborService laborService,
-                        @Lazy AdditionalCostService additionalCostService,
-                        @Lazy PartQuantityService partQuantityService) {
-        this.laborService = laborService;
-        this.additionalCostService = additionalCostService;
-        this.partQuantityService = partQuantityService;
-    }
-
     @Transactional
     public WorkOrder update(Long id, WorkOrderPatchDTO workOrder, OwnUser user) {
         if (workOrderRepository.existsById(id)) {
@@ -141,8 +127,9 @@ public class WorkOrderService {
         String message = messageSource.getMessage("notification_wo_assigned", new Object[]{workOrder.getTitle()},
                 locale);
         Collection<OwnUser> users = workOrder.getUsers();
-        notificationService.createMultiple(users.stream().map(user -> new Notification(message, user,
-                NotificationType.WORK_ORDER, workOrder.getId())).collect(Collectors.toList()), true, title);
+        outboxService.createNotifications("work_order_created:" + workOrder.getId() + ":notifications",
+                users.stream().map(user -> new Notification(message, user, NotificationType.WORK_ORDER,
+                        workOrder.getId())).collect(Collectors.toList()), true, title);
 
         Map<String, Object> mailVariables = new HashMap<String, Object>() {{
             put("workOrderLink", frontendUrl + "/app/work-orders/" + workOrder.getId());
@@ -152,7 +139,10 @@ public class WorkOrderService {
         Collection<OwnUser> usersToMail =
                 users.stream().filter(user -> user.isEnabled() && user.getUserSettings().shouldEmailUpdatesForWorkOrders()).collect(Collectors.toList());
         if (!usersToMail.isEmpty()) {
-            emailService2.sendMessageUsingThymeleafTemplate(usersToMail.stream().map(OwnUser::getEmail).toArray(String[]::new), messageSource.getMessage("new_wo", null, locale), mailVariables, "new-work-order.html", Helper.getLocale(users.stream().findFirst().get()));
+            outboxService.sendEmail("work_order_created:" + workOrder.getId() + ":email",
+                    usersToMail.stream().map(OwnUser::getEmail).toArray(String[]::new),
+                    messageSource.getMessage("new_wo", null, locale), mailVariables, "new-work-order.html",
+                    Helper.getLocale(users.stream().findFirst().get()));
         }
     }
 
@@ -161,7 +151,9 @@ public class WorkOrderService {
         String message = messageSource.getMessage("notification_wo_assigned", new Object[]{newWorkOrder.getTitle()},
                 Helper.getLocale(newWorkOrder.getCompany()));
         List<OwnUser> usersToNotify = oldWorkOrder.getNewUsersToNotify(newWorkOrder.getUsers());
-        notificationService.createMultiple(usersToNotify.stream().map(user ->
+        String idempotencyKey = "work_order_patched:" + newWorkOrder.getId() + ":" +
+                newWorkOrder.getUpdatedAt().getTime();
+        outboxService.createNotifications(idempotencyKey + ":notifications", usersToNotify.stream().map(user ->
                 new Notification(message, user, NotificationType.WORK_ORDER, newWorkOrder.getId())).collect(Collectors.toList()), true, title);
 
         Map<String, Object> mailVariables = new HashMap<String, Object>() {{
@@ -172,7 +164,10 @@ public class WorkOrderService {
         Collection<OwnUser> usersToMail =
                 usersToNotify.stream().filter(user -> user.isEnabled() && user.getUserSettings().shouldEmailUpdatesForWorkOrders()).collect(Collectors.toList());
         if (!usersToMail.isEmpty()) {
-            emailService2.sendMessageUsingThymeleafTemplate(usersToMail.stream().map(OwnUser::getEmail).toArray(String[]::new), messageSource.getMessage("new_wo", null, locale), mailVariables, "new-work-order.html", Helper.getLocale(usersToMail.stream().findFirst().get()));
+            outboxService.sendEmail(idempotencyKey + ":email",
+                    usersToMail.stream().map(OwnUser::getEmail).toArray(String[]::new),
+                    messageSource.getMessage("new_wo", null, locale), mailVariables, "new-work-order.html",
+                    Helper.getLocale(usersToMail.stream().findFirst().get()));
         }
     }
 
@@ -193,6 +188,13 @@ public class WorkOrderService {
         return workOrderRepository.findByLocation_Id(id);
     }
 
+    /**
+     * @return The work orders of the location and of all the locations under it
+     */
+    public Collection<WorkOrder> findByLocationSubtree(Location location) {
+        return workOrderRepository.findByLocation_PathStartingWith(location.getPath());
+    }
+
     public Page<WorkOrder> findBySearchCriteria(SearchCriteria searchCriteria) {
         SpecificationBuilder<WorkOrder> builder = new SpecificationBuilder<>();
         searchCriteria.getFilterFields().forEach(builder::with);
@@ -263,45 +265,20 @@ public class WorkOrderService {
     }
 
     public Pair<Long, Long> getLaborCostAndTime(Collection<WorkOrder> workOrders) {
-        Collection<Long> laborCostsArray = new ArrayList<>();
-        Collection<Long> laborTimesArray = new ArrayList<>();
-        workOrders.forEach(workOrder -> {
-                    Collection<Labor> labors = laborService.findByWorkOrder(workOrder.getId());
-                    long laborsCosts =
-                            labors.stream().mapToLong(labor -> labor.getHourlyRate() * labor.getDuration() / 3600).sum();
-                    long laborTimes = labors.stream().mapToLong(Labor::getDuration).sum();
-                    laborCostsArray.add(laborsCosts);
-                    laborTimesArray.add(laborTimes);
-                }
-        );
-        long laborCost = laborCostsArray.stream().mapToLong(value -> value).sum();
-        long laborTimes = laborTimesArray.stream().mapToLong(value -> value).sum();
-
-        return Pair.of(laborCost, laborTimes);
+        WOCostRollup costs = workOrderCostService.getCosts(workOrders);
+        return Pair.of(costs.getLaborCost(), costs.getLaborTime());
     }
 
     public double getAdditionalCost(Collection<WorkOrder> workOrders) {
-        Collection<Double> costs = workOrders.stream().map(workOrder -> {
-                    Collection<AdditionalCost> additionalCosts =
-                            additionalCostService.findByWorkOrder(workOrder.getId());
-                    return additionalCosts.stream().mapToDouble(Cost::getCost).sum();
-                }
-        ).collect(Collectors.toList());
-        return costs.stream().mapToDouble(value -> value).sum();
+        return workOrderCostService.getCosts(workOrders).getAdditionalCost();
     }
 
     public double getPartCost(Collection<WorkOrder> workOrders) {
-        Collection<Double> costs = workOrders.stream().map(workOrder -> {
-                    Collection<PartQuantity> partQuantities = partQuantityService.findByWorkOrder(workOrder.getId());
-                    return partQuantities.stream().mapToDouble(partQuantity -> partQuantity.getPart().getCost() * partQuantity.getQuantity()).sum();
-                }
-        ).collect(Collectors.toList());
-        return costs.stream().mapToDouble(value -> value).sum();
+        return workOrderCostService.getCosts(workOrders).getPartCost();
     }
 
     public double getAllCost(Collection<WorkOrder> workOrders, boolean includeLaborCost) {
-        return getPartCost(workOrders) + getAdditionalCost(workOrders) + (includeLaborCost ?
-                getLaborCostAndTime(workOrders).getFirst() : 0);
+        return workOrderCostService.getCosts(workOrders).getTotal(includeLaborCost);
     }
 
     public Collection<WorkOrder> findByCreatedBy(Long id) {
@@ -322,50 +299,37 @@ public class WorkOrderService {
         return workOrderRepository.findByDueDateBetweenAndCompany_Id(date1, date2, id);
     }
 
-    public void importWorkOrder(WorkOrder workOrder, WorkOrderImportDTO dto, Company company) {
-        Long companySettingsId = company.getCompanySettings().getId();
-        Long companyId = company.getId();
+    public void importWorkOrder(WorkOrder workOrder, WorkOrderImportDTO dto, ImportContext context,
+                                String customId) {
         workOrder.setDueDate(Helper.getDateFromExcelDate(dto.getDueDate()));
         workOrder.setPriority(Priority.getPriorityFromString(dto.getPriority()));
         workOrder.setEstimatedDuration(dto.getEstimatedDuration());
         workOrder.setDescription(dto.getDescription());
         workOrder.setTitle(dto.getTitle());
-        workOrder.setCustomId(getWorkOrderNumber(company));
+        if (workOrder.getCustomId() == null) workOrder.setCustomId(customId);
         workOrder.setRequiredSignature(Helper.getBooleanFromString(dto.getRequiredSignature()));
-        Optional<WorkOrderCategory> optionalWorkOrderCategory =
-                workOrderCategoryService.findByNameIgnoreCaseAndCompanySettings(dto.getCategory(), companySettingsId);
-        optionalWorkOrderCategory.ifPresent(workOrder::setCategory);
-        Optional<Location> optionalLocation = locationService.findByNameIgnoreCaseAndCompany(dto.getLocationName(),
-                companyId).stream().findFirst();
-        optionalLocation.ifPresent(workOrder::setLocation);
-        Optional<Team> optionalTeam = teamService.findByNameIgnoreCaseAndCompany(dto.getTeamName(), companyId);
-        optionalTeam.ifPresent(workOrder::setTeam);
-        Optional<OwnUser> optionalPrimaryUser = userService.findByEmailAndCompany(dto.getPrimaryUserEmail(), companyId);
-        optionalPrimaryUser.ifPresent(workOrder::setPrimaryUser);
-        List<OwnUser> assignedTo = new ArrayList<>();
-        dto.getAssignedToEmails().forEach(email -> {
-            Optional<OwnUser> optionalUser1 = userService.findByEmailAndCompany(email, companyId);
-            optionalUser1.ifPresent(assignedTo::add);
-        });
-        workOrder.setAssignedTo(assignedTo);
-        Optional<Asset> optionalAsset =
-                assetService.findByNameIgnoreCaseAndCompany(dto.getAssetName(), companyId).stream().findFirst();
-        optionalAsset.ifPresent(workOrder::setAsset);
-        Optional<OwnUser> optionalCompletedBy = userService.findByEmailAndCompany(dto.getCompletedByEmail(), companyId);
-        optionalCompletedBy.ifPresent(workOrder::setCompletedBy);
+        context.find(WorkOrderCategory.class, dto.getCategory()).ifPresent(workOrder::setCategory);
+        context.find(Location.class, dto.getLocationName()).ifPresent(workOrder::setLocation);
+        context.find(Team.class, dto.getTeamName()).ifPresent(workOrder::setTeam);
+        context.find(OwnUser.class, dto.getPrimaryUserEmail()).ifPresent(workOrder::setPrimaryUser);
+        workOrder.setAssignedTo(context.findAll(OwnUser.class, dto.getAssignedToEmails()));
+        context.find(Asset.class, dto.getAssetName()).ifPresent(workOrder::setAsset);
+        context.find(OwnUser.class, dto.getCompletedByEmail()).ifPresent(workOrder::setCompletedBy);
         workOrder.setCompletedOn(dto.getCompletedOn() == null ? null : Helper.addSeconds(new Date(), 60 * 10));
         workOrder.setArchived(Helper.getBooleanFromString(dto.getArchived()));
         workOrder.setStatus(Status.getStatusFromString(dto.getStatus()));
         workOrder.setFeedback(dto.getFeedback());
-        List<Customer> customers = new ArrayList<>();
-        dto.getCustomersNames().forEach(name -> {
-            Optional<Customer> optionalCustomer = customerService.findByNameIgnoreCaseAndCompany(name, companyId);
-            optionalCustomer.ifPresent(customers::add);
-        });
-        workOrder.setCustomers(customers);
+        workOrder.setCustomers(context.findAll(Customer.class, dto.getCustomersNames()));
         workOrderRepository.save(workOrder);
     }
 
+    public List<String> getWorkOrderNumbers(Company company, int count) {
+        Long firstSequence = customSequenceService.reserveWorkOrderSequences(company, count);
+        return LongStream.range(firstSequence, firstSequence + count)
+                .mapToObj(sequence -> "WO" + String.format("%06d", sequence))
+                .collect(Collectors.toList());
+    }
+
     public Collection<WorkOrder> findByCreatedByAndCreatedAtBetween(Long id, Date date1, Date date2) {
         return workOrderRepository.findByCreatedByAndCreatedAtBetween(id, date1, date2);
     }
@@ -1,28 +1,28 @@
 package com.grash.utils;
 
+import com.grash.exception.CustomException;
 import com.grash.model.*;
-import com.grash.service.AssetDowntimeService;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.springframework.context.MessageSource;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
 public class CsvFileGenerator {
     private final MessageSource messageSource;
-    private final AssetDowntimeService assetDowntimeService;
 
-    public void writeWorkOrdersToCsv(Collection<WorkOrder> workOrders, Writer writer, Locale locale) {
+    public void writeWorkOrdersToCsv(Iterable<WorkOrder> workOrders, Writer writer, Locale locale) {
         try {
             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
             List<String> headers = Arrays.asList("ID", "Title", "Status", "Priority", "Description", "Due_Date", "Estimated_Duration", "Requires_Signature", "Category", "Location_Name", "Team_Name", "Primary_User_Email", "Assigned_To_Emails", "Asset_Name", "Completed_By_Email", "Completed_On", "Archived", "Feedback", "Customers", "Created_At");
@@ -52,11 +52,12 @@ public class CsvFileGenerator {
             }
             writer.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new CustomException("Error writing CSV: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
-    public void writeAssetsToCsv(Collection<Asset> assets, Writer writer, Locale locale) {
+    public void writeAssetsToCsv(Iterable<Asset> assets, Map<Long, Long> downtimeDurations, Writer writer,
+                                 Locale locale) {
         try {
             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
             List<String> headers = Arrays.asList("ID", "Name",
@@ -80,10 +81,8 @@ public class CsvFileGenerator {
                     "Downtime_Duration");
             printer.printRecord(headers.stream().map(header -> messageSource.getMessage(header, null, locale)).collect(Collectors.toList()));
             for (Asset asset : assets) {
-                Collection<AssetDowntime> downtimes = assetDowntimeService.findByAsset(asset.getId());
-                long downTimeDuration = downtimes.stream().map(AssetDowntime::getDuration)
-                        .reduce(0L, Long::sum);
-                
+                long downTimeDuration = downtimeDurations.getOrDefault(asset.getId(), 0L);
+
                 printer.printRecord(asset.getId(),
                         asset.getName(),
                         asset.getDescription(),
@@ -108,11 +107,11 @@ public class CsvFileGenerator {
             }
             writer.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new CustomException("Error writing CSV: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
-    public void writeLocationsToCsv(Collection<Location> locations, Writer writer, Locale locale) {
+    public void writeLocationsToCsv(Iterable<Location> locations, Writer writer, Locale locale) {
         try {
             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
             List<String> headers = Arrays.asList("ID", "Name",
@@ -136,11 +135,11 @@ public class CsvFileGenerator {
             }
             writer.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new CustomException("Error writing CSV: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
-    public void writePartsToCsv(Collection<Part> parts, Writer writer, Locale locale) {
+    public void writePartsToCsv(Iterable<Part> parts, Writer writer, Locale locale) {
         try {
             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
             List<String> headers = Arrays.asList("ID", "Name",
@@ -179,11 +178,11 @@ public class CsvFileGenerator {
             }
             writer.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new CustomException("Error writing CSV: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
-    public void writeMetersToCsv(Collection<Meter> meters, Writer writer, Locale locale) {
+    public void writeMetersToCsv(Iterable<Meter> meters, Writer writer, Locale locale) {
         try {
             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
             List<String> headers = Arrays.asList("ID", "Name",
@@ -207,7 +206,7 @@ public class CsvFileGenerator {
             }
             writer.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new CustomException("Error writing CSV: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 }
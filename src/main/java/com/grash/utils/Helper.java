@@ -27,11 +27,17 @@ import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class Helper {
+    /**
+     * The most values bound to an IN clause, to stay under the bind parameters limit of the driver
+     */
+    public static final int IN_CLAUSE_CHUNK_SIZE = 1000;
 
     public String generateString() {
         return UUID.randomUUID().toString();
@@ -90,6 +96,29 @@ public class Helper {
         return result;
     }
 
+    /**
+     * The occurrences of a schedule repeating every {@code days} days from {@code startsOn}, between {@code from} and
+     * {@code to} included. It jumps to the first occurrence in the range instead of iterating from {@code startsOn}.
+     * Like {@link #incrementDays(Date, int)}, occurrences keep their time of day across daylight saving changes. Each
+     * one is computed from {@code startsOn}, so one moved out of a skipped hour doesn't move the next ones.
+     */
+    public static List<Date> getOccurrences(Date startsOn, int days, Date from, Date to) {
+        List<Date> occurrences = new ArrayList<>();
+        ZonedDateTime start = startsOn.toInstant().atZone(ZoneId.systemDefault());
+        ZonedDateTime rangeStart = from.toInstant().atZone(ZoneId.systemDefault());
+        long index = 0;
+        if (start.isBefore(rangeStart)) {
+            index = ChronoUnit.DAYS.between(start, rangeStart) / days;
+            if (start.plusDays(index * days).isBefore(rangeStart)) index++;
+        }
+        ZonedDateTime occurrence = start.plusDays(index * days);
+        while (!occurrence.toInstant().isAfter(to.toInstant())) {
+            occurrences.add(Date.from(occurrence.toInstant()));
+            occurrence = start.plusDays(++index * days);
+        }
+        return occurrences;
+    }
+
     public static Date localDateToDate(LocalDate localDate) {
         return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
     }
@@ -175,6 +204,28 @@ public class Helper {
         return stringBuilder.toString();
     }
 
+    /**
+     * @return The values split in chunks of at most {@link #IN_CLAUSE_CHUNK_SIZE}, each bound to the IN clause of a
+     * separate query
+     */
+    public static <T> List<List<T>> inClauseChunks(Collection<T> values) {
+        List<T> list = new ArrayList<>(values);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+            chunks.add(list.subList(i, Math.min(i + IN_CLAUSE_CHUNK_SIZE, list.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * @return The ids of a hierarchy path like {@code /1/5/12/}, from the root down
+     */
+    public static List<Long> getPathIds(String path) {
+        if (path == null) return new ArrayList<>();
+        return Arrays.stream(path.split("/")).filter(id -> !id.isEmpty()).map(Long::valueOf)
+                .collect(Collectors.toList());
+    }
+
     public static boolean getBooleanFromString(String string) {
         List<String> trues = Arrays.asList("true", "Yes", "Oui", "Evet");
         return trues.stream().anyMatch(value -> value.equalsIgnoreCase(string));
@@ -0,0 +1,96 @@
+package com.grash.security;
+
+import com.grash.model.OwnUser;
+import com.grash.model.Role;
+import com.grash.model.enums.RoleType;
+import com.grash.repository.UserRepository;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.FilterChain;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Authenticates a request through {@link JwtTokenFilter}, the user being loaded from a stubbed repository, against
+ * the former filter which verified the token twice per request. Not run by the build, run it with {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtTokenFilterBenchmark {
+    private static final String SECRET_KEY = "benchmark-secret-key";
+    private static final FilterChain CHAIN = (request, response) -> {
+    };
+
+    private CustomUserDetailsService userDetailsService;
+    private JwtTokenFilter jwtTokenFilter;
+    private String token;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        OwnUser user = new OwnUser();
+        user.setEmail("user@example.com");
+        Role role = new Role();
+        role.setRoleType(RoleType.ROLE_CLIENT);
+        user.setRole(role);
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findByEmailIgnoreCase(user.getEmail())).thenReturn(Optional.of(user));
+        userDetailsService = new CustomUserDetailsService(userRepository);
+        JwtTokenProvider jwtTokenProvider = new JwtTokenProvider(userDetailsService);
+        ReflectionTestUtils.setField(jwtTokenProvider, "secretKey", SECRET_KEY);
+        jwtTokenFilter = new JwtTokenFilter(jwtTokenProvider);
+        token = jwtTokenProvider.createToken(user.getEmail(), Collections.singletonList(RoleType.ROLE_CLIENT));
+        request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        response = new MockHttpServletResponse();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public Authentication filter() throws Exception {
+        jwtTokenFilter.doFilterInternal(request, response, CHAIN);
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    /**
+     * validateToken then getUsername, each parsing and verifying the token
+     */
+    @Benchmark
+    public Authentication formerFilter() {
+        Jwts.parser().setSigningKey(SECRET_KEY).parseClaimsJws(token);
+        String username = Jwts.parser().setSigningKey(SECRET_KEY).parseClaimsJws(token).getBody().getSubject();
+        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        Authentication authentication = new UsernamePasswordAuthenticationToken(userDetails, "",
+                userDetails.getAuthorities());
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        return authentication;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtTokenFilterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
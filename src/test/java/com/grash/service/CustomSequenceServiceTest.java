@@ -0,0 +1,179 @@
+package com.grash.service;
+
+import com.grash.model.Company;
+import com.grash.repository.CustomSequenceRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import liquibase.integration.spring.SpringLiquibase;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.*;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reserves custom id numbers from several threads on two nodes, each node being a Spring context with its own
+ * connection pool, against an embedded PostgreSQL migrated by the application's changelog.
+ */
+class CustomSequenceServiceTest {
+    private static final int NODES = 2;
+    private static final int THREADS_PER_NODE = 8;
+    private static final int RESERVATIONS_PER_THREAD = 50;
+    private static final AtomicLong companyIds = new AtomicLong(1000);
+
+    private static EmbeddedPostgres postgres;
+    private static JdbcTemplate jdbcTemplate;
+    private static final List<AnnotationConfigApplicationContext> nodes = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(postgres.getPostgresDatabase());
+        liquibase.setChangeLog("classpath:/db/master.xml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+        for (int i = 0; i < NODES; i++) {
+            AnnotationConfigApplicationContext node = new AnnotationConfigApplicationContext();
+            node.registerBean(DataSource.class, CustomSequenceServiceTest::newPool);
+            node.register(NodeConfig.class);
+            node.refresh();
+            nodes.add(node);
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        nodes.forEach(AnnotationConfigApplicationContext::close);
+        postgres.close();
+    }
+
+    @Test
+    void concurrentReservationsAreUniqueAndWithoutGaps() throws Exception {
+        // no sequence row yet, so the first reservations also race to create it
+        Company company = newCompany();
+        ExecutorService executor = Executors.newFixedThreadPool(NODES * THREADS_PER_NODE);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (AnnotationConfigApplicationContext node : nodes) {
+            CustomSequenceService customSequenceService = node.getBean(CustomSequenceService.class);
+            for (int thread = 0; thread < THREADS_PER_NODE; thread++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    List<Long> numbers = new ArrayList<>();
+                    for (int i = 0; i < RESERVATIONS_PER_THREAD; i++) {
+                        if (i % 2 == 0) {
+                            numbers.add(customSequenceService.getNextWorkOrderSequence(company));
+                        } else {
+                            int count = 1 + i % 5;
+                            long first = customSequenceService.reserveWorkOrderSequences(company, count);
+                            LongStream.range(first, first + count).forEach(numbers::add);
+                        }
+                    }
+                    return numbers;
+                }));
+            }
+        }
+        start.countDown();
+        List<Long> numbers = new ArrayList<>();
+        for (Future<List<Long>> result : results) {
+            numbers.addAll(result.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertThat(numbers).doesNotHaveDuplicates();
+        assertThat(numbers.stream().sorted().collect(Collectors.toList()))
+                .isEqualTo(LongStream.rangeClosed(1, numbers.size()).boxed().collect(Collectors.toList()));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM custom_sequence WHERE company_id = ?",
+                Long.class, company.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void numberOfARolledBackCallerIsNotReused() {
+        Company company = newCompany();
+        AnnotationConfigApplicationContext node = nodes.get(0);
+        CustomSequenceService customSequenceService = node.getBean(CustomSequenceService.class);
+        TransactionTemplate transactionTemplate =
+                new TransactionTemplate(node.getBean(PlatformTransactionManager.class));
+
+        Long rolledBack = transactionTemplate.execute(status -> {
+            Long number = customSequenceService.getNextAssetSequence(company);
+            status.setRollbackOnly();
+            return number;
+        });
+
+        assertThat(customSequenceService.getNextAssetSequence(company)).isEqualTo(rolledBack + 1);
+    }
+
+    @Test
+    void countersAreIndependent() {
+        Company company = newCompany();
+        CustomSequenceService customSequenceService = nodes.get(0).getBean(CustomSequenceService.class);
+
+        assertThat(customSequenceService.reserveLocationSequences(company, 10)).isEqualTo(1);
+        assertThat(customSequenceService.getNextRequestSequence(company)).isEqualTo(1);
+        assertThat(customSequenceService.getNextPreventiveMaintenanceSequence(company)).isEqualTo(1);
+        assertThat(customSequenceService.getNextLocationSequence(company)).isEqualTo(11);
+    }
+
+    private static Company newCompany() {
+        Company company = new Company();
+        company.setId(companyIds.incrementAndGet());
+        jdbcTemplate.update("INSERT INTO company (id, employees_count, created_at, updated_at) " +
+                "VALUES (?, 0, now(), now())", company.getId());
+        return company;
+    }
+
+    private static DataSource newPool() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        dataSource.setMaximumPoolSize(THREADS_PER_NODE + 2);
+        return dataSource;
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = CustomSequenceRepository.class,
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                    classes = CustomSequenceRepository.class))
+    @Import(CustomSequenceService.class)
+    static class NodeConfig {
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+            entityManagerFactory.setDataSource(dataSource);
+            entityManagerFactory.setPackagesToScan("com.grash.model");
+            entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("hibernate.dialect", PostgreSQLDialect.class.getName());
+            properties.put("hibernate.id.new_generator_mappings", false);
+            entityManagerFactory.setJpaPropertyMap(properties);
+            return entityManagerFactory;
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.grash.service;
+
+import com.grash.exception.CustomException;
+import com.grash.factory.StorageServiceFactory;
+import com.grash.model.File;
+import com.grash.model.enums.FileType;
+import com.grash.repository.FileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Uploads files through an upload executor of one thread and a queue of one, the storage taking a while per file
+ */
+@ExtendWith(MockitoExtension.class)
+class FileServiceTest {
+    @Mock
+    private FileRepository fileRepository;
+    @Mock
+    private StorageServiceFactory storageServiceFactory;
+    @Mock
+    private StorageService storageService;
+    @Mock
+    private ImageDerivativeService imageDerivativeService;
+
+    private ThreadPoolTaskExecutor uploadExecutor;
+    private FileService fileService;
+
+    @BeforeEach
+    void setUp() {
+        uploadExecutor = new ThreadPoolTaskExecutor();
+        uploadExecutor.setCorePoolSize(1);
+        uploadExecutor.setMaxPoolSize(1);
+        uploadExecutor.setQueueCapacity(1);
+        uploadExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        uploadExecutor.initialize();
+        fileService = new FileService(fileRepository, storageServiceFactory, imageDerivativeService);
+        fileService.setDeps(null, null, null, null, null, uploadExecutor);
+        when(storageServiceFactory.getStorageService()).thenReturn(storageService);
+        when(storageService.upload(any(MultipartFile.class), anyString())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return "folder/" + invocation.<MultipartFile>getArgument(0).getOriginalFilename();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadExecutor.shutdown();
+    }
+
+    @Test
+    void uploadsAndSavesTheFilesInOrder() {
+        when(fileRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<File> files = fileService.upload(files(2), "folder", FileType.OTHER, null, false);
+
+        assertThat(files).extracting(File::getPath).containsExactly("folder/file0.txt", "folder/file1.txt");
+        verify(imageDerivativeService).generate(files);
+    }
+
+    @Test
+    void uploadsBeyondTheQueueAreRejectedAndTheOthersDeleted() {
+        assertThatThrownBy(() -> fileService.upload(files(3), "folder", FileType.OTHER, null, false))
+                .isInstanceOfSatisfying(CustomException.class, e ->
+                        assertThat(e.getHttpStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+
+        // the first two were running or queued, so they are waited for then deleted
+        verify(storageService).delete("folder/file0.txt");
+        verify(storageService).delete("folder/file1.txt");
+        verify(storageService, times(2)).upload(any(MultipartFile.class), anyString());
+        verify(fileRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void failedUploadDeletesTheOthers() {
+        when(storageService.upload(argThat((MultipartFile file) -> file.getOriginalFilename().equals("file1.txt")),
+                anyString())).thenThrow(new CustomException("Storage unavailable", HttpStatus.BAD_GATEWAY));
+
+        assertThatThrownBy(() -> fileService.upload(files(2), "folder", FileType.OTHER, null, false))
+                .isInstanceOf(CustomException.class).hasMessage("Storage unavailable");
+
+        verify(storageService).delete("folder/file0.txt");
+        verify(fileRepository, never()).saveAll(anyList());
+    }
+
+    private static MultipartFile[] files(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new MockMultipartFile("files", "file" + i + ".txt",
+                "text/plain", new byte[]{1})).toArray(MultipartFile[]::new);
+    }
+}
@@ -0,0 +1,236 @@
+package com.grash.service;
+
+import com.grash.dto.imports.AssetImportDTO;
+import com.grash.dto.imports.ImportResponse;
+import com.grash.mapper.AssetMapper;
+import com.grash.model.Asset;
+import com.grash.model.Company;
+import com.grash.model.Location;
+import com.grash.repository.AssetRepository;
+import com.grash.repository.CustomSequenceRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import liquibase.integration.spring.SpringLiquibase;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.context.MessageSource;
+import org.springframework.context.annotation.*;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Imports assets into an embedded PostgreSQL migrated by the application's changelog, with the entity manager bound
+ * to the calling thread like the open-in-view one of a request. The benchmark logs the time of a large import.
+ */
+@Slf4j
+class ImportServiceTest {
+    private static final int LOCATIONS = 50;
+    private static final int ASSETS = 5000;
+    private static final AtomicLong companyIds = new AtomicLong(1000);
+
+    private static EmbeddedPostgres postgres;
+    private static AnnotationConfigApplicationContext context;
+    private static JdbcTemplate jdbcTemplate;
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager requestEntityManager;
+    private ImportService importService;
+    private Company company;
+
+    @BeforeAll
+    static void setUpDatabase() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(postgres.getPostgresDatabase());
+        liquibase.setChangeLog("classpath:/db/master.xml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(DataSource.class, ImportServiceTest::newPool);
+        for (Class<?> mocked : Arrays.asList(FileService.class, DeprecationService.class, NotificationService.class,
+                AssetMapper.class, AssetDowntimeService.class, MessageSource.class, WorkOrderCostService.class,
+                LaborService.class, WorkOrderService.class, LocationService.class, PartService.class,
+                MeterService.class)) {
+            registerMock(mocked);
+        }
+        context.register(ImportConfig.class);
+        context.refresh();
+    }
+
+    @AfterAll
+    static void tearDownDatabase() throws Exception {
+        context.close();
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        importService = context.getBean(ImportService.class);
+        TransactionTemplate transactionTemplate =
+                new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        company = new Company();
+        company.setId(companyIds.incrementAndGet());
+        company.getCompanySettings().setId(company.getId());
+        jdbcTemplate.update("INSERT INTO company (id, employees_count, created_at, updated_at) " +
+                "VALUES (?, 0, now(), now())", company.getId());
+        transactionTemplate.executeWithoutResult(status -> {
+            EntityManager em = context.getBean(EntityManager.class);
+            for (int i = 0; i < LOCATIONS; i++) {
+                Location location = new Location();
+                location.setName("Location " + i);
+                location.setCompany(em.getReference(Company.class, company.getId()));
+                em.persist(location);
+            }
+        });
+        requestEntityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory,
+                new EntityManagerHolder(requestEntityManager));
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+        requestEntityManager.close();
+    }
+
+    @Test
+    void importsAssetsInBulk() {
+        // every fifth asset is a child of the one before it, in a later chunk when it crosses a chunk boundary
+        List<AssetImportDTO> toImport = IntStream.range(0, ASSETS).mapToObj(i -> AssetImportDTO.builder()
+                .name("Asset " + i)
+                .locationName("location " + i % LOCATIONS)
+                .parentAssetName(i % 5 == 4 ? "Asset " + (i - 1) : null)
+                .barCode("BC" + i)
+                .build()).collect(Collectors.toList());
+
+        long start = System.nanoTime();
+        ImportResponse response = importService.importAssets(toImport, company);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Imported {} assets in {} ms ({} rows/s)", ASSETS, elapsedMillis, ASSETS * 1000L / elapsedMillis);
+
+        assertThat(response.getErrors()).isEmpty();
+        assertThat(response.getCreated()).isEqualTo(ASSETS);
+        assertThat(requestEntityManager.unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+        assertThat(countAssets("location_id IS NOT NULL")).isEqualTo(ASSETS);
+        assertThat(countAssets("parent_asset_id IS NOT NULL")).isEqualTo(ASSETS / 5);
+        assertThat(jdbcTemplate.queryForList("SELECT custom_id FROM asset WHERE company_id = ?", String.class,
+                company.getId())).doesNotHaveDuplicates().doesNotContainNull();
+    }
+
+    @Test
+    void invalidRowsAreReportedAndTheOthersImported() {
+        List<AssetImportDTO> toImport = IntStream.range(0, 1200).mapToObj(i -> AssetImportDTO.builder()
+                .name("Asset " + i)
+                .barCode(i == 700 ? "BC1" : "BC" + i)
+                .build()).collect(Collectors.toList());
+
+        ImportResponse response = importService.importAssets(toImport, company);
+
+        // the first of the two rows imported gets the barcode, the order of the rows without parent is not kept
+        assertThat(response.getErrors()).extracting("row").hasSize(1).containsAnyOf(1, 700);
+        assertThat(response.getCreated()).isEqualTo(1199);
+        assertThat(countAssets("TRUE")).isEqualTo(1199);
+    }
+
+    @Test
+    void importingAgainUpdatesTheRows() {
+        importService.importAssets(Collections.singletonList(AssetImportDTO.builder().name("Pump").build()),
+                company);
+        Asset asset = context.getBean(AssetRepository.class).findAll().stream()
+                .filter(saved -> saved.getCompany().getId().equals(company.getId())).findFirst().orElseThrow();
+
+        ImportResponse response = importService.importAssets(Collections.singletonList(AssetImportDTO.builder()
+                .id(asset.getId()).name("Main pump").build()), company);
+
+        assertThat(response.getUpdated()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT name FROM asset WHERE id = ?", String.class, asset.getId()))
+                .isEqualTo("Main pump");
+        assertThat(jdbcTemplate.queryForObject("SELECT custom_id FROM asset WHERE id = ?", String.class,
+                asset.getId())).isEqualTo(asset.getCustomId());
+    }
+
+    private long countAssets(String condition) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM asset WHERE company_id = ? AND " + condition,
+                Long.class, company.getId());
+    }
+
+    /**
+     * Registered as a singleton, so that the injection methods of the mocked class aren't called
+     */
+    private static void registerMock(Class<?> type) {
+        context.getBeanFactory().registerSingleton(type.getSimpleName(), mock(type));
+    }
+
+    private static DataSource newPool() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        dataSource.setMaximumPoolSize(4);
+        return dataSource;
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaAuditing
+    @EnableJpaRepositories(basePackageClasses = AssetRepository.class,
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                    classes = {AssetRepository.class, CustomSequenceRepository.class}))
+    @Import({ImportService.class, AssetService.class, CustomSequenceService.class})
+    static class ImportConfig {
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+            entityManagerFactory.setDataSource(dataSource);
+            entityManagerFactory.setPackagesToScan("com.grash.model");
+            entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            // the ones of Spring Boot and application.yml
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("hibernate.physical_naming_strategy", SpringPhysicalNamingStrategy.class.getName());
+            properties.put("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+            properties.put("hibernate.dialect", PostgreSQLDialect.class.getName());
+            properties.put("hibernate.id.new_generator_mappings", false);
+            properties.put("hibernate.enable_lazy_load_no_trans", true);
+            properties.put("hibernate.default_batch_fetch_size", 100);
+            properties.put("hibernate.jdbc.batch_size", 50);
+            properties.put("hibernate.order_inserts", true);
+            properties.put("hibernate.order_updates", true);
+            entityManagerFactory.setJpaPropertyMap(properties);
+            return entityManagerFactory;
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.grash.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sends the queued mails to a GreenMail SMTP server
+ */
+class MailQueueServiceTest {
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private JavaMailSenderImpl mailSender;
+    private MailQueueService mailQueueService;
+
+    @BeforeEach
+    void setUp() {
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost(ServerSetupTest.SMTP.getBindAddress());
+        mailSender.setPort(ServerSetupTest.SMTP.getPort());
+        mailQueueService = new MailQueueService(mailSender, 50, 10, 20);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mailQueueService.shutdown();
+    }
+
+    @Test
+    void sendsTheQueuedMails() throws MessagingException {
+        for (int i = 0; i < 15; i++) {
+            mailQueueService.enqueue(message("user" + i + "@example.com", "Mail " + i));
+        }
+
+        assertThat(greenMail.waitForIncomingEmail(10_000, 15)).isTrue();
+        assertThat(Arrays.stream(greenMail.getReceivedMessages()).map(this::getSubject).collect(Collectors.toSet()))
+                .hasSize(15);
+    }
+
+    @Test
+    void sendsAtMostMaxPerSecondMails() throws MessagingException {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 25; i++) {
+            mailQueueService.enqueue(message("user@example.com", "Mail " + i));
+        }
+
+        assertThat(greenMail.waitForIncomingEmail(10_000, 25)).isTrue();
+        // 10 mails right away, 10 after a second and the last 5 after two seconds
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(1_500);
+    }
+
+    @Test
+    void shutdownSendsTheQueuedMails() throws MessagingException {
+        for (int i = 0; i < 20; i++) {
+            mailQueueService.enqueue(message("user@example.com", "Mail " + i));
+        }
+
+        mailQueueService.shutdown();
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(20);
+    }
+
+    @Test
+    void shutdownRetriesTheFailedMailsWithoutWaitingForTheirDelay() throws Exception {
+        greenMail.stop();
+        mailQueueService.enqueue(message("user@example.com", "Retried"));
+        // the first attempt fails and the mail is queued again for 30 seconds later
+        Thread.sleep(2_000);
+        greenMail.start();
+
+        mailQueueService.shutdown();
+
+        assertThat(greenMail.getReceivedMessages()).extracting(this::getSubject).containsExactly("Retried");
+    }
+
+    @Test
+    void mailsQueuedAfterShutdownAreDropped() throws MessagingException {
+        mailQueueService.shutdown();
+
+        mailQueueService.enqueue(message("user@example.com", "Dropped"));
+
+        assertThat(greenMail.waitForIncomingEmail(1_000, 1)).isFalse();
+    }
+
+    private MimeMessage message(String to, String subject) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+        helper.setFrom("noreply@example.com");
+        helper.setTo(to);
+        helper.setSubject(subject);
+        helper.setText("Body");
+        return message;
+    }
+
+    private String getSubject(MimeMessage message) {
+        try {
+            return message.getSubject();
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
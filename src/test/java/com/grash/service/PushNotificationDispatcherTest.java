@@ -0,0 +1,159 @@
+package com.grash.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Sends the push notifications to a local HTTP stub of the Expo push endpoint
+ */
+@ExtendWith(MockitoExtension.class)
+class PushNotificationDispatcherTest {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private PushNotificationTokenService pushNotificationTokenService;
+
+    private HttpServer expo;
+    private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+    private final Set<String> unregisteredTokens = Collections.synchronizedSet(new HashSet<>());
+    private PushNotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        expo = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        expo.createContext("/push/send", this::handleSend);
+        expo.start();
+        dispatcher = new PushNotificationDispatcher(pushNotificationTokenService, new SyncTaskExecutor(), "",
+                "http://localhost:" + expo.getAddress().getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+        expo.stop(1);
+    }
+
+    @Test
+    void sendsTheMessagesInChunksExpoAccepts() {
+        Map<Long, String> tokens = tokens(250);
+        when(pushNotificationTokenService.findTokensByUsers(tokens.keySet())).thenReturn(tokens);
+
+        dispatcher.send(tokens.keySet(), "Title", "Body", Collections.emptyMap());
+        dispatcher.shutdown();
+        awaitMessages(250);
+
+        assertThat(requests).allSatisfy(request -> assertThat(request).hasSizeLessThanOrEqualTo(
+                PushNotificationDispatcher.CHUNK_SIZE));
+        assertThat(requests.stream().flatMap(List::stream).collect(Collectors.toList()))
+                .containsExactlyInAnyOrderElementsOf(tokens.values());
+        verify(pushNotificationTokenService, never()).deleteByTokens(any());
+    }
+
+    @Test
+    void notificationsOfConcurrentCallsShareTheRequests() {
+        Map<Long, String> tokens = tokens(10);
+        tokens.forEach((userId, token) -> when(pushNotificationTokenService.findTokensByUsers(
+                Collections.singletonList(userId))).thenReturn(Collections.singletonMap(userId, token)));
+
+        tokens.keySet().forEach(userId -> dispatcher.send(Collections.singletonList(userId), "Title", "Body",
+                Collections.emptyMap()));
+        dispatcher.shutdown();
+        awaitMessages(10);
+
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0)).containsExactlyInAnyOrderElementsOf(tokens.values());
+    }
+
+    @Test
+    void deletesTheTokensOfUnregisteredDevices() {
+        Map<Long, String> tokens = tokens(150);
+        List<String> unregistered = tokens.values().stream().filter(token -> token.hashCode() % 3 == 0)
+                .collect(Collectors.toList());
+        unregisteredTokens.addAll(unregistered);
+        when(pushNotificationTokenService.findTokensByUsers(tokens.keySet())).thenReturn(tokens);
+
+        dispatcher.send(tokens.keySet(), "Title", "Body", Collections.emptyMap());
+        dispatcher.shutdown();
+        awaitMessages(150);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(pushNotificationTokenService, timeout(5_000).atLeastOnce()).deleteByTokens(deleted.capture());
+        assertThat(deleted.getAllValues().stream().flatMap(Collection::stream).collect(Collectors.toList()))
+                .containsExactlyInAnyOrderElementsOf(unregistered);
+    }
+
+    @Test
+    void ignoresTheInvalidTokens() {
+        Map<Long, String> tokens = Collections.singletonMap(1L, "not-an-expo-token");
+        when(pushNotificationTokenService.findTokensByUsers(tokens.keySet())).thenReturn(tokens);
+
+        dispatcher.send(tokens.keySet(), "Title", "Body", Collections.emptyMap());
+        dispatcher.shutdown();
+
+        assertThat(requests).isEmpty();
+        verify(pushNotificationTokenService, never()).deleteByTokens(anyCollection());
+    }
+
+    /**
+     * Answers with one ticket per message, in the same order, like Expo
+     */
+    private void handleSend(HttpExchange exchange) throws IOException {
+        List<String> to = new ArrayList<>();
+        for (JsonNode message : objectMapper.readTree(exchange.getRequestBody())) {
+            message.get("to").forEach(token -> to.add(token.asText()));
+        }
+        requests.add(to);
+        List<Map<String, Object>> tickets = to.stream().map(token -> unregisteredTokens.contains(token) ?
+                        Map.<String, Object>of("status", "error", "message", token + " is not registered",
+                                "details", Map.of("error", "DeviceNotRegistered")) :
+                        Map.<String, Object>of("status", "ok", "id", UUID.randomUUID().toString()))
+                .collect(Collectors.toList());
+        byte[] response = objectMapper.writeValueAsString(Map.of("data", tickets)).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(response);
+        }
+    }
+
+    /**
+     * The flush only starts the HTTP calls
+     */
+    private void awaitMessages(int count) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (requests.stream().mapToInt(List::size).sum() < count && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static Map<Long, String> tokens(int count) {
+        return LongStream.rangeClosed(1, count).boxed().collect(Collectors.toMap(userId -> userId,
+                userId -> "ExponentPushToken[" + UUID.randomUUID() + "]", (token1, token2) -> token1,
+                LinkedHashMap::new));
+    }
+}
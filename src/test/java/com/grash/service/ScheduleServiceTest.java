@@ -0,0 +1,228 @@
+package com.grash.service;
+
+import com.grash.job.PreventiveMaintenanceJob;
+import com.grash.job.PreventiveMaintenanceNotificationJob;
+import com.grash.mapper.ScheduleMapper;
+import com.grash.model.Company;
+import com.grash.model.PreventiveMaintenance;
+import com.grash.model.Schedule;
+import com.grash.model.WorkOrder;
+import com.grash.repository.ScheduleRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.quartz.Job;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.springframework.context.MessageSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the schedules on a clustered JDBC job store backed by an in-memory H2 database, like the PostgreSQL one of
+ * the application. A node being down is simulated by moving the stored fire times of a trigger to the past before
+ * the scheduler starts.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ScheduleServiceTest {
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final Long SCHEDULE_ID = 1L;
+
+    @Mock
+    private ScheduleRepository scheduleRepository;
+    @Mock
+    private PreventiveMaintenanceService preventiveMaintenanceService;
+    @Mock
+    private ScheduleMapper scheduleMapper;
+    @Mock
+    private MessageSource messageSource;
+    @Mock
+    private EmailService2 emailService2;
+    @Mock
+    private WorkOrderService workOrderService;
+    @Mock
+    private TaskService taskService;
+    @Mock
+    private UserService userService;
+
+    private SchedulerFactoryBean schedulerFactoryBean;
+    private Scheduler scheduler;
+    private JdbcTemplate jdbcTemplate;
+    private ScheduleService scheduleService;
+    private Schedule schedule;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource dataSource =
+                new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("org/quartz/impl/jdbcjobstore/tables_h2.sql"))
+                .execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceId", "AUTO");
+        properties.setProperty("org.quartz.jobStore.isClustered", "true");
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass",
+                "org.quartz.impl.jdbcjobstore.StdJDBCDelegate");
+        properties.setProperty("org.quartz.threadPool.threadCount", "2");
+        schedulerFactoryBean = new SchedulerFactoryBean();
+        schedulerFactoryBean.setSchedulerName("schedule-test-" + UUID.randomUUID());
+        schedulerFactoryBean.setDataSource(dataSource);
+        schedulerFactoryBean.setQuartzProperties(properties);
+        schedulerFactoryBean.setAutoStartup(false);
+        schedulerFactoryBean.setJobFactory((bundle, scheduler) -> newJob(bundle.getJobDetail().getJobClass()));
+        schedulerFactoryBean.afterPropertiesSet();
+        scheduler = schedulerFactoryBean.getObject();
+
+        scheduleService = new ScheduleService(scheduleRepository, preventiveMaintenanceService, scheduleMapper,
+                messageSource, emailService2, workOrderService, taskService, userService, scheduler);
+
+        Company company = new Company();
+        company.getCompanySettings().getGeneralPreferences().setDaysBeforePrevMaintNotification(0);
+        PreventiveMaintenance preventiveMaintenance = new PreventiveMaintenance();
+        preventiveMaintenance.setCompany(company);
+        schedule = new Schedule(preventiveMaintenance);
+        schedule.setId(SCHEDULE_ID);
+        schedule.setStartsOn(new Date(System.currentTimeMillis() - DAY_MILLIS / 2));
+
+        when(scheduleRepository.findById(SCHEDULE_ID)).thenReturn(Optional.of(schedule));
+        when(workOrderService.findLastByPM(any(), anyInt())).thenReturn(new PageImpl<>(Collections.emptyList()));
+        when(workOrderService.getWorkOrderFromWorkOrderBase(any())).thenAnswer(invocation -> new WorkOrder());
+        when(workOrderService.create(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() throws SchedulerException {
+        schedulerFactoryBean.destroy();
+    }
+
+    @Test
+    void catchUpFiresTheOccurrencesMissedWhileDown() throws SchedulerException {
+        ReflectionTestUtils.setField(scheduleService, "catchUp", true);
+        scheduleService.scheduleWorkOrder(schedule);
+        missOccurrences(3);
+
+        scheduler.start();
+
+        verify(workOrderService, timeout(10_000).times(3)).create(any(), any());
+        verify(workOrderService, after(2_000).times(3)).create(any(), any());
+    }
+
+    @Test
+    void withoutCatchUpTheOccurrencesMissedWhileDownAreSkipped() throws SchedulerException {
+        scheduleService.scheduleWorkOrder(schedule);
+        missOccurrences(3);
+
+        scheduler.start();
+
+        verify(workOrderService, after(3_000).never()).create(any(), any());
+        assertThat(getJobKeys()).hasSize(1);
+    }
+
+    @Test
+    void resumingAStoredScheduleKeepsItsFireTimes() throws SchedulerException {
+        scheduleService.scheduleWorkOrder(schedule);
+        missOccurrences(3);
+        Long nextFireTime = getNextFireTime();
+
+        scheduleService.resumeSchedule(schedule);
+
+        assertThat(getNextFireTime()).isEqualTo(nextFireTime);
+    }
+
+    @Test
+    void staleScheduleIsDisabledAndUnscheduledWhenItFires() throws SchedulerException {
+        scheduleService.scheduleWorkOrder(schedule);
+        List<WorkOrder> unreactedWorkOrders = IntStream.range(0, 10).mapToObj(i -> new WorkOrder())
+                .collect(Collectors.toList());
+        when(workOrderService.findLastByPM(any(), anyInt())).thenReturn(new PageImpl<>(unreactedWorkOrders));
+
+        scheduleService.createWorkOrder(SCHEDULE_ID, new Date());
+
+        assertThat(schedule.isDisabled()).isTrue();
+        verify(scheduleRepository).save(schedule);
+        verify(workOrderService, never()).create(any(), any());
+        assertThat(getJobKeys()).isEmpty();
+    }
+
+    @Test
+    void staleScheduleIsNotScheduled() throws SchedulerException {
+        List<WorkOrder> unreactedWorkOrders = IntStream.range(0, 10).mapToObj(i -> new WorkOrder())
+                .collect(Collectors.toList());
+        when(workOrderService.findLastByPM(any(), anyInt())).thenReturn(new PageImpl<>(unreactedWorkOrders));
+
+        scheduleService.scheduleWorkOrder(schedule);
+
+        assertThat(schedule.isDisabled()).isTrue();
+        assertThat(getJobKeys()).isEmpty();
+    }
+
+    @Test
+    void deletingAScheduleDeletesItsJobs() throws SchedulerException {
+        scheduleService.scheduleWorkOrder(schedule);
+        assertThat(getJobKeys()).hasSize(1);
+
+        scheduleService.delete(SCHEDULE_ID);
+
+        verify(scheduleRepository).deleteById(SCHEDULE_ID);
+        assertThat(getJobKeys()).isEmpty();
+    }
+
+    @Test
+    void jobOfADeletedScheduleDeletesItself() throws SchedulerException {
+        scheduleService.scheduleWorkOrder(schedule);
+        when(scheduleRepository.findById(anyLong())).thenReturn(Optional.empty());
+
+        scheduleService.createWorkOrder(SCHEDULE_ID, new Date());
+
+        verify(workOrderService, never()).create(any(), any());
+        assertThat(getJobKeys()).isEmpty();
+    }
+
+    private Job newJob(Class<? extends Job> jobClass) {
+        if (jobClass.equals(PreventiveMaintenanceJob.class)) return new PreventiveMaintenanceJob(scheduleService);
+        return new PreventiveMaintenanceNotificationJob(scheduleService);
+    }
+
+    /**
+     * Moves the stored trigger back as if no node ran during the last {@code count} occurrences, the next one being
+     * half a day ahead
+     */
+    private void missOccurrences(int count) {
+        long firstMissed = System.currentTimeMillis() - count * DAY_MILLIS + DAY_MILLIS / 2;
+        jdbcTemplate.update("UPDATE QRTZ_TRIGGERS SET START_TIME = ?, NEXT_FIRE_TIME = ?", firstMissed, firstMissed);
+    }
+
+    private Long getNextFireTime() {
+        return jdbcTemplate.queryForObject("SELECT NEXT_FIRE_TIME FROM QRTZ_TRIGGERS", Long.class);
+    }
+
+    private Set<JobKey> getJobKeys() throws SchedulerException {
+        return scheduler.getJobKeys(GroupMatcher.anyJobGroup());
+    }
+}
@@ -0,0 +1,256 @@
+package com.grash.service;
+
+import com.grash.dto.analytics.workOrders.WOStats;
+import com.grash.dto.analytics.workOrders.WOStatsByPriority;
+import com.grash.model.WorkOrder;
+import com.grash.model.enums.Priority;
+import com.grash.model.enums.Status;
+import com.grash.repository.LaborRepository;
+import com.grash.repository.WorkOrderAudRepository;
+import com.grash.repository.WorkOrderRepository;
+import com.grash.utils.Helper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import liquibase.integration.spring.SpringLiquibase;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.context.annotation.*;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Computes the work order analytics of tenants of growing sizes in an embedded PostgreSQL migrated by the
+ * application's changelog. The benchmark compares the aggregates with the former computation on the loaded
+ * {@link WorkOrder} entities, logging the heap allocated and retained and the latency of both.
+ */
+@Slf4j
+class WorkOrderAnalyticsServiceTest {
+    private static final int[] TENANT_SIZES = {1_000, 10_000, 50_000};
+    private static final int RUNS = 3;
+    private static final Date START = Date.from(Instant.now().minus(Duration.ofDays(365)));
+
+    private static EmbeddedPostgres postgres;
+    private static AnnotationConfigApplicationContext context;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static WorkOrderRepository workOrderRepository;
+    private static WorkOrderAnalyticsService analyticsService;
+
+    @BeforeAll
+    static void setUpDatabase() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(postgres.getPostgresDatabase());
+        liquibase.setChangeLog("classpath:/db/master.xml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(DataSource.class, WorkOrderAnalyticsServiceTest::newPool);
+        for (Class<?> mocked : Arrays.asList(UserService.class, WorkOrderCategoryService.class, AssetService.class,
+                WorkOrderCostService.class, WorkOrderAudRepository.class)) {
+            context.getBeanFactory().registerSingleton(mocked.getSimpleName(), mock(mocked));
+        }
+        context.register(AnalyticsConfig.class);
+        context.refresh();
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transactionTemplate.setReadOnly(true);
+        workOrderRepository = context.getBean(WorkOrderRepository.class);
+        analyticsService = context.getBean(WorkOrderAnalyticsService.class);
+    }
+
+    @AfterAll
+    static void tearDownDatabase() throws Exception {
+        context.close();
+        postgres.close();
+    }
+
+    @Test
+    void aggregatesMatchTheEntitiesAndDontGrowWithTheTenant() {
+        List<Measure[]> measures = new ArrayList<>();
+        for (int i = 0; i < TENANT_SIZES.length; i++) {
+            long companyId = i + 1;
+            insertWorkOrders(companyId, TENANT_SIZES[i]);
+            Date end = new Date();
+
+            WOStats fromEntities = transactionTemplate.execute(status -> getStatsFromEntities(companyId, end));
+            assertThat(analyticsService.getCompleteStats(companyId, START, end)).isEqualTo(fromEntities);
+            assertThat(fromEntities.getTotal()).isEqualTo(TENANT_SIZES[i]);
+            WOStatsByPriority byPriority = analyticsService.getIncompleteByPriority(companyId, START, end);
+            assertThat(byPriority.getHigh().getCount()).isEqualTo(countIncompleteFromEntities(companyId, end,
+                    Priority.HIGH));
+
+            measures.add(new Measure[]{
+                    measure(() -> getStatsFromEntities(companyId, end)),
+                    measure(() -> analyticsService.getCompleteStats(companyId, START, end))});
+        }
+
+        log.info(String.format("%11s | %-32s | %-32s", "", "entities", "aggregates"));
+        log.info(String.format("%11s | %10s %10s %10s | %10s %10s %10s", "work orders", "ms", "alloc MB",
+                "retain MB", "ms", "alloc MB", "retain MB"));
+        for (int i = 0; i < TENANT_SIZES.length; i++) {
+            log.info(String.format("%11d | %s | %s", TENANT_SIZES[i], measures.get(i)[0], measures.get(i)[1]));
+        }
+        Measure largestEntities = measures.get(TENANT_SIZES.length - 1)[0];
+        Measure largestAggregates = measures.get(TENANT_SIZES.length - 1)[1];
+        assertThat(largestAggregates.allocatedBytes).isLessThan(largestEntities.allocatedBytes / 10);
+        // a few rows are read whatever the tenant size
+        assertThat(largestAggregates.allocatedBytes).isLessThan(1_000_000);
+    }
+
+    /**
+     * The computation of the overview endpoint before the aggregates
+     */
+    private static WOStats getStatsFromEntities(long companyId, Date end) {
+        Collection<WorkOrder> workOrders = workOrderRepository.findByCompany_IdAndCreatedAtBetween(companyId,
+                START, end);
+        Collection<WorkOrder> completedWO = workOrders.stream()
+                .filter(workOrder -> workOrder.getStatus().equals(Status.COMPLETE)).collect(Collectors.toList());
+        Collection<WorkOrder> withFirstTimeToReactWO = workOrders.stream()
+                .filter(workOrder -> workOrder.getFirstTimeToReact() != null).collect(Collectors.toList());
+        long mtta = withFirstTimeToReactWO.isEmpty() ? 0 : withFirstTimeToReactWO.stream().mapToLong(workOrder ->
+                Helper.getDateDiff(workOrder.getCreatedAt(), workOrder.getFirstTimeToReact(), TimeUnit.HOURS))
+                .sum() / withFirstTimeToReactWO.size();
+        return WOStats.builder()
+                .total(workOrders.size())
+                .complete(completedWO.size())
+                .compliant((int) completedWO.stream().filter(WorkOrder::isCompliant).count())
+                .mtta(mtta)
+                .avgCycleTime(WorkOrder.getAverageAge(completedWO)).build();
+    }
+
+    private static int countIncompleteFromEntities(long companyId, Date end, Priority priority) {
+        return transactionTemplate.execute(status -> (int) workOrderRepository
+                .findByCompany_IdAndCreatedAtBetween(companyId, START, end).stream()
+                .filter(workOrder -> !workOrder.getStatus().equals(Status.COMPLETE)
+                        && workOrder.getPriority().equals(priority)).count());
+    }
+
+    /**
+     * Runs the computation in a read-only transaction, like a request with its open entity manager, once to warm up
+     * then {@link #RUNS} times. The retained heap is the one still reachable at the end of the transaction.
+     */
+    private static Measure measure(Supplier<WOStats> computation) {
+        transactionTemplate.execute(status -> computation.get());
+        Measure measure = new Measure();
+        long[] elapsed = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long heapBefore = usedHeapAfterGc();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            int index = run;
+            transactionTemplate.executeWithoutResult(status -> {
+                computation.get();
+                elapsed[index] = System.nanoTime() - start;
+                measure.allocatedBytes = Math.max(measure.allocatedBytes, allocatedBytes() - allocatedBefore);
+                measure.retainedBytes = Math.max(measure.retainedBytes, usedHeapAfterGc() - heapBefore);
+            });
+        }
+        Arrays.sort(elapsed);
+        measure.millis = elapsed[RUNS / 2] / 1_000_000;
+        return measure;
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Spreads the work orders over the last year, a quarter of each status and priority, the complete ones being
+     * completed a few days after their creation and due a week after it two times out of three
+     */
+    private static void insertWorkOrders(long companyId, int count) {
+        jdbcTemplate.update("INSERT INTO company (id, employees_count, created_at, updated_at) " +
+                "VALUES (?, 0, now(), now())", companyId);
+        jdbcTemplate.update("INSERT INTO work_order (id, company_id, title, created_at, updated_at, status, " +
+                "priority, estimated_duration, required_signature, archived, due_date, completed_on, " +
+                "first_time_to_react) " +
+                "SELECT id, ?, 'Work order ' || g, created_at, created_at, g % 4, (g / 4) % 4, g % 8, false, " +
+                "false, CASE WHEN g % 3 = 0 THEN NULL ELSE created_at + INTERVAL '7 days' END, " +
+                "CASE WHEN g % 4 = 3 THEN created_at + (g % 11) * INTERVAL '1 day' END, " +
+                "CASE WHEN g % 2 = 0 THEN created_at + (g % 50) * INTERVAL '1 hour' END " +
+                "FROM (SELECT g, ? * 1000000 + g AS id, " +
+                "now() - INTERVAL '360 days' + g * (INTERVAL '359 days' / ?) AS created_at " +
+                "FROM generate_series(1, ?) g) generated", companyId, companyId, count, count);
+    }
+
+    private static DataSource newPool() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        dataSource.setMaximumPoolSize(4);
+        return dataSource;
+    }
+
+    private static class Measure {
+        private long millis;
+        private long allocatedBytes;
+        private long retainedBytes;
+
+        @Override
+        public String toString() {
+            return String.format("%10d %10.2f %10.2f", millis, allocatedBytes / 1e6, retainedBytes / 1e6);
+        }
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = WorkOrderRepository.class,
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                    classes = {WorkOrderRepository.class, LaborRepository.class}))
+    @Import(WorkOrderAnalyticsService.class)
+    static class AnalyticsConfig {
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+            entityManagerFactory.setDataSource(dataSource);
+            entityManagerFactory.setPackagesToScan("com.grash.model");
+            entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            // the ones of Spring Boot and application.yml
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("hibernate.physical_naming_strategy", SpringPhysicalNamingStrategy.class.getName());
+            properties.put("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+            properties.put("hibernate.dialect", PostgreSQLDialect.class.getName());
+            properties.put("hibernate.id.new_generator_mappings", false);
+            properties.put("hibernate.enable_lazy_load_no_trans", true);
+            properties.put("hibernate.default_batch_fetch_size", 100);
+            entityManagerFactory.setJpaPropertyMap(properties);
+            return entityManagerFactory;
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
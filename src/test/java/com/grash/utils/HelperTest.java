@@ -0,0 +1,115 @@
+package com.grash.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Computes the occurrences of schedules in the Europe/Paris time zone, which moves to summer time on 2024-03-31 and
+ * back on 2024-10-27, and splits the values bound to IN clauses
+ */
+class HelperTest {
+    private static final ZoneId PARIS = ZoneId.of("Europe/Paris");
+
+    private TimeZone defaultTimeZone;
+
+    @BeforeEach
+    void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(PARIS));
+    }
+
+    @AfterEach
+    void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    void jumpsToTheFirstOccurrenceOfTheRange() {
+        // Mondays
+        List<Date> occurrences = Helper.getOccurrences(date(2024, 1, 1, 9), 7, date(2024, 3, 6, 0),
+                date(2024, 3, 28, 0));
+
+        assertThat(occurrences).containsExactly(date(2024, 3, 11, 9), date(2024, 3, 18, 9), date(2024, 3, 25, 9));
+    }
+
+    @Test
+    void occurrenceLaterTheSameDayAsTheRangeStartIsIncluded() {
+        assertThat(Helper.getOccurrences(date(2024, 1, 1, 9), 7, date(2024, 3, 11, 8), date(2024, 3, 12, 0)))
+                .containsExactly(date(2024, 3, 11, 9));
+        assertThat(Helper.getOccurrences(date(2024, 1, 1, 9), 7, date(2024, 3, 11, 10), date(2024, 3, 19, 0)))
+                .containsExactly(date(2024, 3, 18, 9));
+    }
+
+    @Test
+    void occurrencesOnTheRangeBoundsAreIncluded() {
+        List<Date> occurrences = Helper.getOccurrences(date(2024, 1, 1, 9), 7, date(2024, 3, 11, 9),
+                date(2024, 3, 25, 9));
+
+        assertThat(occurrences).containsExactly(date(2024, 3, 11, 9), date(2024, 3, 18, 9), date(2024, 3, 25, 9));
+    }
+
+    @Test
+    void rangeBeforeTheStartBeginsAtTheStart() {
+        assertThat(Helper.getOccurrences(date(2024, 3, 11, 9), 3, date(2024, 3, 1, 0), date(2024, 3, 17, 9)))
+                .containsExactly(date(2024, 3, 11, 9), date(2024, 3, 14, 9), date(2024, 3, 17, 9));
+        assertThat(Helper.getOccurrences(date(2024, 3, 11, 9), 3, date(2024, 3, 1, 0), date(2024, 3, 10, 0)))
+                .isEmpty();
+    }
+
+    @Test
+    void occurrencesKeepTheirTimeOfDayAcrossDaylightSavingChanges() {
+        List<Date> spring = Helper.getOccurrences(date(2024, 3, 25, 9), 7, date(2024, 3, 25, 0),
+                date(2024, 4, 2, 0));
+
+        assertThat(spring).containsExactly(date(2024, 3, 25, 9), date(2024, 4, 1, 9));
+        assertThat(Duration.between(spring.get(0).toInstant(), spring.get(1).toInstant()))
+                .isEqualTo(Duration.ofHours(7 * 24 - 1));
+
+        // started in winter, the jump lands on the summer occurrences, then back in winter
+        assertThat(Helper.getOccurrences(date(2024, 1, 1, 9), 7, date(2024, 7, 1, 0), date(2024, 7, 2, 0)))
+                .containsExactly(date(2024, 7, 1, 9));
+        assertThat(Helper.getOccurrences(date(2024, 1, 1, 9), 7, date(2024, 10, 27, 0), date(2024, 11, 5, 0)))
+                .containsExactly(date(2024, 10, 28, 9), date(2024, 11, 4, 9));
+    }
+
+    @Test
+    void occurrenceInTheSkippedHourMovesLikeTheOthers() {
+        // 02:30 doesn't exist on 2024-03-31, the occurrence is at 03:30 summer time then back to 02:30
+        assertThat(Helper.getOccurrences(date(2024, 3, 30, 2, 30), 1, date(2024, 3, 30, 0), date(2024, 4, 1, 12)))
+                .containsExactly(date(2024, 3, 30, 2, 30), date(2024, 3, 31, 3, 30), date(2024, 4, 1, 2, 30));
+    }
+
+    @Test
+    void inClauseChunksKeepTheValuesInOrder() {
+        List<Long> ids = LongStream.range(0, 2 * Helper.IN_CLAUSE_CHUNK_SIZE + 1).boxed()
+                .collect(Collectors.toList());
+
+        List<List<Long>> chunks = Helper.inClauseChunks(ids);
+
+        assertThat(chunks).extracting(List::size).containsExactly(Helper.IN_CLAUSE_CHUNK_SIZE,
+                Helper.IN_CLAUSE_CHUNK_SIZE, 1);
+        assertThat(chunks.stream().flatMap(List::stream).collect(Collectors.toList())).isEqualTo(ids);
+        assertThat(Helper.inClauseChunks(Collections.emptySet())).isEmpty();
+    }
+
+    private static Date date(int year, int month, int day, int hour) {
+        return date(year, month, day, hour, 0);
+    }
+
+    private static Date date(int year, int month, int day, int hour, int minute) {
+        return Date.from(LocalDateTime.of(year, month, day, hour, minute).atZone(PARIS).toInstant());
+    }
+}